@@ -0,0 +1,69 @@
+package zenit.LSP;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the last completion result of a tab, so that typing more of the same word
+ * narrows the list on the client instead of asking the server again.
+ *
+ * A result is reused while the caret stays in the word it was requested for and the
+ * word only grows from the prefix it was requested with, ignoring case like the
+ * filtering does. Results the server marked
+ * as incomplete are only reused for the exact prefix they were requested with.
+ */
+public class CompletionCache {
+	private String uri;
+	private int line;
+	private int wordStart;
+	private String prefix;
+	private LspCompletionList result;
+
+	/**
+	 * Stores a result.
+	 * @param uri The document.
+	 * @param line The line of the caret.
+	 * @param wordStart The column where the word being completed starts.
+	 * @param prefix The part of the word before the caret when the request was sent.
+	 * @param result The result.
+	 */
+	public void put(String uri, int line, int wordStart, String prefix, LspCompletionList result) {
+		this.uri = uri;
+		this.line = line;
+		this.wordStart = wordStart;
+		this.prefix = prefix;
+		this.result = result;
+	}
+
+	/**
+	 * Returns the items of the stored result that match a prefix.
+	 * @return The matching items in the order of the server, or null if the stored
+	 * result cannot answer for this word and the server must be asked.
+	 */
+	public List<LspCompletionItem> lookup(String uri, int line, int wordStart, String prefix) {
+		if (result == null || !uri.equals(this.uri) || line != this.line || wordStart != this.wordStart
+				|| !prefix.regionMatches(true, 0, this.prefix, 0, this.prefix.length())
+				|| (result.isIncomplete() && !prefix.equals(this.prefix))) {
+			return null;
+		}
+		return filter(result.getItems(), prefix);
+	}
+
+	public void clear() {
+		result = null;
+	}
+
+	/**
+	 * @return The items whose filter text starts with {@code prefix}, ignoring case.
+	 */
+	public static List<LspCompletionItem> filter(List<LspCompletionItem> items, String prefix) {
+		List<LspCompletionItem> matches = new ArrayList<>();
+		for (LspCompletionItem item : items) {
+			String text = item.getFilterText();
+			if (text.regionMatches(true, 0, prefix, 0, prefix.length())) {
+				matches.add(item);
+			}
+		}
+		return matches;
+	}
+}
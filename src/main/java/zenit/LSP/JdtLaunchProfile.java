@@ -0,0 +1,208 @@
+package zenit.LSP;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The command line that starts JDT LS, tuned for a short time to first diagnostic.
+ *
+ * The server is started on the JVM running Zenit with a class data sharing archive,
+ * which the JVM writes on the first start and maps on the following ones instead of
+ * loading and verifying the same classes again. The -data directory, where JDT keeps
+ * its indexes and project state, is derived from the Zenit workspace, so a restart
+ * finds the indexes of the last session. Equinox reads the configuration shipped with
+ * the server and caches its bundle resolution in a configuration area of its own.
+ *
+ * Everything the server writes is kept under {@code res/jdtls}: the archives, the
+ * configuration area, the data directories and the log of its stderr.
+ */
+public class JdtLaunchProfile {
+
+	private static final File DEFAULT_STATE_DIR = new File("res/jdtls");
+
+	private final File serverDir;
+	private final File workspace;
+	private final File stateDir;
+	private final int javaVersion;
+
+	/**
+	 * @param serverDir The directory JDT LS is unpacked in.
+	 * @param workspace The Zenit workspace.
+	 */
+	public JdtLaunchProfile(File serverDir, File workspace) {
+		this(serverDir, workspace, DEFAULT_STATE_DIR, Runtime.version().feature());
+	}
+
+	/**
+	 * @param stateDir The directory the server state is kept in.
+	 * @param javaVersion The feature version of the JVM that runs the server.
+	 */
+	JdtLaunchProfile(File serverDir, File workspace, File stateDir, int javaVersion) {
+		this.serverDir = serverDir;
+		this.workspace = workspace;
+		this.stateDir = stateDir.getAbsoluteFile();
+		this.javaVersion = javaVersion;
+	}
+
+	/**
+	 * @return The command that starts the server, to run in the server directory.
+	 * @throws RuntimeException If the server is not installed in the server directory.
+	 */
+	public List<String> buildCommand() {
+		File launcherJar = findLauncherJar();
+
+		List<String> command = new ArrayList<>();
+		command.add(getJavaExecutable());
+		command.add("-Declipse.application=org.eclipse.jdt.ls.core.id1");
+		command.add("-Dosgi.bundles.defaultStartLevel=4");
+		command.add("-Declipse.product=org.eclipse.jdt.ls.core.product");
+		command.add("-Dosgi.checkConfiguration=true");
+		command.add("-Dosgi.sharedConfiguration.area=" + getSharedConfigDirectory().getAbsolutePath());
+		command.add("-Dosgi.sharedConfiguration.area.readOnly=true");
+		command.add("-Dosgi.configuration.cascaded=true");
+
+		// The JVM logs to stdout by default, which would corrupt the protocol stream
+		command.add("-Xlog:disable");
+		command.add("-Xlog:all=warning,cds*=off:stderr");
+
+		// The GC settings of the JDT LS launch scripts: a small heap at first, grown quickly
+		command.add("-Xms256m");
+		command.add("-XX:+UseParallelGC");
+		command.add("-XX:GCTimeRatio=4");
+		command.add("-XX:AdaptiveSizePolicyWeight=90");
+		command.add("-Dsun.zip.disableMemoryMapping=true");
+
+		command.addAll(getSharedArchiveOptions(launcherJar));
+
+		command.add("--add-modules=ALL-SYSTEM");
+		command.add("--add-opens");
+		command.add("java.base/java.util=ALL-UNNAMED");
+		command.add("--add-opens");
+		command.add("java.base/java.lang=ALL-UNNAMED");
+
+		command.add("-jar");
+		command.add(launcherJar.getAbsolutePath());
+		command.add("-configuration");
+		command.add(new File(stateDir, "config").getAbsolutePath());
+		command.add("-data");
+		command.add(getDataDirectory().getAbsolutePath());
+		return command;
+	}
+
+	/**
+	 * JDK 19 and later create the archive on the first start and recreate it if it does
+	 * not match the JVM or the class path. Older JDKs write it at exit, and use it from
+	 * the next start.
+	 */
+	private List<String> getSharedArchiveOptions(File launcherJar) {
+		File archive = getSharedArchive(launcherJar);
+		if (javaVersion >= 19) {
+			return List.of("-XX:SharedArchiveFile=" + archive.getAbsolutePath(), "-XX:+AutoCreateSharedArchive");
+		}
+		if (javaVersion >= 13) {
+			return List.of((archive.exists() ? "-XX:SharedArchiveFile=" : "-XX:ArchiveClassesAtExit=")
+					+ archive.getAbsolutePath());
+		}
+		return List.of();
+	}
+
+	/**
+	 * @return The class data sharing archive for this server and JVM.
+	 */
+	File getSharedArchive(File launcherJar) {
+		String name = launcherJar.getName().replace(".jar", "") + "-java" + Runtime.version();
+		return new File(stateDir, "cds" + File.separator + name.replaceAll("[^A-Za-z0-9._-]", "_") + ".jsa");
+	}
+
+	/**
+	 * @return How the server uses class data sharing: "reused" if the archive exists,
+	 * "created" if it is written by this start, or "off".
+	 */
+	public String getSharedArchiveStatus() {
+		if (javaVersion < 13) {
+			return "off";
+		}
+		return getSharedArchive(findLauncherJar()).exists() ? "reused" : "created";
+	}
+
+	/**
+	 * @return The -data directory of the workspace: the name of the workspace and a hash
+	 * of its path, so it stays the same across restarts and differs between workspaces.
+	 */
+	public File getDataDirectory() {
+		File root = workspace.getAbsoluteFile();
+		return new File(stateDir, "workspaces" + File.separator + root.getName() + "-" + hash(root.getPath()));
+	}
+
+	/**
+	 * @return The file the stderr of the server is appended to.
+	 */
+	public File getLogFile() {
+		return new File(stateDir, "server.log");
+	}
+
+	/**
+	 * Creates the directories the server writes to.
+	 */
+	public void createDirectories() {
+		new File(stateDir, "cds").mkdirs();
+		new File(stateDir, "config").mkdirs();
+		getDataDirectory().mkdirs();
+	}
+
+	private File getSharedConfigDirectory() {
+		String os = System.getProperty("os.name").toLowerCase();
+		String arch = System.getProperty("os.arch").toLowerCase();
+		String config;
+		if (os.contains("win")) {
+			config = "config_win";
+		} else if (os.contains("mac")) {
+			config = "config_mac";
+		} else {
+			config = "config_linux";
+		}
+		if (!os.contains("win") && (arch.equals("aarch64") || arch.equals("arm64"))) {
+			config += "_arm";
+		}
+		return new File(serverDir, config);
+	}
+
+	private String getJavaExecutable() {
+		boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
+		File java = new File(System.getProperty("java.home"), "bin" + File.separator + (isWindows ? "java.exe" : "java"));
+		return java.exists() ? java.getAbsolutePath() : "java";
+	}
+
+	private File findLauncherJar() {
+		File pluginsDir = new File(serverDir, "plugins");
+		File[] plugins = pluginsDir.listFiles();
+		if (plugins == null) {
+			throw new RuntimeException("Invalid JDT LS path: plugins folder not found");
+		}
+
+		for (File file : plugins) {
+			if (file.getName().startsWith("org.eclipse.equinox.launcher_")
+					&& file.getName().endsWith(".jar")) {
+				return file;
+			}
+		}
+		throw new RuntimeException("Launcher jar not found in plugins folder");
+	}
+
+	private static String hash(String text) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(text.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder();
+			for (int i = 0; i < 6; i++) {
+				hex.append(String.format("%02x", digest[i]));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return Integer.toHexString(text.hashCode());
+		}
+	}
+}
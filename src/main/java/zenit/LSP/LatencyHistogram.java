@@ -0,0 +1,77 @@
+package zenit.LSP;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records latencies in buckets of doubling width, which is enough to tell apart the
+ * typical and the slow responses of a method without keeping every sample.
+ * Bucket {@code i} counts latencies from 2^i up to 2^(i+1) microseconds. Recording
+ * is lock-free, so it can be done from any thread.
+ */
+public class LatencyHistogram {
+
+	static final int BUCKETS = 40;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+
+	/**
+	 * Records one latency.
+	 */
+	public void record(long nanos) {
+		long micros = Math.max(1, nanos / 1000);
+		int bucket = Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(micros));
+		buckets.incrementAndGet(bucket);
+		count.increment();
+		totalNanos.add(nanos);
+		maxNanos.accumulate(nanos);
+	}
+
+	public long getCount() { return count.sum(); }
+
+	public double getMeanMillis() {
+		long samples = count.sum();
+		return samples == 0 ? 0 : totalNanos.sum() / (samples * 1_000_000.0);
+	}
+
+	public double getMaxMillis() { return maxNanos.get() / 1_000_000.0; }
+
+	/**
+	 * Returns an upper bound of the given percentile: the end of the bucket holding it,
+	 * capped at the largest latency recorded.
+	 * @param percentile The percentile, from 0 to 100.
+	 * @return The latency in milliseconds, or 0 if nothing was recorded.
+	 */
+	public double getPercentileMillis(double percentile) {
+		long samples = 0;
+		long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+			samples += counts[i];
+		}
+		if (samples == 0) {
+			return 0;
+		}
+
+		long rank = (long) Math.ceil(samples * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += counts[i];
+			if (seen >= Math.max(1, rank)) {
+				return Math.min((1L << (i + 1)) / 1000.0, getMaxMillis());
+			}
+		}
+		return getMaxMillis();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("n=%d mean=%.1fms p50<=%.1fms p95<=%.1fms p99<=%.1fms max=%.1fms",
+				getCount(), getMeanMillis(), getPercentileMillis(50), getPercentileMillis(95),
+				getPercentileMillis(99), getMaxMillis());
+	}
+}
@@ -0,0 +1,101 @@
+package zenit.LSP;
+
+import com.google.gson.JsonObject;
+import org.eclipse.lsp4j.ConfigurationParams;
+import org.eclipse.lsp4j.Diagnostic;
+import org.eclipse.lsp4j.MessageActionItem;
+import org.eclipse.lsp4j.MessageParams;
+import org.eclipse.lsp4j.PublishDiagnosticsParams;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.RegistrationParams;
+import org.eclipse.lsp4j.ShowMessageRequestParams;
+import org.eclipse.lsp4j.UnregistrationParams;
+import org.eclipse.lsp4j.WorkDoneProgressCreateParams;
+import org.eclipse.lsp4j.jsonrpc.services.JsonNotification;
+import org.eclipse.lsp4j.services.LanguageClient;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The messages the language server sends to Zenit. Diagnostics are converted and
+ * passed to the {@link DiagnosticsListener}; the requests the server needs answered
+ * before it continues are accepted without doing anything, and the rest is logged.
+ */
+public class LspClient implements LanguageClient {
+
+	private final DiagnosticsListener diagnosticsListener;
+
+	LspClient(DiagnosticsListener diagnosticsListener) {
+		this.diagnosticsListener = diagnosticsListener;
+	}
+
+	@Override
+	public void publishDiagnostics(PublishDiagnosticsParams params) {
+		List<LspDiagnostic> result = new ArrayList<>();
+		for (Diagnostic d : params.getDiagnostics()) {
+			Range range = d.getRange();
+			int severity = d.getSeverity() != null ? d.getSeverity().getValue() : 1;
+
+			result.add(new LspDiagnostic(range.getStart().getLine(), range.getStart().getCharacter(),
+					range.getEnd().getLine(), range.getEnd().getCharacter(), severity, d.getMessage()));
+		}
+
+		System.out.println("[LSP] Diagnostics for " + params.getUri() + ": " + result.size() + " items");
+		diagnosticsListener.onDiagnostics(params.getUri(), result);
+	}
+
+	@Override
+	public CompletableFuture<List<Object>> configuration(ConfigurationParams params) {
+		// No settings are configured, which the server reads as its defaults
+		int items = params.getItems() != null ? params.getItems().size() : 0;
+		return CompletableFuture.completedFuture(Collections.nCopies(items, null));
+	}
+
+	@Override
+	public CompletableFuture<Void> registerCapability(RegistrationParams params) {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public CompletableFuture<Void> unregisterCapability(UnregistrationParams params) {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public CompletableFuture<Void> createProgress(WorkDoneProgressCreateParams params) {
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public CompletableFuture<MessageActionItem> showMessageRequest(ShowMessageRequestParams params) {
+		System.out.println("[LSP] " + params.getMessage());
+		return CompletableFuture.completedFuture(null);
+	}
+
+	@Override
+	public void showMessage(MessageParams params) {
+		System.out.println("[LSP] " + params.getMessage());
+	}
+
+	@Override
+	public void logMessage(MessageParams params) {
+		// The server logs every step of its startup here, which is too much for the console
+	}
+
+	@Override
+	public void telemetryEvent(Object object) {
+	}
+
+	/**
+	 * The startup status of JDT LS, an extension of the protocol.
+	 */
+	@JsonNotification("language/status")
+	public void languageStatus(JsonObject status) {
+		if (status.has("type") && "ServiceReady".equals(status.get("type").getAsString())) {
+			System.out.println("[LSP] Server reports ServiceReady");
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package zenit.LSP;
+
+/**
+ * A single suggestion from a textDocument/completion response.
+ */
+public class LspCompletionItem {
+
+    private final String label;
+    private final String detail;
+    private final int kind;
+    private final String insertText;
+    private final String filterText;
+    private final String sortText;
+    private final int editStartLine;
+    private final int editStartChar;
+
+    /**
+     * @param editStartLine The line where the text edit of the item starts, or -1 if
+     *                      the item has no text edit and replaces the word before the caret.
+     */
+    public LspCompletionItem(String label, String detail, int kind, String insertText,
+                             String filterText, String sortText, int editStartLine, int editStartChar) {
+        this.label         = label;
+        this.detail        = detail;
+        this.kind          = kind;
+        this.insertText    = insertText;
+        this.filterText    = filterText;
+        this.sortText      = sortText;
+        this.editStartLine = editStartLine;
+        this.editStartChar = editStartChar;
+    }
+
+    public String getLabel()      { return label; }
+    public String getDetail()     { return detail; }
+    public int getKind()          { return kind; }
+    public int getEditStartLine() { return editStartLine; }
+    public int getEditStartChar() { return editStartChar; }
+
+    public boolean hasTextEdit()  { return editStartLine >= 0; }
+
+    /**
+     * @return The text to insert: the text edit or insert text of the item, or its label.
+     */
+    public String getInsertText() { return insertText != null ? insertText : label; }
+
+    /**
+     * @return The text the typed prefix is matched against.
+     */
+    public String getFilterText() { return filterText != null ? filterText : label; }
+
+    public String getSortText()   { return sortText != null ? sortText : label; }
+
+    /**
+     * @return A short name for the CompletionItemKind, shown next to the label.
+     */
+    public String getKindLabel() {
+        switch (kind) {
+            case 2:  return "method";
+            case 3:  return "function";
+            case 4:  return "constructor";
+            case 5:  return "field";
+            case 6:  return "variable";
+            case 7:  return "class";
+            case 8:  return "interface";
+            case 9:  return "module";
+            case 10: return "property";
+            case 13: return "enum";
+            case 14: return "keyword";
+            case 15: return "snippet";
+            case 20: return "constant";
+            case 21: return "constant";
+            case 22: return "struct";
+            case 25: return "type";
+            default: return "";
+        }
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
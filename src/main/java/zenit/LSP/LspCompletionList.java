@@ -0,0 +1,24 @@
+package zenit.LSP;
+
+import java.util.List;
+
+/**
+ * The result of a textDocument/completion request.
+ */
+public class LspCompletionList {
+
+    private final List<LspCompletionItem> items;
+    private final boolean incomplete;
+
+    /**
+     * @param incomplete {@code true} if the server left items out, so typing further
+     *                   must ask the server again instead of filtering these.
+     */
+    public LspCompletionList(List<LspCompletionItem> items, boolean incomplete) {
+        this.items      = items;
+        this.incomplete = incomplete;
+    }
+
+    public List<LspCompletionItem> getItems() { return items; }
+    public boolean isIncomplete()             { return incomplete; }
+}
@@ -0,0 +1,78 @@
+package zenit.LSP;
+
+import com.google.gson.JsonElement;
+import org.eclipse.lsp4j.jsonrpc.Endpoint;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MessageProducer;
+import org.eclipse.lsp4j.jsonrpc.RemoteEndpoint;
+import org.eclipse.lsp4j.jsonrpc.json.ConcurrentMessageProcessor;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
+import org.eclipse.lsp4j.services.LanguageServer;
+
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Builds an lsp4j launcher for a language server that reads with an
+ * {@link LspMessageReader} and writes with an {@link LspWriter}, in place of lsp4j's
+ * stream producer and consumer. Everything else, the proxies, the request ids,
+ * cancellation and the JSON mapping, is lsp4j's.
+ */
+class LspLauncherBuilder extends Launcher.Builder<LanguageServer> {
+
+	private final LspWriter writer;
+	private final Consumer<Message> droppedListener;
+	private MessageJsonHandler jsonHandler;
+	private RemoteEndpoint remoteEndpoint;
+
+	/**
+	 * @param writer The writer for the output stream, started by the caller. The output
+	 * stream given to the builder is not used.
+	 * @param droppedListener Called with the messages the writer dropped, may be null.
+	 */
+	LspLauncherBuilder(LspWriter writer, Consumer<Message> droppedListener) {
+		this.writer = writer;
+		this.droppedListener = droppedListener;
+		setRemoteInterface(LanguageServer.class);
+	}
+
+	/**
+	 * Creates the JSON mapping of lsp4j, extended to keep the results of methods that
+	 * {@link LanguageServer} does not declare as JSON; lsp4j would drop them.
+	 */
+	@Override
+	protected MessageJsonHandler createJsonHandler() {
+		Map<String, JsonRpcMethod> supportedMethods = getSupportedMethods();
+		jsonHandler = new MessageJsonHandler(supportedMethods, configureGson != null ? configureGson : gson -> { }) {
+			@Override
+			public JsonRpcMethod getJsonRpcMethod(String name) {
+				JsonRpcMethod method = super.getJsonRpcMethod(name);
+				return method != null ? method : JsonRpcMethod.request(name, JsonElement.class, JsonElement.class);
+			}
+		};
+		return jsonHandler;
+	}
+
+	@Override
+	protected RemoteEndpoint createRemoteEndpoint(MessageJsonHandler jsonHandler) {
+		MessageConsumer outgoing = wrapMessageConsumer(new LspMessageConsumer(writer, jsonHandler, droppedListener));
+		Endpoint localEndpoint = ServiceEndpoints.toEndpoint(localServices);
+		remoteEndpoint = exceptionHandler == null
+				? new RemoteEndpoint(outgoing, localEndpoint)
+				: new RemoteEndpoint(outgoing, localEndpoint, exceptionHandler);
+		jsonHandler.setMethodProvider(remoteEndpoint);
+		return remoteEndpoint;
+	}
+
+	@Override
+	protected ConcurrentMessageProcessor createMessageProcessor(MessageProducer reader,
+			MessageConsumer messageConsumer, LanguageServer remoteProxy) {
+		// The stream producer built by create() is replaced before it reads anything
+		MessageProducer producer = new LspMessageProducer(input, jsonHandler, remoteEndpoint);
+		return new ConcurrentMessageProcessor(producer, messageConsumer);
+	}
+}
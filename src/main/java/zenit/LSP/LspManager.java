@@ -1,19 +1,59 @@
 package zenit.LSP;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
-import com.google.gson.stream.JsonReader;
+import org.eclipse.lsp4j.ClientCapabilities;
+import org.eclipse.lsp4j.CompletionItem;
+import org.eclipse.lsp4j.CompletionList;
+import org.eclipse.lsp4j.CompletionParams;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidCloseTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.InitializeParams;
+import org.eclipse.lsp4j.InitializeResult;
+import org.eclipse.lsp4j.InitializedParams;
+import org.eclipse.lsp4j.InsertReplaceEdit;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.SynchronizationCapabilities;
+import org.eclipse.lsp4j.TextDocumentClientCapabilities;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.TextDocumentSyncKind;
+import org.eclipse.lsp4j.TextDocumentSyncOptions;
+import org.eclipse.lsp4j.TextEdit;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.WorkspaceClientCapabilities;
+import org.eclipse.lsp4j.WorkspaceFolder;
+import org.eclipse.lsp4j.jsonrpc.Launcher;
+import org.eclipse.lsp4j.jsonrpc.ResponseErrorException;
+import org.eclipse.lsp4j.jsonrpc.messages.Either;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.ResponseError;
+import org.eclipse.lsp4j.services.LanguageServer;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * OBS! This code only works if you've downloaded and installed the
@@ -21,6 +61,11 @@ import java.util.Map;
  * that means that you have to change the serverPath variable to match where
  * you unpacked the jdt-language-server
  *
+ * The protocol is spoken through lsp4j: the server is called through its
+ * {@link LanguageServer} proxy, and what it sends is handled by {@link LspClient}.
+ * The messages are still read with {@link LspMessageReader} and written by the
+ * {@link LspWriter} thread, see {@link LspLauncherBuilder}.
+ *
  * @author maxkoste
  */
 public class LspManager {
@@ -28,13 +73,53 @@ public class LspManager {
 	private String serverPath;
 	private File workspace;
 	private OutputStream stdin;
-	private Map<String, Integer> documentVersion = new HashMap<>();
+	private LspWriter writer;
+	private Launcher<LanguageServer> launcher;
+	private LanguageServer server;
+	private final Map<String, Integer> documentVersion = new ConcurrentHashMap<>();
+	// Open documents with a dropped didChange, the server missed edits and needs the whole text
+	private final Set<String> needsResync = ConcurrentHashMap.newKeySet();
 	private volatile boolean ready = false;
 
+	// Documents opened before the server was ready, by URI with their latest text. They
+	// are sent with didOpen once it is, see sendInitialize. Guarded by itself.
+	private final Map<String, String> pendingOpens = new LinkedHashMap<>();
+
+	private CompletableFuture<Process> serverStart;
+	private Process process;
+	private boolean shutDown;
+
+	// True if the server accepts ranged edits in didChange (TextDocumentSyncKind.Incremental)
+	private volatile boolean incrementalSync = false;
+
+	// Above this many edits in one didChange, sending the whole text is cheaper
+	private static final int MAX_INCREMENTAL_CHANGES = 64;
+
+	// Completion requests slower than this are given up on, the user has moved on
+	private static final long COMPLETION_TIMEOUT_MS = 5000;
+
+	// How long the server gets to answer shutdown and exit, see shutdown
+	public static final long SHUTDOWN_TIMEOUT_MS = 3000;
+
 	// Callback for parsed diagnostics — set by MainController
 	private DiagnosticsListener diagnosticsListener;
 
-	private final Gson gson = new Gson();
+	private Consumer<String> statusListener;
+
+	// Startup times, from launching the process, see reportStartup
+	private volatile long launchedAt;
+	private volatile long readyMillis = -1;
+	private volatile long firstDiagnosticsMillis = -1;
+
+	// Runs the reader loop, the handlers of server messages and the result conversions
+	private ExecutorService executor;
+
+	private final Set<CompletableFuture<?>> pendingRequests = ConcurrentHashMap.newKeySet();
+
+	// The latest request sent under each supersede key, see sendRequest
+	private final Map<String, CompletableFuture<?>> latestRequests = new ConcurrentHashMap<>();
+
+	private final Map<String, LatencyHistogram> latencies = new ConcurrentHashMap<>();
 
 	public LspManager() {
 		File serverDir = new File("jdt-language-server");
@@ -43,7 +128,8 @@ public class LspManager {
 	}
 
 	/**
-	 * @param workspace - The place where the server stores data related to the current workspace
+	 * @param workspace - The Zenit workspace, which is the root the server works in. The
+	 * server keeps its data for it in a directory of its own, see {@link JdtLaunchProfile}.
 	 */
 	public void setWorkspace(File workspace) {
 		this.workspace = (workspace != null) ? workspace
@@ -56,182 +142,259 @@ public class LspManager {
 	 */
 	public void setDiagnosticsListener(DiagnosticsListener listener) {
 		this.diagnosticsListener = listener;
+	}
+
+	/**
+	 * Register a listener that receives the progress of the server startup as text to
+	 * show, with the time it took to get ready and to publish the first diagnostics.
+	 * It is called on a background thread.
+	 */
+	public void setStatusListener(Consumer<String> listener) {
+		this.statusListener = listener;
+	}
+
+	/**
+	 * Sets the executor that runs the reader loop, the handlers of the messages from the
+	 * server and the conversion of results. Call this BEFORE startServer(). By default
+	 * each task gets its own virtual thread.
+	 */
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
 
-		if (workspace != null) {
-			this.workspace = new File(workspace, ".zenit");
-		} else {
-			this.workspace = new File(System.getProperty("user.home"), ".zenit");
+	/**
+	 * Starts the server on a thread of its own and returns at once, so neither launching
+	 * the process nor the handshake hold up the caller. Documents opened in the meantime
+	 * are sent when the server is ready. Only the first call starts the server.
+	 * @return Completes with the server process once it is launched, or exceptionally
+	 * if it could not be.
+	 */
+	public synchronized CompletableFuture<Process> startServerAsync() {
+		if (serverStart != null) {
+			return serverStart;
 		}
+		CompletableFuture<Process> started = new CompletableFuture<>();
+		Thread launcherThread = new Thread(() -> {
+			try {
+				started.complete(startServer());
+			} catch (Exception e) {
+				started.completeExceptionally(e);
+			}
+		}, "lsp-launcher");
+		launcherThread.setDaemon(true);
+		launcherThread.start();
+		serverStart = started;
+		return started;
 	}
 
 	public Process startServer() throws IOException {
-
 		File baseDir = new File(serverPath);
-		File pluginsDir = new File(baseDir, "plugins");
+		JdtLaunchProfile profile = new JdtLaunchProfile(baseDir, workspace);
+		List<String> command = profile.buildCommand();
+		profile.createDirectories();
+		String sharedArchive = profile.getSharedArchiveStatus();
 
-		if (!pluginsDir.exists()) {
-			throw new RuntimeException("Invalid JDT LS path: plugins folder not found");
-		}
+		ProcessBuilder pb = new ProcessBuilder(command);
+		pb.directory(baseDir);
+		// Never read, so it must not fill up a pipe and block the server
+		pb.redirectError(ProcessBuilder.Redirect.appendTo(profile.getLogFile()));
 
-		File launcherJar = null;
-		for (File file : pluginsDir.listFiles()) {
-			if (file.getName().startsWith("org.eclipse.equinox.launcher_")
-					&& file.getName().endsWith(".jar")) {
-				launcherJar = file;
-				break;
+		launchedAt = System.nanoTime();
+		Process p = pb.start();
+		synchronized (this) {
+			if (shutDown) {
+				// Zenit was closed while the server was being launched
+				p.destroyForcibly();
+				throw new IOException("LSP manager was shut down during the launch");
 			}
+			process = p;
 		}
-		if (launcherJar == null) {
-			throw new RuntimeException("Launcher jar not found in plugins folder");
-		}
+		System.out.println("[LSP] Started JDT LS, class data sharing archive " + sharedArchive
+				+ ", data in " + profile.getDataDirectory());
+		connect(p.getInputStream(), p.getOutputStream());
 
-		String workspacePath = workspace.getAbsolutePath();
-		boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
-		String configFolder = isWindows ? "config_win" : "config_mac";
-		String configPath = baseDir.getAbsolutePath() + File.separator + configFolder;
-
-		ProcessBuilder pb = new ProcessBuilder(
-				"java",
-				"-Declipse.application=org.eclipse.jdt.ls.core.id1",
-				"-Dosgi.bundles.defaultStartLevel=4",
-				"-Declipse.product=org.eclipse.jdt.ls.core.product",
-				"-Dlog.protocol=true",
-				"-Dlog.level=ALL",
-				"-jar", launcherJar.getAbsolutePath(),
-				"-configuration", configPath,
-				"-data", workspacePath);
-
-		pb.directory(baseDir);
+		return p;
+	}
 
-		Process p = pb.start();
-		this.stdin = p.getOutputStream();
+	/**
+	 * Starts talking to a server over the given streams and sends initialize.
+	 * @param in The output of the server.
+	 * @param out The input of the server.
+	 */
+	void connect(InputStream in, OutputStream out) throws IOException {
+		this.stdin = out;
+		this.writer = new LspWriter(stdin);
+		this.writer.start();
 		this.ready = false;
+		if (launchedAt == 0) {
+			launchedAt = System.nanoTime();
+		}
+		if (executor == null) {
+			executor = Executors.newVirtualThreadPerTaskExecutor();
+		}
+
+		launcher = new LspLauncherBuilder(writer, this::onDropped)
+				.setLocalService(new LspClient(this::onDiagnostics))
+				.setInput(in)
+				.setOutput(out)
+				.setExecutorService(executor)
+				.create();
+		server = launcher.getRemoteProxy();
+		launcher.startListening();
 
 		sendInitialize();
-		startReading(p.getInputStream());
+	}
 
-		return p;
+	private void onDiagnostics(String uri, List<LspDiagnostic> diagnostics) {
+		if (firstDiagnosticsMillis < 0) {
+			firstDiagnosticsMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchedAt);
+			reportStartup(String.format("Java diagnostics after %.1f s", firstDiagnosticsMillis / 1000.0));
+		}
+		if (diagnosticsListener != null) {
+			diagnosticsListener.onDiagnostics(uri, diagnostics);
+		}
+	}
+
+	private void reportStartup(String status) {
+		System.out.println("[LSP] " + status);
+		if (statusListener != null) {
+			statusListener.accept(status);
+		}
 	}
 
 	/**
-	 * Reads LSP output on a background thread.
-	 * Reads raw bytes to handle Content-Length framing correctly on all platforms.
+	 * @return The time from launching the server until it answered initialize, in
+	 * milliseconds, or -1 if it has not yet.
 	 */
-	public void startReading(java.io.InputStream is) {
-		new Thread(() -> {
-			try {
-				while (true) {
-					// Read headers byte by byte until \r\n\r\n
-					int contentLength = -1;
-					StringBuilder headerBuf = new StringBuilder();
-
-					int b;
-					while ((b = is.read()) != -1) {
-						headerBuf.append((char) b);
-						String h = headerBuf.toString();
-						if (h.endsWith("\r\n\r\n") || h.endsWith("\n\n")) {
-							break;
-						}
-					}
-
-					// Parse Content-Length from headers
-					for (String line : headerBuf.toString().split("\r?\n")) {
-						if (line.startsWith("Content-Length:")) {
-							contentLength = Integer.parseInt(
-									line.substring("Content-Length:".length()).trim());
-						}
-					}
-
-					if (contentLength <= 0) {
-						System.out.println("[LSP-READER] No content-length found, headers were: " + headerBuf);
-						continue;
-					}
-
-					// Read exactly contentLength bytes
-					byte[] bodyBytes = new byte[contentLength];
-					int read = 0;
-					while (read < contentLength) {
-						int r = is.read(bodyBytes, read, contentLength - read);
-						if (r == -1) break;
-						read += r;
-					}
-
-					String json = new String(bodyBytes, 0, read, StandardCharsets.UTF_8);
-					handleMessage(json);
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
-			}
-		}, "lsp-reader").start();
+	public long getReadyMillis() { return readyMillis; }
+
+	/**
+	 * @return The time from launching the server until it published the first
+	 * diagnostics, in milliseconds, or -1 if it has not yet.
+	 */
+	public long getFirstDiagnosticsMillis() { return firstDiagnosticsMillis; }
+
+	/**
+	 * Forgets a document whose didOpen the writer dropped, so the next change opens it.
+	 * A document whose didChange was dropped stays open on the server, and the next
+	 * change sends its whole text.
+	 */
+	private void onDropped(Message message) {
+		if (!(message instanceof NotificationMessage)) return;
+		Object params = ((NotificationMessage) message).getParams();
+
+		if (params instanceof DidOpenTextDocumentParams) {
+			String uri = ((DidOpenTextDocumentParams) params).getTextDocument().getUri();
+			documentVersion.remove(uri);
+			needsResync.remove(uri);
+		} else if (params instanceof DidChangeTextDocumentParams) {
+			needsResync.add(((DidChangeTextDocumentParams) params).getTextDocument().getUri());
+		}
 	}
 
-	// Keep old signature for compatibility
-	public void startReading(Process p) {
-		boolean isWindows = System.getProperty("os.name").toLowerCase().contains("win");
-		startReading(isWindows ? p.getErrorStream() : p.getInputStream());
+	/**
+	 * Sends a request and returns its result asynchronously. The future completes with
+	 * the result as lsp4j parsed it: the typed result for the methods of
+	 * {@link LanguageServer}, a JsonElement for others. It completes exceptionally with
+	 * an {@link LspResponseException} if the server answered with an error, or with a
+	 * {@link TimeoutException} if it did not answer in time. Cancelling the future, or
+	 * a timeout, sends $/cancelRequest so the server can stop working on it.
+	 * @param method The method to call.
+	 * @param params The params, serialized by lsp4j, or null for none.
+	 * @param timeoutMillis How long to wait for the response, 0 to wait forever.
+	 * @param supersedeKey If not null, an earlier request sent with the same key that is
+	 * still pending is cancelled, for requests like completion where only the latest
+	 * answer matters. Usually the method and the document.
+	 */
+	public CompletableFuture<Object> sendRequest(String method, Object params, long timeoutMillis,
+			String supersedeKey) {
+		if (server == null || !ready) {
+			return CompletableFuture.failedFuture(new IllegalStateException("LSP server not ready"));
+		}
+		return track(method, launcher.getRemoteEndpoint().request(method, params), timeoutMillis, supersedeKey);
 	}
 
-	private void handleMessage(String json) {
-		try {
-			JsonReader jsonReader = new JsonReader(new java.io.StringReader(json));
-			jsonReader.setLenient(true);
-			JsonObject obj = JsonParser.parseReader(jsonReader).getAsJsonObject();
+	public CompletableFuture<Object> sendRequest(String method, Object params, long timeoutMillis) {
+		return sendRequest(method, params, timeoutMillis, null);
+	}
 
-			String method = obj.has("method")
-					? obj.get("method").getAsString()
-					: "(response id=" + obj.get("id") + ")";
+	/**
+	 * Wraps the future of a request sent through lsp4j with the timeout, supersede and
+	 * latency handling described at {@link #sendRequest}. Cancelling the future of lsp4j
+	 * makes it send $/cancelRequest.
+	 */
+	private <T> CompletableFuture<T> track(String method, CompletableFuture<T> sent, long timeoutMillis,
+			String supersedeKey) {
+		long sentAt = System.nanoTime();
+		CompletableFuture<T> future = new CompletableFuture<>();
+		pendingRequests.add(future);
+
+		sent.whenComplete((result, error) -> {
+			if (error instanceof CancellationException) {
+				return; // cancelled through future
+			}
+			latencies.computeIfAbsent(method, m -> new LatencyHistogram()).record(System.nanoTime() - sentAt);
+			if (error != null) {
+				future.completeExceptionally(toLspException(method, error));
+			} else {
+				future.complete(result);
+			}
+		});
 
-			if (!obj.has("method")) {
-				// Svar (response) — kolla om det är initialize-svaret
-				if (obj.has("id") && obj.get("id").getAsInt() == 1) {
-					System.out.println("[LSP] Initialize response received — server ready");
-					this.ready = true;
-					try { sendInitialized(); } catch (IOException e) { e.printStackTrace(); }
-				}
-				return;
+		if (timeoutMillis > 0) {
+			future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS);
+		}
+		future.whenComplete((result, error) -> {
+			pendingRequests.remove(future);
+			if (error instanceof TimeoutException || error instanceof CancellationException) {
+				sent.cancel(true);
 			}
+		});
 
-			if ("textDocument/publishDiagnostics".equals(method)) {
-				parseDiagnostics(obj);
+		if (supersedeKey != null) {
+			CompletableFuture<?> previous = latestRequests.put(supersedeKey, future);
+			if (previous != null) {
+				previous.cancel(false);
 			}
+			future.whenComplete((result, error) -> latestRequests.remove(supersedeKey, future));
+		}
+		return future;
+	}
 
-		} catch (Exception e) {
-			System.err.println("[LSP] Failed to parse message: " + e.getMessage());
+	private static Throwable toLspException(String method, Throwable error) {
+		Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+		if (cause instanceof ResponseErrorException) {
+			ResponseError response = ((ResponseErrorException) cause).getResponseError();
+			return new LspResponseException(method, response.getCode(), response.getMessage());
 		}
+		return cause;
 	}
 
 	/**
-	 * Parses a publishDiagnostics notification and calls the listener.
+	 * @return The response times of the requests sent so far, by method.
 	 */
-	private void parseDiagnostics(JsonObject obj) {
-		if (diagnosticsListener == null) return;
-
-		JsonObject params = obj.getAsJsonObject("params");
-		String uri = params.get("uri").getAsString();
-
-		List<LspDiagnostic> result = new ArrayList<>();
-
-		var diagnosticsArr = params.getAsJsonArray("diagnostics");
-		for (var element : diagnosticsArr) {
-			JsonObject d = element.getAsJsonObject();
-
-			JsonObject range = d.getAsJsonObject("range");
-			JsonObject start = range.getAsJsonObject("start");
-			JsonObject end   = range.getAsJsonObject("end");
-
-			int startLine = start.get("line").getAsInt();
-			int startChar = start.get("character").getAsInt();
-			int endLine   = end.get("line").getAsInt();
-			int endChar   = end.get("character").getAsInt();
+	public Map<String, LatencyHistogram> getLatencies() {
+		return new TreeMap<>(latencies);
+	}
 
-			int severity = d.has("severity") ? d.get("severity").getAsInt() : 1;
-			String message = d.get("message").getAsString();
+	/**
+	 * @return The number of requests waiting for a response.
+	 */
+	public int getPendingRequestCount() {
+		return pendingRequests.size();
+	}
 
-			result.add(new LspDiagnostic(startLine, startChar, endLine, endChar, severity, message));
-		}
+	/**
+	 * Reads the TextDocumentSyncKind the server declared in its initialize result.
+	 * The capability is either the kind itself or an options object holding it.
+	 */
+	private static TextDocumentSyncKind readSyncKind(InitializeResult result) {
+		if (result == null || result.getCapabilities() == null) return TextDocumentSyncKind.None;
 
-		System.out.println("[LSP] Diagnostics for " + uri + ": " + result.size() + " items");
-		diagnosticsListener.onDiagnostics(uri, result);
+		Either<TextDocumentSyncKind, TextDocumentSyncOptions> sync = result.getCapabilities().getTextDocumentSync();
+		if (sync == null) return TextDocumentSyncKind.None;
+		TextDocumentSyncKind kind = sync.isLeft() ? sync.getLeft() : sync.getRight().getChange();
+		return kind != null ? kind : TextDocumentSyncKind.None;
 	}
 
 	public void sendInitialize() throws IOException {
@@ -239,74 +402,290 @@ public class LspManager {
 				.replace("file:/", "file:///")
 				.replace("file:////", "file:///");
 
-		String json = """
-            {"jsonrpc":"2.0","id":1,"method":"initialize","params":{"processId":%d,"rootUri":"%s","capabilities":{}}}
-            """.strip().formatted(ProcessHandle.current().pid(), rootUri);
-
-		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-		String header = "Content-Length: " + bytes.length + "\r\n\r\n";
+		SynchronizationCapabilities synchronization = new SynchronizationCapabilities();
+		synchronization.setDynamicRegistration(false);
+		TextDocumentClientCapabilities textDocument = new TextDocumentClientCapabilities();
+		textDocument.setSynchronization(synchronization);
+		WorkspaceClientCapabilities workspaceCapabilities = new WorkspaceClientCapabilities();
+		workspaceCapabilities.setWorkspaceFolders(true);
+		ClientCapabilities capabilities = new ClientCapabilities();
+		capabilities.setTextDocument(textDocument);
+		capabilities.setWorkspace(workspaceCapabilities);
+
+		InitializeParams params = new InitializeParams();
+		params.setProcessId((int) ProcessHandle.current().pid());
+		params.setWorkspaceFolders(List.of(new WorkspaceFolder(rootUri, workspace.getName())));
+		params.setCapabilities(capabilities);
+
+		// Sent before the server is ready, so it bypasses sendRequest
+		track("initialize", server.initialize(params), 0, null).thenAcceptAsync(result -> {
+			System.out.println("[LSP] Initialize response received — server ready");
+			this.incrementalSync = readSyncKind(result) == TextDocumentSyncKind.Incremental;
+			readyMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - launchedAt);
+
+			// initialized must come first, and no document may be opened directly before
+			// the queued ones are, so ready is set last
+			synchronized (pendingOpens) {
+				server.initialized(new InitializedParams());
+				pendingOpens.forEach(this::didOpen);
+				pendingOpens.clear();
+				this.ready = true;
+			}
+			reportStartup(String.format("Java language server ready after %.1f s", readyMillis / 1000.0));
+		}, executor).exceptionally(e -> {
+			System.err.println("[LSP] Initialize failed: " + e.getMessage());
+			return null;
+		});
+	}
 
-		stdin.write(header.getBytes(StandardCharsets.UTF_8));
-		stdin.write(bytes);
-		stdin.flush();
+	/**
+	 * Opens a document on the server. Before the server is ready the document is queued,
+	 * and sent with its latest text once it is.
+	 */
+	public void sendDidOpen(String filePath, String content) throws IOException {
+		String uri = Path.of(filePath).toUri().toString();
+		if (!queueUntilReady(uri, content)) {
+			didOpen(uri, content);
+		}
 	}
 
-	public void sendInitialized() throws IOException {
-		String json = """
-                {"jsonrpc":"2.0","method":"initialized","params":{}}
-                """.strip();
-		sendMessage(json);
+	private void didOpen(String uri, String content) {
+		// Set first, a dropped notification removes it again
+		documentVersion.put(uri, 1);
+		needsResync.remove(uri);
+		server.getTextDocumentService().didOpen(
+				new DidOpenTextDocumentParams(new TextDocumentItem(uri, "java", 1, content)));
 	}
 
-	public void sendDidOpen(String filePath, String content) throws IOException {
+	/**
+	 * Closes a document on the server, which then stops keeping its text in memory, and
+	 * forgets its version. A document that is still queued is only taken off the queue,
+	 * and one the server never opened, like a large file or a dropped didOpen, is skipped.
+	 */
+	public void sendDidClose(String filePath) {
 		String uri = Path.of(filePath).toUri().toString();
-		documentVersion.put(uri, 1);
+		synchronized (pendingOpens) {
+			if (pendingOpens.remove(uri) != null || !ready) {
+				return;
+			}
+		}
+		needsResync.remove(uri);
+		if (documentVersion.remove(uri) == null) {
+			return;
+		}
+		server.getTextDocumentService().didClose(new DidCloseTextDocumentParams(new TextDocumentIdentifier(uri)));
+	}
 
-		String escaped = escapeJson(content);
+	/**
+	 * Sends the edits made since the last didChange. Uses incremental sync if the server
+	 * negotiated it, and falls back to sending the whole text if it did not, or if there
+	 * are so many edits that the whole text is smaller, or if an earlier didChange was
+	 * dropped. A document the server has not seen yet, for example because it was opened
+	 * before the server was ready, is sent with didOpen instead.
+	 * @param filePath The path of the document.
+	 * @param changes The edits in the order they were made; each range refers to the
+	 * document as it was after the previous edit. The list must not be modified afterwards.
+	 * @param content Returns the current text of the document, only called when needed.
+	 */
+	public void sendDidChange(String filePath, List<LspTextChange> changes, Supplier<String> content)
+			throws IOException {
+		String uri = Path.of(filePath).toUri().toString();
 
-		String json = """
-                {"jsonrpc":"2.0","method":"textDocument/didOpen","params":{"textDocument":{"uri":"%s","languageId":"java","version":1,"text":"%s"}}}
-                """.strip().formatted(uri, escaped);
+		if (!documentVersion.containsKey(uri)) {
+			sendDidOpen(filePath, content.get());
+			return;
+		}
+		if (needsResync.remove(uri) || !incrementalSync || changes.size() > MAX_INCREMENTAL_CHANGES) {
+			sendDidChange(filePath, content.get());
+			return;
+		}
+		if (!isConnected()) return;
 
-		sendMessage(json);
+		List<TextDocumentContentChangeEvent> events = new ArrayList<>(changes.size());
+		for (LspTextChange change : changes) {
+			Range range = new Range(new Position(change.getStartLine(), change.getStartChar()),
+					new Position(change.getEndLine(), change.getEndChar()));
+			events.add(new TextDocumentContentChangeEvent(range, change.getText()));
+		}
+		didChange(uri, events);
 	}
 
 	public void sendDidChange(String filePath, String content) throws IOException {
 		String uri = Path.of(filePath).toUri().toString();
+		if (queueUntilReady(uri, content)) return;
 
-		int version = documentVersion.getOrDefault(uri, 1) + 1;
-		documentVersion.put(uri, version);
+		documentVersion.putIfAbsent(uri, 1);
+		didChange(uri, List.of(new TextDocumentContentChangeEvent(content)));
+	}
 
-		String escaped = escapeJson(content);
+	private void didChange(String uri, List<TextDocumentContentChangeEvent> events) {
+		// Set first, a dropped notification marks the document for a full-text resync
+		int version = documentVersion.merge(uri, 1, Integer::sum);
+		server.getTextDocumentService().didChange(
+				new DidChangeTextDocumentParams(new VersionedTextDocumentIdentifier(uri, version), events));
+	}
 
-		String json = """
-                {"jsonrpc":"2.0","method":"textDocument/didChange","params":{"textDocument":{"uri":"%s","version":%d},"contentChanges":[{"text":"%s"}]}}
-                """.strip().formatted(uri, version, escaped);
+	/**
+	 * Requests completion suggestions at a position. A completion request that is still
+	 * pending when the next one is sent is cancelled, since only the latest is shown.
+	 * Edits must have been sent with didChange before, so the server sees the same text.
+	 * @param filePath The path of the document.
+	 * @param line The line of the caret.
+	 * @param character The column of the caret.
+	 * @return The suggestions, sorted as the server wants them shown.
+	 */
+	public CompletableFuture<LspCompletionList> requestCompletion(String filePath, int line, int character) {
+		if (server == null || !ready) {
+			return CompletableFuture.failedFuture(new IllegalStateException("LSP server not ready"));
+		}
+		String uri = Path.of(filePath).toUri().toString();
+		CompletionParams params = new CompletionParams(new TextDocumentIdentifier(uri), new Position(line, character));
 
-		sendMessage(json);
+		return track("textDocument/completion", server.getTextDocumentService().completion(params),
+				COMPLETION_TIMEOUT_MS, "textDocument/completion").thenApplyAsync(LspManager::toCompletionList, executor);
 	}
 
-	private void sendMessage(String json) throws IOException {
-		if (stdin == null || !ready) {
+	/**
+	 * Converts the result of a completion request, either a CompletionList or a list of
+	 * CompletionItems.
+	 */
+	private static LspCompletionList toCompletionList(Either<List<CompletionItem>, CompletionList> result) {
+		if (result == null) {
+			return new LspCompletionList(List.of(), false);
+		}
+
+		boolean incomplete = result.isRight() && result.getRight().isIncomplete();
+		List<CompletionItem> items = result.isRight() ? result.getRight().getItems() : result.getLeft();
+
+		List<LspCompletionItem> converted = new ArrayList<>();
+		if (items != null) {
+			for (CompletionItem item : items) {
+				String insertText = item.getInsertText();
+				int editLine = -1;
+				int editChar = -1;
+				Either<TextEdit, InsertReplaceEdit> edit = item.getTextEdit();
+				if (edit != null) {
+					// A TextEdit has a range, an InsertReplaceEdit an insert range
+					Range range = edit.isLeft() ? edit.getLeft().getRange() : edit.getRight().getInsert();
+					editLine = range.getStart().getLine();
+					editChar = range.getStart().getCharacter();
+					insertText = edit.isLeft() ? edit.getLeft().getNewText() : edit.getRight().getNewText();
+				}
+
+				converted.add(new LspCompletionItem(item.getLabel(), item.getDetail(),
+						item.getKind() != null ? item.getKind().getValue() : 0, insertText,
+						item.getFilterText(), item.getSortText(), editLine, editChar));
+			}
+		}
+		converted.sort((a, b) -> a.getSortText().compareTo(b.getSortText()));
+		return new LspCompletionList(converted, incomplete);
+	}
+
+	/**
+	 * Queues the text of a document to be opened when the server is ready, replacing
+	 * any text queued for it before.
+	 * @return {@code true} if the server is not ready and the document was queued.
+	 */
+	private boolean queueUntilReady(String uri, String content) {
+		synchronized (pendingOpens) {
+			if (ready) {
+				return false;
+			}
+			pendingOpens.put(uri, content);
+			return true;
+		}
+	}
+
+	/**
+	 * @return {@code true} if notifications can be sent, otherwise logs that they are skipped.
+	 */
+	private boolean isConnected() {
+		if (server == null || !ready) {
 			System.err.println("[LSP] sendMessage skipped — server not ready yet");
-			return;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Stops the server: sends shutdown, and exit once the server answered it, then waits
+	 * for the process to end. A server that is not ready, does not answer or does not
+	 * exit in time is killed, so this returns within about the timeout. Calling it
+	 * again does nothing, and a server still being launched is killed once it is.
+	 * @param timeoutMillis How long to wait for the server in total.
+	 */
+	public void shutdown(long timeoutMillis) {
+		Process p;
+		synchronized (this) {
+			if (shutDown) return;
+			shutDown = true;
+			p = process;
+		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		boolean wasReady;
+		synchronized (pendingOpens) {
+			wasReady = ready;
+			ready = false;
+			pendingOpens.clear();
 		}
-		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
-		String header = "Content-Length: " + bytes.length + "\r\n\r\n";
-		stdin.write(header.getBytes(StandardCharsets.UTF_8));
-		stdin.write(bytes);
-		stdin.flush();
+		if (wasReady) {
+			try {
+				server.shutdown().get(remainingMillis(deadline), TimeUnit.MILLISECONDS);
+				server.exit();
+			} catch (TimeoutException | ExecutionException e) {
+				System.err.println("[LSP] Shutdown not answered: " + e);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		if (writer != null) {
+			// Lets exit be written before the pipe is closed
+			writer.close(remainingMillis(deadline));
+		}
+		pendingRequests.forEach(request -> request.cancel(false));
+		documentVersion.clear();
+		needsResync.clear();
+
+		if (p != null) {
+			try {
+				if (!p.waitFor(remainingMillis(deadline), TimeUnit.MILLISECONDS)) {
+					System.err.println("[LSP] Server did not exit in time, killing it");
+					p.destroyForcibly();
+				}
+			} catch (InterruptedException e) {
+				p.destroyForcibly();
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private static long remainingMillis(long deadline) {
+		return Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
 	}
 
-	private String escapeJson(String text) {
-		return text
-				.replace("\\", "\\\\")
-				.replace("\"", "\\\"")
-				.replace("\n", "\\n")
-				.replace("\r", "");
+	/**
+	 * @return The number of documents the server has open, or that wait to be opened
+	 * until it is ready.
+	 */
+	public int getOpenDocumentCount() {
+		synchronized (pendingOpens) {
+			return documentVersion.size() + pendingOpens.size();
+		}
 	}
 
+	/**
+	 * @return {@code true} if the server accepts incremental didChange notifications.
+	 */
+	public boolean isIncrementalSync() { return incrementalSync; }
+
 	public OutputStream getStdin() { return this.stdin; }
 
+	/**
+	 * @return The writer thread of the server, for its queue and latency metrics, or
+	 * null if the server was not started.
+	 */
+	public LspWriter getWriter() { return this.writer; }
+
 	public boolean isReady() { return ready; }
-}
\ No newline at end of file
+}
@@ -0,0 +1,89 @@
+package zenit.LSP;
+
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Sends the messages of lsp4j through an {@link LspWriter} instead of lsp4j's own
+ * StreamMessageConsumer, which serializes each message to a String and writes it
+ * while holding a lock, on the thread that sent it. Here the message is queued and
+ * serialized by the writer thread straight into its frame buffer, and full-text
+ * didChange notifications supersede the queued ones for the same document.
+ */
+class LspMessageConsumer implements MessageConsumer {
+
+	private static final String DID_CHANGE = "textDocument/didChange";
+
+	private final LspWriter writer;
+	private final MessageJsonHandler jsonHandler;
+	private final Consumer<Message> droppedListener;
+
+	/**
+	 * @param droppedListener Called with each message the writer dropped, on the thread
+	 * that sent it. May be null.
+	 */
+	LspMessageConsumer(LspWriter writer, MessageJsonHandler jsonHandler, Consumer<Message> droppedListener) {
+		this.writer = writer;
+		this.jsonHandler = jsonHandler;
+		this.droppedListener = droppedListener;
+	}
+
+	/**
+	 * Queues a message.
+	 * @throws JsonRpcException If the message was dropped. lsp4j fails the future of a
+	 * dropped request with it, and logs it for a notification.
+	 */
+	@Override
+	public void consume(Message message) {
+		LspWriter.JsonBody body = json -> jsonHandler.getGson().toJson(message, Message.class, json);
+
+		boolean queued;
+		String uri = didChangeUri(message);
+		if (uri != null) {
+			queued = writer.sendDidChange(uri, isFullText(message), body);
+		} else {
+			queued = writer.send(body);
+		}
+
+		if (!queued) {
+			if (droppedListener != null) {
+				droppedListener.accept(message);
+			}
+			throw new JsonRpcException(new IOException("Message dropped, the LSP writer is full or closed"));
+		}
+	}
+
+	/**
+	 * @return The document a didChange notification changes, or null if the message is
+	 * not one.
+	 */
+	private static String didChangeUri(Message message) {
+		if (!(message instanceof NotificationMessage)) {
+			return null;
+		}
+		NotificationMessage notification = (NotificationMessage) message;
+		if (!DID_CHANGE.equals(notification.getMethod())
+				|| !(notification.getParams() instanceof DidChangeTextDocumentParams)) {
+			return null;
+		}
+		return ((DidChangeTextDocumentParams) notification.getParams()).getTextDocument().getUri();
+	}
+
+	private static boolean isFullText(Message message) {
+		DidChangeTextDocumentParams params = (DidChangeTextDocumentParams) ((NotificationMessage) message).getParams();
+		for (TextDocumentContentChangeEvent change : params.getContentChanges()) {
+			if (change.getRange() != null) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
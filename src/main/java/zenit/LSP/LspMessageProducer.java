@@ -0,0 +1,58 @@
+package zenit.LSP;
+
+import com.google.gson.JsonParseException;
+import org.eclipse.lsp4j.jsonrpc.JsonRpcException;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.MessageIssueException;
+import org.eclipse.lsp4j.jsonrpc.MessageIssueHandler;
+import org.eclipse.lsp4j.jsonrpc.MessageProducer;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Feeds the messages of a language server to lsp4j, read with an {@link LspMessageReader}
+ * instead of lsp4j's own StreamMessageProducer, which reads the headers a byte at a
+ * time and copies each body into a new String before parsing it.
+ */
+class LspMessageProducer implements MessageProducer {
+
+	private final LspMessageReader reader;
+	private final MessageJsonHandler jsonHandler;
+	private final MessageIssueHandler issueHandler;
+
+	LspMessageProducer(InputStream in, MessageJsonHandler jsonHandler, MessageIssueHandler issueHandler) {
+		this.reader = new LspMessageReader(in);
+		this.jsonHandler = jsonHandler;
+		this.issueHandler = issueHandler;
+	}
+
+	/**
+	 * Reads messages until the stream ends. A message that is not valid JSON-RPC is
+	 * logged, or reported to the issue handler if it could be identified, and skipped.
+	 * @throws JsonRpcException If reading the stream fails.
+	 */
+	@Override
+	public void listen(MessageConsumer consumer) {
+		try {
+			while (reader.next()) {
+				Message message;
+				try {
+					message = jsonHandler.parseMessage(reader.getBodyReader());
+				} catch (MessageIssueException e) {
+					issueHandler.handle(e.getRpcMessage(), e.getIssues());
+					continue;
+				} catch (JsonParseException e) {
+					// The malformed body was consumed, so the next message can still be read
+					System.err.println("[LSP] Failed to parse message: " + e.getMessage());
+					continue;
+				}
+				consumer.consume(message);
+			}
+		} catch (IOException e) {
+			throw new JsonRpcException(e);
+		}
+	}
+}
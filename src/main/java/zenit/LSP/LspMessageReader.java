@@ -0,0 +1,218 @@
+package zenit.LSP;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads Content-Length framed JSON-RPC messages from the output of a language server.
+ *
+ * The stream is read in blocks into a reusable buffer, and the headers are parsed
+ * directly from its bytes, so no strings are created for them. Message bodies are
+ * read into a buffer that grows to the largest message seen and is then reused, and
+ * decoded into a reusable char buffer that the JSON parser reads from.
+ */
+public class LspMessageReader {
+
+	// Matched case-insensitively, header names are not case-sensitive
+	private static final byte[] CONTENT_LENGTH = "content-length:".getBytes(StandardCharsets.US_ASCII);
+
+	// Larger announced lengths are treated as a corrupt stream
+	static final int MAX_MESSAGE_BYTES = 256 * 1024 * 1024;
+
+	private final InputStream in;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+
+	private byte[] body = new byte[8192];
+	private int bodyLength;
+
+	private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE)
+			.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private char[] chars = new char[8192];
+
+	public LspMessageReader(InputStream in) {
+		this(in, 8192);
+	}
+
+	public LspMessageReader(InputStream in, int bufferSize) {
+		this.in = in;
+		this.buffer = new byte[bufferSize];
+	}
+
+	/**
+	 * Reads the next message and parses its body.
+	 * @return The message, or null if the stream ended.
+	 * @throws IOException If reading fails or the stream ends inside a message.
+	 * @throws com.google.gson.JsonParseException If the body is not a JSON object. The
+	 * body has been consumed, so the next message can still be read.
+	 */
+	public JsonObject readMessage() throws IOException {
+		if (!next()) {
+			return null;
+		}
+		JsonReader jsonReader = new JsonReader(getBodyReader());
+		jsonReader.setLenient(true);
+		return JsonParser.parseReader(jsonReader).getAsJsonObject();
+	}
+
+	/**
+	 * Reads the next message body into the body buffer without parsing it. Header
+	 * blocks without a Content-Length are skipped.
+	 * @return {@code false} if the stream ended before another message started.
+	 * @throws IOException If reading fails or the stream ends inside a message.
+	 */
+	public boolean next() throws IOException {
+		while (true) {
+			int contentLength = readHeaders();
+			if (contentLength == -2) {
+				return false;
+			}
+			if (contentLength < 0) {
+				System.err.println("[LSP-READER] Skipped a header block without Content-Length");
+				continue;
+			}
+			readBody(contentLength);
+			return true;
+		}
+	}
+
+	/**
+	 * @return The buffer holding the body of the last message read. Only the first
+	 * {@link #getBodyLength()} bytes belong to it, and it is overwritten by the next one.
+	 */
+	public byte[] getBody() { return body; }
+
+	public int getBodyLength() { return bodyLength; }
+
+	/**
+	 * Decodes the body of the last message read for a JSON parser.
+	 * @return A reader of the body, valid until the next message is read.
+	 */
+	public Reader getBodyReader() {
+		int length = decodeBody();
+		return new CharArrayReader(chars, 0, length);
+	}
+
+	/**
+	 * Parses one header block, up to and including the empty line that ends it.
+	 * @return The Content-Length, -1 if the block had none, or -2 if the stream ended
+	 * before the block started.
+	 */
+	private int readHeaders() throws IOException {
+		int contentLength = -1;
+		int lineLength = 0;  // bytes in the current line, not counting \r
+		int matched = 0;     // bytes of CONTENT_LENGTH matched at the start of the line
+		long value = -1;     // the value of a Content-Length line, while it is parsed
+		boolean started = false;
+
+		while (true) {
+			if (position == limit && !fill()) {
+				if (!started) {
+					return -2;
+				}
+				throw new IOException("Stream ended inside LSP headers");
+			}
+			byte b = buffer[position++];
+
+			if (b == '\n') {
+				if (lineLength == 0) {
+					if (started) {
+						return contentLength;
+					}
+					continue; // stray line break between messages
+				}
+				if (value >= 0) {
+					contentLength = (int) value;
+				}
+				lineLength = 0;
+				matched = 0;
+				value = -1;
+				continue;
+			}
+			if (b == '\r') {
+				continue;
+			}
+			started = true;
+
+			if (matched == lineLength && matched < CONTENT_LENGTH.length) {
+				if (toLowerAscii(b) == CONTENT_LENGTH[matched]) {
+					matched++;
+				}
+			} else if (matched == CONTENT_LENGTH.length) {
+				if (b >= '0' && b <= '9') {
+					value = (value < 0 ? 0 : value * 10) + (b - '0');
+					if (value > MAX_MESSAGE_BYTES) {
+						throw new IOException("LSP message too large: Content-Length exceeds " + MAX_MESSAGE_BYTES);
+					}
+				} else if (value >= 0 || (b != ' ' && b != '\t')) {
+					// The value ended, anything after it is ignored
+					matched = Integer.MAX_VALUE;
+				}
+			}
+			lineLength++;
+		}
+	}
+
+	private static int toLowerAscii(byte b) {
+		return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+	}
+
+	private void readBody(int length) throws IOException {
+		if (body.length < length) {
+			body = new byte[Math.max(length, body.length * 2)];
+		}
+
+		int buffered = Math.min(limit - position, length);
+		System.arraycopy(buffer, position, body, 0, buffered);
+		position += buffered;
+
+		int read = buffered;
+		while (read < length) {
+			int r = in.read(body, read, length - read);
+			if (r == -1) {
+				throw new IOException("Stream ended inside an LSP message (" + read + " of " + length + " bytes)");
+			}
+			read += r;
+		}
+		bodyLength = length;
+	}
+
+	/**
+	 * Decodes the body into the char buffer.
+	 * @return The number of chars.
+	 */
+	private int decodeBody() {
+		// UTF-8 never decodes to more chars than it has bytes
+		if (chars.length < bodyLength) {
+			chars = new char[Math.max(bodyLength, chars.length * 2)];
+		}
+		CharBuffer out = CharBuffer.wrap(chars);
+		decoder.reset();
+		decoder.decode(ByteBuffer.wrap(body, 0, bodyLength), out, true);
+		decoder.flush(out);
+		return out.position();
+	}
+
+	private boolean fill() throws IOException {
+		int r = in.read(buffer, 0, buffer.length);
+		if (r <= 0) {
+			return false;
+		}
+		position = 0;
+		limit = r;
+		return true;
+	}
+}
@@ -0,0 +1,24 @@
+package zenit.LSP;
+
+/**
+ * Completes the future of an LSP request that the server answered with an error.
+ */
+public class LspResponseException extends Exception {
+
+	private static final long serialVersionUID = 1L;
+
+	// JSON-RPC error code sent by the server when a request was cancelled
+	public static final int REQUEST_CANCELLED = -32800;
+
+	private final int code;
+
+	public LspResponseException(String method, int code, String message) {
+		super(method + " failed (" + code + "): " + message);
+		this.code = code;
+	}
+
+	/**
+	 * @return The JSON-RPC error code.
+	 */
+	public int getCode() { return code; }
+}
@@ -0,0 +1,53 @@
+package zenit.LSP;
+
+/**
+ * A single edit sent to the LSP server in an incremental textDocument/didChange:
+ * the text between two positions, as the document was before the edit, is replaced
+ * by {@code text}. Lines and characters are zero-based, and characters count UTF-16
+ * code units like Java strings do.
+ */
+public class LspTextChange {
+
+    private final int startLine;
+    private final int startChar;
+    private final int endLine;
+    private final int endChar;
+    private final String text;
+
+    public LspTextChange(int startLine, int startChar, int endLine, int endChar, String text) {
+        this.startLine = startLine;
+        this.startChar = startChar;
+        this.endLine   = endLine;
+        this.endChar   = endChar;
+        this.text      = text;
+    }
+
+    /**
+     * Creates the change for an edit that removed {@code removed} and inserted
+     * {@code inserted} at the given position.
+     */
+    public static LspTextChange of(int line, int character, String removed, String inserted) {
+        int endLine = line;
+        int endChar = character + removed.length();
+
+        int lastBreak = removed.lastIndexOf('\n');
+        if (lastBreak >= 0) {
+            for (int i = 0; i <= lastBreak; i++) {
+                if (removed.charAt(i) == '\n') endLine++;
+            }
+            endChar = removed.length() - lastBreak - 1;
+        }
+        return new LspTextChange(line, character, endLine, endChar, inserted);
+    }
+
+    public int getStartLine() { return startLine; }
+    public int getStartChar() { return startChar; }
+    public int getEndLine()   { return endLine; }
+    public int getEndChar()   { return endChar; }
+    public String getText()   { return text; }
+
+    @Override
+    public String toString() {
+        return String.format("%d:%d-%d:%d \"%s\"", startLine, startChar, endLine, endChar, text);
+    }
+}
@@ -0,0 +1,408 @@
+package zenit.LSP;
+
+import com.google.gson.stream.JsonWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Writes messages to the stdin of a language server on a dedicated thread, so the
+ * threads that send them, mostly the FX thread, never wait for a slow server.
+ *
+ * Messages are queued as {@link JsonBody} callbacks and encoded by the writer thread,
+ * which takes everything queued at once, encodes each message as UTF-8 into a reused
+ * frame buffer, writes it after its Content-Length header and flushes once per batch.
+ * Message content such as document text is streamed into the buffer in a single pass,
+ * and is never encoded at all if the message is superseded while queued.
+ *
+ * A full-text didChange supersedes every didChange for the same document that has
+ * not been written yet, so those are replaced by it in the queue instead of being
+ * written. The queue is bounded: when it is full, senders wait for a short while and
+ * then the message is dropped and reported as not sent, so the caller can
+ * resynchronize the document later.
+ */
+public class LspWriter {
+
+	static final int DEFAULT_CAPACITY = 256;
+	static final long DEFAULT_OFFER_TIMEOUT_MS = 200;
+
+	// Messages that waited longer than this before being flushed are logged
+	private static final long SLOW_WRITE_MS = 1000;
+
+	// A frame buffer grown past this is released after the message that needed it
+	private static final int MAX_RETAINED_FRAME_BYTES = 4 * 1024 * 1024;
+
+	/**
+	 * Writes the JSON of a message. Called on the writer thread, so it must only read
+	 * state that does not change after the message is sent.
+	 */
+	@FunctionalInterface
+	public interface JsonBody {
+		void write(JsonWriter json) throws IOException;
+	}
+
+	/**
+	 * A queued message. {@code documentUri} is set for didChange notifications.
+	 */
+	private static final class Message {
+		private final JsonBody body;
+		private final String documentUri;
+		private final long enqueuedAt = System.nanoTime();
+
+		private Message(JsonBody body, String documentUri) {
+			this.body = body;
+			this.documentUri = documentUri;
+		}
+	}
+
+	private final OutputStream out;
+	private ByteArrayOutputStream frame = new ByteArrayOutputStream(8192);
+	private Writer frameWriter = newFrameWriter();
+	private final int capacity;
+	private final long offerTimeoutMillis;
+
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+	private List<Message> queue = new ArrayList<>();
+	private boolean closed;
+	private Thread thread;
+
+	// Metrics, updated under the lock
+	private int maxQueueDepth;
+	private long writtenCount;
+	private long coalescedCount;
+	private long droppedCount;
+	private long batchCount;
+	private long totalLatencyNanos;
+	private long maxLatencyNanos;
+
+	public LspWriter(OutputStream out) {
+		this(out, DEFAULT_CAPACITY, DEFAULT_OFFER_TIMEOUT_MS);
+	}
+
+	/**
+	 * @param out The stdin of the server.
+	 * @param capacity The number of messages that can be queued.
+	 * @param offerTimeoutMillis How long a sender waits for room in a full queue.
+	 */
+	public LspWriter(OutputStream out, int capacity, long offerTimeoutMillis) {
+		this.out = new BufferedOutputStream(out, 64 * 1024);
+		this.capacity = capacity;
+		this.offerTimeoutMillis = offerTimeoutMillis;
+	}
+
+	/**
+	 * Starts the writer thread.
+	 */
+	public void start() {
+		thread = new Thread(this::run, "lsp-writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues a message.
+	 * @return {@code false} if the message was dropped because the queue stayed full
+	 * or the writer is closed.
+	 */
+	public boolean send(JsonBody body) {
+		return enqueue(new Message(body, null), false);
+	}
+
+	/**
+	 * Queues a message that is already encoded as JSON.
+	 */
+	public boolean send(String json) {
+		return send(writer -> writer.jsonValue(json));
+	}
+
+	/**
+	 * Queues a didChange notification.
+	 * @param documentUri The document the notification changes.
+	 * @param fullText {@code true} if the notification carries the whole text, which
+	 * makes every unwritten didChange for the document obsolete.
+	 * @return {@code false} if the notification was dropped.
+	 */
+	public boolean sendDidChange(String documentUri, boolean fullText, JsonBody body) {
+		return enqueue(new Message(body, documentUri), fullText);
+	}
+
+	/**
+	 * Queues a didChange notification that is already encoded as JSON.
+	 */
+	public boolean sendDidChange(String documentUri, boolean fullText, String json) {
+		return sendDidChange(documentUri, fullText, writer -> writer.jsonValue(json));
+	}
+
+	private boolean enqueue(Message message, boolean supersedes) {
+		lock.lock();
+		try {
+			if (closed) {
+				droppedCount++;
+				return false;
+			}
+			if (supersedes && coalesce(message)) {
+				return true;
+			}
+
+			long remaining = TimeUnit.MILLISECONDS.toNanos(offerTimeoutMillis);
+			while (queue.size() >= capacity && !closed) {
+				if (remaining <= 0) {
+					droppedCount++;
+					System.err.println("[LSP-WRITER] Queue full, dropped a message");
+					return false;
+				}
+				remaining = notFull.awaitNanos(remaining);
+			}
+			if (closed) {
+				droppedCount++;
+				return false;
+			}
+			queue.add(message);
+			maxQueueDepth = Math.max(maxQueueDepth, queue.size());
+			notEmpty.signal();
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			droppedCount++;
+			return false;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Replaces the queued didChange notifications for the document of {@code message}
+	 * with it, at the place of the first one.
+	 * @return {@code false} if there were none.
+	 */
+	private boolean coalesce(Message message) {
+		int first = -1;
+		for (int i = queue.size() - 1; i >= 0; i--) {
+			if (message.documentUri.equals(queue.get(i).documentUri)) {
+				queue.remove(i);
+				coalescedCount++;
+				first = i;
+			}
+		}
+		if (first < 0) {
+			return false;
+		}
+		queue.add(first, message);
+		notFull.signalAll();
+		return true;
+	}
+
+	private void run() {
+		while (true) {
+			List<Message> batch;
+			lock.lock();
+			try {
+				while (queue.isEmpty() && !closed) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (queue.isEmpty()) {
+					return;
+				}
+				batch = queue;
+				queue = new ArrayList<>();
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+
+			try {
+				for (Message message : batch) {
+					writeFrame(message);
+				}
+				out.flush();
+			} catch (IOException e) {
+				System.err.println("[LSP-WRITER] Write failed, closing: " + e.getMessage());
+				lock.lock();
+				try {
+					droppedCount += batch.size() + queue.size();
+					queue.clear();
+					closed = true;
+					notFull.signalAll();
+				} finally {
+					lock.unlock();
+				}
+				return;
+			}
+			recordBatch(batch);
+		}
+	}
+
+	/**
+	 * Encodes a message into the frame buffer and writes it with its header. A message
+	 * that fails to encode is logged and skipped.
+	 */
+	private void writeFrame(Message message) throws IOException {
+		frame.reset();
+		try {
+			JsonWriter json = new JsonWriter(frameWriter);
+			message.body.write(json);
+			json.flush();
+		} catch (IOException | RuntimeException e) {
+			System.err.println("[LSP-WRITER] Could not encode a message: " + e);
+			frameWriter = newFrameWriter();
+			return;
+		}
+
+		out.write(("Content-Length: " + frame.size() + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		frame.writeTo(out);
+
+		if (frame.size() > MAX_RETAINED_FRAME_BYTES) {
+			frame = new ByteArrayOutputStream(8192);
+			frameWriter = newFrameWriter();
+		}
+	}
+
+	private Writer newFrameWriter() {
+		return new OutputStreamWriter(frame, StandardCharsets.UTF_8);
+	}
+
+	private void recordBatch(List<Message> batch) {
+		long now = System.nanoTime();
+		long slowest = 0;
+		lock.lock();
+		try {
+			batchCount++;
+			for (Message message : batch) {
+				long latency = now - message.enqueuedAt;
+				writtenCount++;
+				totalLatencyNanos += latency;
+				maxLatencyNanos = Math.max(maxLatencyNanos, latency);
+				slowest = Math.max(slowest, latency);
+			}
+		} finally {
+			lock.unlock();
+		}
+		if (TimeUnit.NANOSECONDS.toMillis(slowest) > SLOW_WRITE_MS) {
+			System.err.println("[LSP-WRITER] Slow server: a message waited "
+					+ TimeUnit.NANOSECONDS.toMillis(slowest) + " ms, " + getMetrics());
+		}
+	}
+
+	/**
+	 * Stops accepting messages and waits for the queued ones to be written.
+	 * @param timeoutMillis How long to wait for the writer thread.
+	 */
+	public void close(long timeoutMillis) {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		if (thread != null) {
+			try {
+				thread.join(timeoutMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * @return The number of messages waiting to be written.
+	 */
+	public int getQueueDepth() {
+		lock.lock();
+		try {
+			return queue.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getMaxQueueDepth() {
+		lock.lock();
+		try {
+			return maxQueueDepth;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getWrittenCount() {
+		lock.lock();
+		try {
+			return writtenCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The number of didChange notifications that were replaced before being written.
+	 */
+	public long getCoalescedCount() {
+		lock.lock();
+		try {
+			return coalescedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public long getDroppedCount() {
+		lock.lock();
+		try {
+			return droppedCount;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The average time from queueing a message until it was flushed, in milliseconds.
+	 */
+	public double getAverageLatencyMillis() {
+		lock.lock();
+		try {
+			return writtenCount == 0 ? 0 : totalLatencyNanos / (writtenCount * 1_000_000.0);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return The longest time from queueing a message until it was flushed, in milliseconds.
+	 */
+	public double getMaxLatencyMillis() {
+		lock.lock();
+		try {
+			return maxLatencyNanos / 1_000_000.0;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * @return A one-line summary of the metrics, for logging.
+	 */
+	public String getMetrics() {
+		lock.lock();
+		try {
+			return String.format("queued=%d maxQueued=%d written=%d batches=%d coalesced=%d dropped=%d "
+					+ "avgLatency=%.2fms maxLatency=%.2fms", queue.size(), maxQueueDepth, writtenCount,
+					batchCount, coalescedCount, droppedCount, getAverageLatencyMillis(), getMaxLatencyMillis());
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -151,6 +151,25 @@ public class FileController {
 		return false;
 	}
 	
+	/**
+	 * Tries to write {@code lines} to {@code file}, separated by line breaks. Prints
+	 * error message if content can't be written.
+	 * @param file The file to write over.
+	 * @param lines The lines to write to disk
+	 */
+	public boolean writeLines(File file, Iterable<? extends CharSequence> lines) {
+
+		if (file != null && lines != null) {
+			try {
+				JavaFileHandler.saveLines(file, lines); //Tries to save file
+				return true;
+			} catch (IOException ex) {
+				System.err.println("FileController.writeLines: " + ex.getMessage());
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Renames a file-object and it's file path using {@link main.java.zenit.filesystem.JavaFileHandler
 	 * #renameFile(File, String) renameFile} method if {@code file} is a file or
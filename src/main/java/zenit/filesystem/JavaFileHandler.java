@@ -115,6 +115,31 @@ public class JavaFileHandler extends FileHandler {
 		}
 	}
 
+	/**
+	 * Tries to save {@code lines} to disk in {@code file}, separated by line breaks.
+	 * Lets an editor save its text without first joining it into a single String.
+	 * @param file The file to write over with {@code lines}.
+	 * @param lines The lines of the new content of the file, without line breaks
+	 * @throws IOException Throws {@link java.io.IOException IOException} if file
+	 * can't be saved.
+	 */
+	protected static void saveLines(File file, Iterable<? extends CharSequence> lines) throws IOException {
+		try (BufferedWriter br = new BufferedWriter(new OutputStreamWriter(
+				new FileOutputStream(file), textEncoding))) {
+			boolean first = true;
+			for (CharSequence line : lines) {
+				if (!first) {
+					br.write('\n');
+				}
+				br.append(line);
+				first = false;
+			}
+			br.flush();
+		} catch (IOException ex) {
+			throw new IOException(ex.getMessage());
+		}
+	}
+
 	/**
 	 * Tries to rename the file.
 	 * @param oldFile File to be renamed
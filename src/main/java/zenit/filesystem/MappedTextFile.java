@@ -0,0 +1,225 @@
+package zenit.filesystem;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Read-only access to the lines of a text file that is too large to load into memory.
+ *
+ * The file is memory-mapped, so its bytes are paged in by the operating system as they
+ * are read and never copied onto the heap as a whole. A sparse line index stores the
+ * byte offset of every {@link #LINES_PER_CHECKPOINT}th line; a line is found by starting
+ * at the nearest checkpoint before it and scanning forward for line breaks.
+ */
+public class MappedTextFile implements Closeable {
+
+	/** The number of lines between two entries in the line index. */
+	public static final int LINES_PER_CHECKPOINT = 256;
+
+	/** Lines longer than this are cut off when read with {@link #getLine(int)}. */
+	public static final int MAX_LINE_BYTES = 10_000;
+
+	// A single mapping can not exceed Integer.MAX_VALUE bytes
+	private static final int SEGMENT_SHIFT = 30;
+	private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+	// How many bytes find searches between checks for cancellation, a power of two
+	static final long CANCEL_CHECK_BYTES = 1L << 20;
+
+	private final FileChannel channel;
+	private final MappedByteBuffer[] segments;
+	private final long size;
+
+	private long[] checkpoints;
+	private int lineCount;
+
+	/**
+	 * Maps {@code file} and builds its line index, which reads the whole file once.
+	 * @param file The file to open.
+	 * @throws IOException If the file can't be opened or mapped.
+	 */
+	public MappedTextFile(File file) throws IOException {
+		channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			size = channel.size();
+			segments = new MappedByteBuffer[(int) ((size + SEGMENT_SIZE - 1) >>> SEGMENT_SHIFT)];
+			for (int i = 0; i < segments.length; i++) {
+				long position = (long) i << SEGMENT_SHIFT;
+				segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(SEGMENT_SIZE, size - position));
+			}
+			buildIndex();
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	private void buildIndex() {
+		long[] index = new long[64];
+		int count = 1; // index[0] = 0, the first line
+		int lines = 1;
+
+		for (int s = 0; s < segments.length; s++) {
+			MappedByteBuffer segment = segments[s];
+			long base = (long) s << SEGMENT_SHIFT;
+			int limit = segment.limit();
+			for (int i = 0; i < limit; i++) {
+				if (segment.get(i) == '\n') {
+					if (lines % LINES_PER_CHECKPOINT == 0) {
+						if (count == index.length) {
+							index = Arrays.copyOf(index, count * 2);
+						}
+						index[count++] = base + i + 1;
+					}
+					lines++;
+				}
+			}
+		}
+
+		checkpoints = Arrays.copyOf(index, count);
+		lineCount = lines;
+	}
+
+	/**
+	 * @return The number of lines in the file. A line break at the end of the file is
+	 * followed by an empty last line.
+	 */
+	public int getLineCount() {
+		return lineCount;
+	}
+
+	/**
+	 * @return The size of the file in bytes.
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	/**
+	 * Reads a line, decoded as UTF-8 and without its line break.
+	 * @param line Index of the line.
+	 * @return The text of the line, cut off after {@link #MAX_LINE_BYTES} bytes.
+	 */
+	public String getLine(int line) {
+		long start = getLineStart(line);
+		long end = start;
+		long limit = Math.min(size, start + MAX_LINE_BYTES);
+		while (end < limit && byteAt(end) != '\n') {
+			end++;
+		}
+
+		boolean cut = end == limit && limit < size && byteAt(end) != '\n';
+		if (!cut && end > start && byteAt(end - 1) == '\r') {
+			end--;
+		}
+
+		byte[] bytes = new byte[(int) (end - start)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = byteAt(start + i);
+		}
+		String text = new String(bytes, StandardCharsets.UTF_8);
+		return cut ? text + " …" : text;
+	}
+
+	/**
+	 * @param line Index of the line.
+	 * @return The byte offset of the first character of the line.
+	 */
+	public long getLineStart(int line) {
+		if (line < 0 || line >= lineCount) {
+			throw new IndexOutOfBoundsException("Line " + line + " of " + lineCount);
+		}
+
+		long position = checkpoints[line / LINES_PER_CHECKPOINT];
+		for (int remaining = line % LINES_PER_CHECKPOINT; remaining > 0; position++) {
+			if (byteAt(position) == '\n') {
+				remaining--;
+			}
+		}
+		return position;
+	}
+
+	/**
+	 * @param offset A byte offset in the file.
+	 * @return Index of the line that contains the offset.
+	 */
+	public int getLineOf(long offset) {
+		int checkpoint = Arrays.binarySearch(checkpoints, offset);
+		if (checkpoint < 0) {
+			checkpoint = -checkpoint - 2;
+		}
+
+		int line = checkpoint * LINES_PER_CHECKPOINT;
+		for (long position = checkpoints[checkpoint]; position < offset; position++) {
+			if (byteAt(position) == '\n') {
+				line++;
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * Searches the mapped bytes for the UTF-8 encoding of {@code text}, without decoding
+	 * the file.
+	 * @param text The text to search for.
+	 * @param from The byte offset to start searching at.
+	 * @return The byte offset of the first match at or after {@code from}, or -1 if there
+	 * is none.
+	 */
+	public long find(String text, long from) {
+		return find(text, from, () -> false);
+	}
+
+	/**
+	 * Searches like {@link #find(String, long)}, and gives up once {@code cancelled} is
+	 * true. It is checked for every megabyte searched.
+	 * @param cancelled Tells whether the search is no longer needed.
+	 * @return The byte offset of the first match, or -1 if there is none or the search was
+	 * cancelled.
+	 */
+	public long find(String text, long from, BooleanSupplier cancelled) {
+		byte[] needle = text.getBytes(StandardCharsets.UTF_8);
+		if (needle.length == 0) {
+			return -1;
+		}
+
+		byte first = needle[0];
+		long last = size - needle.length;
+		for (long position = Math.max(0, from); position <= last; position++) {
+			if ((position & (CANCEL_CHECK_BYTES - 1)) == 0 && cancelled.getAsBoolean()) {
+				return -1;
+			}
+			if (byteAt(position) != first) {
+				continue;
+			}
+			int i = 1;
+			while (i < needle.length && byteAt(position + i) == needle[i]) {
+				i++;
+			}
+			if (i == needle.length) {
+				return position;
+			}
+		}
+		return -1;
+	}
+
+	private byte byteAt(long position) {
+		return segments[(int) (position >>> SEGMENT_SHIFT)].get((int) (position & (SEGMENT_SIZE - 1)));
+	}
+
+	/**
+	 * Closes the file. The mapping itself is released once it is garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+}
@@ -73,11 +73,19 @@ public class CommandBuilder {
 	}
 	
 	private void mergeLibraries() {
+		libraries = mergeLibraries(internalLibraries, externalLibraries);
+	}
+
+	/**
+	 * @return The internal libraries followed by the external ones, or null if there are
+	 * neither.
+	 */
+	static String[] mergeLibraries(String[] internalLibraries, String[] externalLibraries) {
 		int intLength = 0;
 		int extLength = 0;
 		
 		if (internalLibraries == null && externalLibraries == null) {
-			return;
+			return null;
 		}
 		
 		if (internalLibraries != null) {
@@ -86,7 +94,7 @@ public class CommandBuilder {
 		if (externalLibraries != null) {
 			extLength = externalLibraries.length;
 		}
-		libraries = new String[intLength + extLength];
+		String[] libraries = new String[intLength + extLength];
 		for (int i = 0; i < libraries.length; i++) {
 			if (i < intLength) {
 				libraries[i] = internalLibraries[i];
@@ -94,6 +102,7 @@ public class CommandBuilder {
 				libraries[i] = externalLibraries[i-intLength];
 			}
 		}
+		return libraries;
 	}
 
 	public String generateCommand() {
@@ -0,0 +1,323 @@
+package zenit.javacodecompiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * The class files of compiled source files, by the content of the source, so a file that
+ * is saved without a change, or changed back, is not compiled again.
+ *
+ * An entry is found by a hash of the content of the source and of the configuration:
+ * the JDK, the libraries with their size and time, and the output and source paths. It
+ * holds the class files and what {@link DependencyGraph} knows about the source, along
+ * with the hashes of the project sources it used. It is only used if those still have the
+ * same content, since the class files depend on them.
+ *
+ * Kept in {@code .cache} in the output directory, one directory per entry. Entries that
+ * were least recently used are deleted when the cache is larger than its limit.
+ */
+class CompileCache {
+
+	static final String DIRECTORY_NAME = ".cache";
+
+	static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	private static final String HEADER = "ZENIT CACHE ENTRY";
+	private static final String ENTRY_FILE = "entry";
+
+	private final File outputDirectory;
+	private final File cacheDirectory;
+	private final String configurationHash;
+	private final long maxBytes;
+	private long size = -1;
+
+	// Hashes of the sources by path, with the time and length they were hashed at
+	private final Map<String, String[]> hashes = new HashMap<>();
+
+	/**
+	 * @param outputDirectory The directory the class files are compiled to.
+	 * @param configuration What the classes are compiled with, see {@link #getConfiguration}.
+	 * @param maxBytes The size the cache is kept below.
+	 */
+	CompileCache(File outputDirectory, String configuration, long maxBytes) {
+		this.outputDirectory = outputDirectory;
+		this.cacheDirectory = new File(outputDirectory, DIRECTORY_NAME);
+		this.configurationHash = hash(configuration.getBytes(StandardCharsets.UTF_8));
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * @return The configuration of a compile, with the size and time of the libraries, since
+	 * a library can change without its path changing.
+	 */
+	static String getConfiguration(String base, File workingDirectory, String[] libraries) {
+		StringBuilder configuration = new StringBuilder(base);
+		if (libraries != null) {
+			for (String library : libraries) {
+				File file = new File(library);
+				if (!file.isAbsolute()) {
+					file = new File(workingDirectory, library);
+				}
+				configuration.append(' ').append(file.length()).append('@').append(file.lastModified());
+			}
+		}
+		return configuration.toString();
+	}
+
+	/**
+	 * Restores the class files of a source from the cache, if they were compiled from the
+	 * same content and the sources they used are unchanged.
+	 * @param path The path of the source, relative to the project.
+	 * @param projectDirectory The directory of the project.
+	 * @return What the graph should know about the source, or null if it is not cached.
+	 */
+	DependencyGraph.Source restore(String path, File projectDirectory) {
+		File entryDirectory = getEntryDirectory(path, projectDirectory);
+		if (entryDirectory == null || !new File(entryDirectory, ENTRY_FILE).exists()) {
+			return null;
+		}
+		File entryFile = new File(entryDirectory, ENTRY_FILE);
+
+		try (BufferedReader reader = Files.newBufferedReader(entryFile.toPath(), StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine()) || !path.equals(reader.readLine())) {
+				return null;
+			}
+			DependencyGraph.Source source = new DependencyGraph.Source();
+			source.classes.addAll(split(reader.readLine()));
+			source.dependencies.addAll(split(reader.readLine()));
+
+			int usedSources = Integer.parseInt(reader.readLine());
+			for (int i = 0; i < usedSources; i++) {
+				String usedPath = reader.readLine();
+				String usedHash = reader.readLine();
+				if (!usedHash.equals(hashSource(usedPath, projectDirectory))) {
+					return null;
+				}
+			}
+
+			List<String> classFiles = split(reader.readLine());
+			for (String classFile : classFiles) {
+				File target = new File(outputDirectory, classFile);
+				target.getParentFile().mkdirs();
+				Files.copy(new File(entryDirectory, classFile).toPath(), target.toPath(),
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+			entryDirectory.setLastModified(System.currentTimeMillis());
+			return source;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("CompileCache: could not restore " + path + ": " + e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Stores the class files of a compiled source.
+	 * @param path The path of the source, relative to the project.
+	 * @param projectDirectory The directory of the project.
+	 * @param source What the graph knows about the source.
+	 * @param declaringSources The path of the source declaring each class of the project.
+	 */
+	void store(String path, File projectDirectory, DependencyGraph.Source source,
+			Map<String, String> declaringSources) {
+		File entryDirectory = getEntryDirectory(path, projectDirectory);
+		if (entryDirectory == null) {
+			return;
+		}
+
+		// Used by the source, apart from itself
+		Map<String, String> usedHashes = new LinkedHashMap<>();
+		for (String dependency : source.dependencies) {
+			String usedPath = declaringSources.get(dependency);
+			if (usedPath != null && !usedPath.equals(path) && !usedHashes.containsKey(usedPath)) {
+				String usedHash = hashSource(usedPath, projectDirectory);
+				if (usedHash == null) {
+					return;
+				}
+				usedHashes.put(usedPath, usedHash);
+			}
+		}
+
+		try {
+			if (entryDirectory.exists()) {
+				if (size >= 0) {
+					size -= sizeOf(entryDirectory);
+				}
+				deleteRecursively(entryDirectory);
+			}
+			entryDirectory.mkdirs();
+			List<String> classFiles = new ArrayList<>();
+			for (String className : source.classes) {
+				for (File classFile : findClassFiles(className)) {
+					String relative = outputDirectory.toPath().relativize(classFile.toPath()).toString();
+					File copy = new File(entryDirectory, relative);
+					copy.getParentFile().mkdirs();
+					Files.copy(classFile.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					classFiles.add(relative);
+				}
+			}
+
+			try (BufferedWriter writer = Files.newBufferedWriter(new File(entryDirectory, ENTRY_FILE).toPath(),
+					StandardCharsets.UTF_8)) {
+				writeLine(writer, HEADER);
+				writeLine(writer, path);
+				writeLine(writer, String.join(" ", source.classes));
+				writeLine(writer, String.join(" ", source.dependencies));
+				writeLine(writer, Integer.toString(usedHashes.size()));
+				for (Map.Entry<String, String> used : usedHashes.entrySet()) {
+					writeLine(writer, used.getKey());
+					writeLine(writer, used.getValue());
+				}
+				// Class file names have no spaces: '$' separates nested classes
+				writeLine(writer, String.join(" ", classFiles));
+			}
+			if (size >= 0) {
+				size += sizeOf(entryDirectory);
+			}
+		} catch (IOException e) {
+			System.err.println("CompileCache: could not store " + path + ": " + e.getMessage());
+			deleteRecursively(entryDirectory);
+		}
+	}
+
+	/**
+	 * Deletes the least recently used entries until the cache is below its limit.
+	 */
+	void evict() {
+		if (size < 0) {
+			size = sizeOf(cacheDirectory);
+		}
+		if (size <= maxBytes) {
+			return;
+		}
+		File[] entries = cacheDirectory.listFiles(File::isDirectory);
+		if (entries == null) {
+			return;
+		}
+		Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+		for (File entry : entries) {
+			if (size <= maxBytes) {
+				break;
+			}
+			size -= sizeOf(entry);
+			deleteRecursively(entry);
+		}
+	}
+
+	/**
+	 * @return The size of the cache in bytes.
+	 */
+	long getSize() {
+		if (size < 0) {
+			size = sizeOf(cacheDirectory);
+		}
+		return size;
+	}
+
+	/**
+	 * @return The directory of the entry for the current content of a source, or null if
+	 * the source cannot be read.
+	 */
+	private File getEntryDirectory(String path, File projectDirectory) {
+		String sourceHash = hashSource(path, projectDirectory);
+		if (sourceHash == null) {
+			return null;
+		}
+		String key = hash((configurationHash + "\n" + path + "\n" + sourceHash).getBytes(StandardCharsets.UTF_8));
+		return new File(cacheDirectory, key);
+	}
+
+	/**
+	 * @return The hash of the content of a source, or null if it cannot be read. Only read
+	 * again once the file changed.
+	 */
+	private String hashSource(String path, File projectDirectory) {
+		File file = new File(projectDirectory, path);
+		String stamp = file.lastModified() + " " + file.length();
+		String[] known = hashes.get(path);
+		if (known != null && known[0].equals(stamp)) {
+			return known[1];
+		}
+		try {
+			String hash = hash(Files.readAllBytes(file.toPath()));
+			hashes.put(path, new String[] { stamp, hash });
+			return hash;
+		} catch (IOException e) {
+			hashes.remove(path);
+			return null;
+		}
+	}
+
+	/**
+	 * @return The class file of a top-level class and those of its nested classes.
+	 */
+	private List<File> findClassFiles(String className) {
+		File classFile = new File(outputDirectory, className.replace('.', File.separatorChar) + ".class");
+		String simpleName = classFile.getName().replace(".class", "");
+		List<File> classFiles = new ArrayList<>();
+		if (classFile.exists()) {
+			classFiles.add(classFile);
+		}
+		File[] nested = classFile.getParentFile().listFiles(
+				(dir, name) -> name.startsWith(simpleName + "$") && name.endsWith(".class"));
+		if (nested != null) {
+			classFiles.addAll(Arrays.asList(nested));
+		}
+		return classFiles;
+	}
+
+	private static List<String> split(String line) {
+		return line == null || line.isEmpty() ? List.of() : Arrays.asList(line.split(" "));
+	}
+
+	private static void writeLine(BufferedWriter writer, String line) throws IOException {
+		writer.write(line);
+		writer.newLine();
+	}
+
+	private static long sizeOf(File directory) {
+		if (!directory.exists()) {
+			return 0;
+		}
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			return paths.map(Path::toFile).filter(File::isFile).mapToLong(File::length).sum();
+		} catch (IOException e) {
+			return 0;
+		}
+	}
+
+	private static void deleteRecursively(File directory) {
+		if (!directory.exists()) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(directory.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+		} catch (IOException e) {
+			System.err.println("CompileCache: could not delete " + directory + ": " + e.getMessage());
+		}
+	}
+
+	private static String hash(byte[] content) {
+		try {
+			return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
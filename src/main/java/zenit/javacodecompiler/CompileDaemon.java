@@ -0,0 +1,353 @@
+package zenit.javacodecompiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import zenit.filesystem.jreversions.JDKVerifier;
+
+/**
+ * Compiles java files with the compiler of another JDK than the one Zenit runs on, in a
+ * JVM of that JDK that is kept running between compiles, so a compile does not wait for
+ * a new JVM to start and load the compiler.
+ *
+ * There is one daemon per JDK. It is started by the first compile, and stopped once it
+ * has not compiled anything for {@link #IDLE_TIMEOUT_MS}, or killed when Zenit quits,
+ * without waiting for a compile that is still running. The daemon
+ * runs CompileDaemonMain, a source file program in the resources of Zenit, which the java
+ * launcher can run from JDK 11 on, see {@link #canRunOn(String)}. Requests are sent on its
+ * standard input, and the diagnostics are read from its standard output.
+ *
+ * Older JDKs, and compiles where the daemon fails, are compiled by starting javac.
+ */
+public class CompileDaemon {
+
+	public static final long IDLE_TIMEOUT_MS = 10 * 60 * 1000;
+
+	static final int MINIMUM_VERSION = 11;
+
+	private static final String MAIN = "CompileDaemonMain.java";
+	private static final File DEFAULT_DIRECTORY = new File("res/compiledaemon");
+	private static final long STOP_TIMEOUT_MS = 1000;
+
+	private static final Map<String, CompileDaemon> DAEMONS = new HashMap<>();
+
+	private static final ScheduledExecutorService IDLE_TIMER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "compile-daemon-idle");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final String javaPath;
+	private final File directory;
+	private final long idleTimeoutMillis;
+
+	// Read without the lock by kill(), which must not wait for a running compile
+	private volatile Process process;
+	private volatile boolean killed;
+	private BufferedReader reader;
+	private BufferedWriter writer;
+	private ScheduledFuture<?> idleStop;
+
+	/**
+	 * @param JDKPath The JDK to compile with, as configured in Zenit.
+	 * @return The daemon of the JDK, the same for every call.
+	 */
+	public static synchronized CompileDaemon forJDK(String JDKPath) {
+		return DAEMONS.computeIfAbsent(JDKVerifier.getExecutablePath(JDKPath, "java"),
+				javaPath -> new CompileDaemon(javaPath, DEFAULT_DIRECTORY, IDLE_TIMEOUT_MS));
+	}
+
+	/**
+	 * Kills the daemons of all JDKs, see {@link #kill()}. The next compile of a JDK
+	 * starts a new daemon.
+	 */
+	public static void stopAll() {
+		List<CompileDaemon> daemons;
+		synchronized (CompileDaemon.class) {
+			daemons = new ArrayList<>(DAEMONS.values());
+			DAEMONS.clear();
+		}
+		for (CompileDaemon daemon : daemons) {
+			daemon.kill();
+		}
+	}
+
+	/**
+	 * @param JDKPath The JDK to compile with, as configured in Zenit.
+	 * @return {@code true} if the JDK can run a daemon: it is Java 11 or later, or its
+	 * version is not known, in which case starting the daemon tells.
+	 */
+	public static boolean canRunOn(String JDKPath) {
+		String javaPath = JDKVerifier.getExecutablePath(JDKPath, "java");
+		if (javaPath == null || !new File(javaPath).exists()) {
+			return false;
+		}
+		int version = getMajorVersion(new File(javaPath).getParentFile().getParentFile());
+		return version < 0 || version >= MINIMUM_VERSION;
+	}
+
+	/**
+	 * @return The major version of the JDK in its release file, 8 for 1.8, or -1 if it is
+	 * not known.
+	 */
+	static int getMajorVersion(File javaHome) {
+		try {
+			for (String line : Files.readAllLines(new File(javaHome, "release").toPath())) {
+				if (line.startsWith("JAVA_VERSION=")) {
+					String[] parts = line.substring(line.indexOf('=') + 1).replace("\"", "").split("[._+-]");
+					int major = Integer.parseInt(parts[0]);
+					return major == 1 && parts.length > 1 ? Integer.parseInt(parts[1]) : major;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// Not known
+		}
+		return -1;
+	}
+
+	/**
+	 * @param javaPath The java launcher of the JDK.
+	 * @param directory Where the source of the daemon is written.
+	 * @param idleTimeoutMillis How long the daemon runs without compiling.
+	 */
+	CompileDaemon(String javaPath, File directory, long idleTimeoutMillis) {
+		this.javaPath = javaPath;
+		this.directory = directory;
+		this.idleTimeoutMillis = idleTimeoutMillis;
+	}
+
+	/**
+	 * Compiles the files like {@link InProcessCompiler#compile(List, File, String, String,
+	 * String[], javax.tools.DiagnosticListener)}, starting the daemon if it does not run.
+	 * @param errors Receives the errors and warnings in source files as they are reported.
+	 * @return {@code true} if the files compiled without errors.
+	 * @throws IOException If the daemon could not be started or stopped answering. It is
+	 * started again by the next compile, unless it was killed.
+	 */
+	public synchronized boolean compile(List<File> sources, File workingDirectory, String directory,
+			String sourcepath, String[] libraries, Consumer<DebugError> errors) throws IOException {
+		if (idleStop != null) {
+			idleStop.cancel(false);
+		}
+		// The daemon runs in another directory
+		File absoluteDirectory = (workingDirectory != null ? workingDirectory : new File("")).getAbsoluteFile();
+		List<String> options = InProcessCompiler.getOptions(absoluteDirectory, directory, sourcepath, libraries);
+		List<File> files = InProcessCompiler.resolveSources(sources, absoluteDirectory);
+
+		try {
+			boolean started = start();
+			String line;
+			try {
+				line = sendRequest(options, files);
+			} catch (IOException e) {
+				if (started) {
+					throw e;
+				}
+				// Exited since the last compile, nothing of this one was read yet
+				stop();
+				start();
+				line = sendRequest(options, files);
+			}
+
+			while (line.equals("DIAGNOSTIC")) {
+				DebugError error = readDiagnostic();
+				if (error != null) {
+					errors.accept(error);
+				}
+				line = readLine();
+			}
+			if (!line.startsWith("DONE ")) {
+				throw new IOException("Unexpected answer from the compile daemon: " + line);
+			}
+			return Boolean.parseBoolean(line.substring("DONE ".length()));
+		} catch (IOException | RuntimeException e) {
+			stop();
+			throw e instanceof IOException ? (IOException) e : new IOException(e);
+		} finally {
+			if (process != null) {
+				idleStop = IDLE_TIMER.schedule(this::stop, idleTimeoutMillis, TimeUnit.MILLISECONDS);
+			}
+		}
+	}
+
+	/**
+	 * @return {@code true} if the daemon runs.
+	 */
+	public synchronized boolean isRunning() {
+		return process != null && process.isAlive();
+	}
+
+	/**
+	 * @return The process id of the daemon, or -1 if it does not run.
+	 */
+	synchronized long getPid() {
+		return isRunning() ? process.pid() : -1;
+	}
+
+	/**
+	 * Kills the daemon right away, without waiting for a compile that is running, which
+	 * then fails. The daemon is not started again.
+	 */
+	void kill() {
+		killed = true;
+		Process running = process;
+		if (running != null) {
+			running.destroyForcibly();
+		}
+	}
+
+	/**
+	 * Stops the daemon, after the compile that is running. It exits when its standard
+	 * input is closed.
+	 */
+	public synchronized void stop() {
+		if (idleStop != null) {
+			idleStop.cancel(false);
+			idleStop = null;
+		}
+		if (process == null) {
+			return;
+		}
+		try {
+			writer.close();
+		} catch (IOException e) {
+			// Already gone
+		}
+		try {
+			if (!process.waitFor(STOP_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+			}
+		} catch (InterruptedException e) {
+			process.destroyForcibly();
+			Thread.currentThread().interrupt();
+		}
+		process = null;
+		reader = null;
+		writer = null;
+	}
+
+	/**
+	 * Sends a compile request.
+	 * @return The first line of the answer.
+	 */
+	private String sendRequest(List<String> options, List<File> files) throws IOException {
+		writeLine("COMPILE");
+		writeLine(Integer.toString(options.size()));
+		for (String option : options) {
+			writeLine(option);
+		}
+		writeLine(Integer.toString(files.size()));
+		for (File file : files) {
+			writeLine(file.getPath());
+		}
+		writer.flush();
+		return readLine();
+	}
+
+	/**
+	 * Starts the daemon, unless it runs.
+	 * @return {@code true} if it was started.
+	 */
+	private boolean start() throws IOException {
+		if (isRunning()) {
+			return false;
+		}
+		stop();
+		if (killed) {
+			throw new IOException("The compile daemon of " + javaPath + " was killed");
+		}
+		File main = writeMain();
+		process = new ProcessBuilder(javaPath, "-XX:+UseSerialGC", main.getPath()).start();
+		if (killed) {
+			// Killed while starting, before kill() could see the process
+			process.destroyForcibly();
+		}
+		reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+		writer = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8));
+		Thread errorStream = new Thread(new StreamRedirector(process.getErrorStream(),
+				line -> System.err.println("CompileDaemon: " + line)), "compile-daemon-errors");
+		errorStream.setDaemon(true);
+		errorStream.start();
+
+		String answer = reader.readLine();
+		if (!"READY".equals(answer)) {
+			throw new IOException("The compile daemon of " + javaPath + " did not start: " + answer);
+		}
+		return true;
+	}
+
+	/**
+	 * Writes the source of the daemon to its directory, unless it is already there.
+	 * @return The source file.
+	 */
+	private File writeMain() throws IOException {
+		byte[] source;
+		try (InputStream in = CompileDaemon.class.getResourceAsStream(MAIN)) {
+			if (in == null) {
+				throw new IOException(MAIN + " is missing from the resources");
+			}
+			source = in.readAllBytes();
+		}
+		File main = new File(directory, MAIN);
+		if (!main.exists() || !Arrays.equals(source, Files.readAllBytes(main.toPath()))) {
+			directory.mkdirs();
+			Files.write(main.toPath(), source);
+		}
+		return main;
+	}
+
+	private void writeLine(String line) throws IOException {
+		writer.write(line);
+		writer.newLine();
+	}
+
+	private String readLine() throws IOException {
+		String line = reader.readLine();
+		if (line == null) {
+			throw new IOException("The compile daemon of " + javaPath + " exited");
+		}
+		return line;
+	}
+
+	/**
+	 * Reads a diagnostic written by the daemon.
+	 * @return The error, or null for notes and diagnostics without a position in a file,
+	 * like {@link InProcessCompiler#toDebugError}.
+	 */
+	private DebugError readDiagnostic() throws IOException {
+		String kind = readLine();
+		String place = readLine();
+		int row = Integer.parseInt(readLine());
+		int column = Integer.parseInt(readLine());
+		int endRow = Integer.parseInt(readLine());
+		int endColumn = Integer.parseInt(readLine());
+		List<String> message = new ArrayList<>();
+		for (int i = Integer.parseInt(readLine()); i > 0; i--) {
+			message.add(readLine());
+		}
+
+		if (place.isEmpty() || row < 0 || kind.equals("NOTE") || kind.equals("OTHER")) {
+			return null;
+		}
+		String problemType = kind.equals("ERROR") ? "error" : "warning";
+		return new DebugError(place, problemType, String.join("\n", message), row, Math.max(0, column), endRow,
+				Math.max(1, endColumn));
+	}
+}
@@ -7,13 +7,29 @@ public class DebugError {
 	private String problem;
 	private int row;
 	private int column;
+	private int endRow;
+	private int endColumn;
 	
+	/**
+	 * Creates an error at a single character.
+	 */
 	public DebugError(String place, String problemType, String problem, int row, int column) {
+		this(place, problemType, problem, row, column, row, column + 1);
+	}
+
+	/**
+	 * Creates an error spanning from its row and column to, but not including, its end.
+	 * Rows start at 1 and columns at 0, the index of the character in its row.
+	 */
+	public DebugError(String place, String problemType, String problem, int row, int column,
+			int endRow, int endColumn) {
 		this.place = place;
 		this.problemType = problemType;
 		this.problem = problem;
 		this.row = row;
 		this.column = column;
+		this.endRow = endRow;
+		this.endColumn = endColumn;
 	}
 	
 	public String toString() {
@@ -40,6 +56,21 @@ public class DebugError {
 	public int getColumn() {
 		return column;
 	}
+
+	public int getEndRow() {
+		return endRow;
+	}
+
+	public int getEndColumn() {
+		return endColumn;
+	}
+
+	/**
+	 * @return {@code true} for errors, {@code false} for warnings.
+	 */
+	public boolean isError() {
+		return "error".equals(problemType);
+	}
 	
 	
 
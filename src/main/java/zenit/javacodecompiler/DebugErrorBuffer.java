@@ -1,18 +1,46 @@
 package zenit.javacodecompiler;
 
 import java.util.LinkedList;
+import java.util.function.Consumer;
 
 public class DebugErrorBuffer implements Buffer<DebugError> {
 	
 	private LinkedList<DebugError> buffer;
+	private Consumer<DebugError> consumer;
+	private Runnable onClear;
 	
 	public DebugErrorBuffer() {
+		this(null, null);
+	}
+
+	/**
+	 * @param consumer Receives each error as soon as it is put, while the compile goes on.
+	 * May be null.
+	 * @param onClear Called when the errors put so far are cleared, so whoever received
+	 * them can forget them too. May be null.
+	 */
+	public DebugErrorBuffer(Consumer<DebugError> consumer, Runnable onClear) {
 		buffer = new LinkedList<DebugError>();
+		this.consumer = consumer;
+		this.onClear = onClear;
 	}
 
 	@Override
 	public synchronized void put(DebugError error) {
 		buffer.add(error);
+		if (consumer != null) {
+			consumer.accept(error);
+		}
+	}
+
+	/**
+	 * Removes the errors put so far, when they are reported again.
+	 */
+	public synchronized void clear() {
+		buffer.clear();
+		if (onClear != null) {
+			onClear.run();
+		}
 	}
 
 	@Override
@@ -0,0 +1,212 @@
+package zenit.javacodecompiler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The classes each source file of a project declares and the classes it uses, recorded
+ * by {@link IncrementalCompiler} when the file is compiled. Used to find the files to
+ * compile again when a file changes: the file itself and the files using its classes.
+ *
+ * Written to the output directory of the project, as lines of text:
+ * <pre>
+ * ZENIT DEPENDENCIES
+ * configuration
+ * number of sources
+ * path of the source, relative to the project
+ * last modified and length of the source when it was compiled
+ * the top-level classes it declares, separated by spaces
+ * the project classes it uses, separated by spaces
+ * ...
+ * </pre>
+ */
+class DependencyGraph {
+
+	static final String FILE_NAME = ".dependencies";
+
+	private static final String HEADER = "ZENIT DEPENDENCIES";
+
+	/**
+	 * What the graph knows about a source file.
+	 */
+	static class Source {
+		long lastModified;
+		long length;
+		final Set<String> classes = new LinkedHashSet<>();
+		final Set<String> dependencies = new LinkedHashSet<>();
+
+		/**
+		 * @return {@code true} if the file is as it was when it was compiled.
+		 */
+		boolean isCompiled(File file) {
+			return lastModified == file.lastModified() && length == file.length();
+		}
+	}
+
+	private final String configuration;
+	private final Map<String, Source> sources = new HashMap<>();
+
+	/**
+	 * @param configuration What the classes were compiled with, the graph is only valid
+	 * for the same configuration.
+	 */
+	DependencyGraph(String configuration) {
+		this.configuration = configuration;
+	}
+
+	String getConfiguration() {
+		return configuration;
+	}
+
+	boolean isEmpty() {
+		return sources.isEmpty();
+	}
+
+	Source get(String path) {
+		return sources.get(path);
+	}
+
+	Set<String> getPaths() {
+		return sources.keySet();
+	}
+
+	void put(String path, Source source) {
+		sources.put(path, source);
+	}
+
+	void remove(String path) {
+		sources.remove(path);
+	}
+
+	/**
+	 * @return The path of the source declaring each class.
+	 */
+	Map<String, String> getDeclaringSources() {
+		Map<String, String> declaringSources = new HashMap<>();
+		for (Map.Entry<String, Source> entry : sources.entrySet()) {
+			for (String className : entry.getValue().classes) {
+				declaringSources.put(className, entry.getKey());
+			}
+		}
+		return declaringSources;
+	}
+
+	/**
+	 * @return The sources that use a class declared by one of the given sources.
+	 */
+	Set<String> getDependents(Collection<String> paths) {
+		Set<String> changedClasses = new HashSet<>();
+		for (String path : paths) {
+			Source source = sources.get(path);
+			if (source != null) {
+				changedClasses.addAll(source.classes);
+			}
+		}
+
+		Set<String> dependents = new HashSet<>();
+		if (changedClasses.isEmpty()) {
+			return dependents;
+		}
+		for (Map.Entry<String, Source> entry : sources.entrySet()) {
+			for (String dependency : entry.getValue().dependencies) {
+				if (changedClasses.contains(dependency)) {
+					dependents.add(entry.getKey());
+					break;
+				}
+			}
+		}
+		return dependents;
+	}
+
+	/**
+	 * Removes the dependencies on classes that no source of the project declares, the
+	 * classes of the JDK and the libraries, and of each source on its own classes.
+	 */
+	void retainProjectDependencies() {
+		Set<String> projectClasses = new HashSet<>();
+		for (Source source : sources.values()) {
+			projectClasses.addAll(source.classes);
+		}
+		for (Source source : sources.values()) {
+			source.dependencies.retainAll(projectClasses);
+			source.dependencies.removeAll(source.classes);
+		}
+	}
+
+	/**
+	 * Reads a graph written by {@link #write(File)}.
+	 * @return The graph, or null if the file does not exist or could not be read.
+	 */
+	static DependencyGraph read(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+			if (!HEADER.equals(reader.readLine())) {
+				return null;
+			}
+			DependencyGraph graph = new DependencyGraph(reader.readLine());
+			int count = Integer.parseInt(reader.readLine());
+			for (int i = 0; i < count; i++) {
+				String path = reader.readLine();
+				String[] stamp = reader.readLine().split(" ");
+				Source source = new Source();
+				source.lastModified = Long.parseLong(stamp[0]);
+				source.length = Long.parseLong(stamp[1]);
+				addNames(reader.readLine(), source.classes);
+				addNames(reader.readLine(), source.dependencies);
+				graph.put(path, source);
+			}
+			return graph;
+		} catch (IOException | RuntimeException e) {
+			System.err.println("DependencyGraph.read: " + file + " is not readable, compiling everything");
+			return null;
+		}
+	}
+
+	private static void addNames(String line, Set<String> names) {
+		if (line != null && !line.isEmpty()) {
+			for (String name : line.split(" ")) {
+				names.add(name);
+			}
+		}
+	}
+
+	/**
+	 * Writes the graph to a file, replacing it once the whole graph is written.
+	 */
+	void write(File file) throws IOException {
+		File temporary = new File(file.getPath() + ".tmp");
+		try (BufferedWriter writer = Files.newBufferedWriter(temporary.toPath(), StandardCharsets.UTF_8)) {
+			writer.write(HEADER);
+			writer.newLine();
+			writer.write(configuration);
+			writer.newLine();
+			writer.write(Integer.toString(sources.size()));
+			writer.newLine();
+			for (Map.Entry<String, Source> entry : sources.entrySet()) {
+				Source source = entry.getValue();
+				writer.write(entry.getKey());
+				writer.newLine();
+				writer.write(source.lastModified + " " + source.length);
+				writer.newLine();
+				writer.write(String.join(" ", source.classes));
+				writer.newLine();
+				writer.write(String.join(" ", source.dependencies));
+				writer.newLine();
+			}
+		}
+		Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+	}
+}
@@ -0,0 +1,229 @@
+package zenit.javacodecompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import com.sun.source.util.JavacTask;
+
+/**
+ * Compiles java files with the compiler of the JDK Zenit runs on, inside the Zenit JVM,
+ * instead of starting javac for every compile. The file manager, which caches the
+ * platform classes and the opened libraries, is kept from one compile to the next.
+ *
+ * Only usable when the project is compiled with the JDK Zenit runs on, see
+ * {@link #canCompileFor(String)}. Otherwise javac is started through {@link CommandBuilder}.
+ */
+public class InProcessCompiler {
+
+	private final JavaCompiler compiler;
+	private StandardJavaFileManager fileManager;
+
+	public InProcessCompiler() {
+		this(ToolProvider.getSystemJavaCompiler());
+	}
+
+	/**
+	 * @param compiler The compiler to use, null if there is none.
+	 */
+	InProcessCompiler(JavaCompiler compiler) {
+		this.compiler = compiler;
+	}
+
+	/**
+	 * @return {@code true} if Zenit runs on a JDK, which has a compiler, rather than a JRE.
+	 */
+	public boolean isAvailable() {
+		return compiler != null;
+	}
+
+	/**
+	 * @param JDKPath The JDK a project is compiled with, null if none is configured.
+	 * @return {@code true} if the project can be compiled in process: the JDK is the one
+	 * Zenit runs on, or none is configured.
+	 */
+	public boolean canCompileFor(String JDKPath) {
+		return isAvailable() && (JDKPath == null || isRunningJDK(new File(JDKPath)));
+	}
+
+	/**
+	 * @return {@code true} if the directory is the JDK Zenit runs on. On macOS a JDK is
+	 * configured by its bundle, and runs from Contents/Home in it.
+	 */
+	static boolean isRunningJDK(File JDK) {
+		try {
+			File javaHome = new File(System.getProperty("java.home")).getCanonicalFile();
+			File macHome = new File(JDK, "Contents" + File.separator + "Home");
+			return javaHome.equals(JDK.getCanonicalFile()) || javaHome.equals(macHome.getCanonicalFile());
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Compiles the files like javac started in the working directory with the same
+	 * arguments would. Relative paths are resolved against the working directory.
+	 * @param sources The files to compile.
+	 * @param workingDirectory The directory javac would run in.
+	 * @param directory The directory to write class files to, null to write them next to
+	 * the sources.
+	 * @param sourcepath Where to look for the sources of other classes, null for the class path.
+	 * @param libraries The class path, null or empty for the working directory.
+	 * @param listener Receives the errors, warnings and notes of the compile.
+	 * @return {@code true} if the files compiled without errors.
+	 */
+	public boolean compile(List<File> sources, File workingDirectory, String directory,
+			String sourcepath, String[] libraries, DiagnosticListener<? super JavaFileObject> listener) {
+		return compile(sources, workingDirectory, directory, sourcepath, libraries, listener, null);
+	}
+
+	/**
+	 * Compiles like {@link #compile(List, File, String, String, String[], DiagnosticListener)}.
+	 * @param taskSetup Called with the compile task before it runs, for example to add a
+	 * task listener. May be null.
+	 */
+	public synchronized boolean compile(List<File> sources, File workingDirectory, String directory,
+			String sourcepath, String[] libraries, DiagnosticListener<? super JavaFileObject> listener,
+			Consumer<JavacTask> taskSetup) {
+		if (fileManager == null) {
+			fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+		}
+
+		try {
+			// The locations of the previous compile are kept by the file manager
+			fileManager.setLocation(StandardLocation.CLASS_OUTPUT, null);
+			fileManager.setLocation(StandardLocation.SOURCE_PATH, null);
+			fileManager.setLocation(StandardLocation.CLASS_PATH, null);
+
+			List<String> options = getOptions(workingDirectory, directory, sourcepath, libraries);
+			List<File> files = resolveSources(sources, workingDirectory);
+
+			JavacTask task = (JavacTask) compiler.getTask(null, fileManager, listener, options, null,
+					fileManager.getJavaFileObjectsFromFiles(files));
+			if (taskSetup != null) {
+				taskSetup.accept(task);
+			}
+			return Boolean.TRUE.equals(task.call());
+		} catch (IOException | IllegalArgumentException | IllegalStateException e) {
+			System.err.println("InProcessCompiler.compile: " + e.getMessage());
+			return false;
+		} finally {
+			try {
+				fileManager.flush();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * @return The options of javac started in the working directory with the arguments,
+	 * with the paths resolved against the working directory. Creates the output directory.
+	 */
+	static List<String> getOptions(File workingDirectory, String directory, String sourcepath,
+			String[] libraries) {
+		List<String> options = new ArrayList<>();
+		options.add("-cp");
+		options.add(joinPaths(libraries, workingDirectory));
+		if (directory != null) {
+			File output = resolve(directory, workingDirectory);
+			output.mkdirs();
+			options.add("-d");
+			options.add(output.getPath());
+		}
+		if (sourcepath != null) {
+			options.add("-sourcepath");
+			options.add(resolve(sourcepath, workingDirectory).getPath());
+		}
+		return options;
+	}
+
+	/**
+	 * @return The source files, resolved against the working directory.
+	 */
+	static List<File> resolveSources(List<File> sources, File workingDirectory) {
+		List<File> files = new ArrayList<>();
+		for (File source : sources) {
+			files.add(source.isAbsolute() ? source : new File(workingDirectory, source.getPath()));
+		}
+		return files;
+	}
+
+	private static File resolve(String path, File workingDirectory) {
+		File file = new File(path);
+		return file.isAbsolute() || workingDirectory == null ? file : new File(workingDirectory, path);
+	}
+
+	private static String joinPaths(String[] paths, File workingDirectory) {
+		if (paths == null || paths.length == 0) {
+			return workingDirectory != null ? workingDirectory.getPath() : ".";
+		}
+		List<String> resolved = new ArrayList<>();
+		for (String path : paths) {
+			resolved.add(resolve(path, workingDirectory).getPath());
+		}
+		return String.join(File.pathSeparator, resolved);
+	}
+
+	/**
+	 * Converts an error or warning in a source file to a {@link DebugError}, spanning from
+	 * where javac points to the end of what it reports on.
+	 * @return The error, or null for notes and diagnostics without a position in a file.
+	 */
+	public static DebugError toDebugError(Diagnostic<? extends JavaFileObject> diagnostic) {
+		if (diagnostic.getSource() == null || diagnostic.getLineNumber() == Diagnostic.NOPOS
+				|| diagnostic.getKind() == Diagnostic.Kind.NOTE || diagnostic.getKind() == Diagnostic.Kind.OTHER) {
+			return null;
+		}
+		String problemType = diagnostic.getKind() == Diagnostic.Kind.ERROR ? "error" : "warning";
+		int row = (int) diagnostic.getLineNumber();
+		// The column number of javac counts a tab as up to eight columns
+		int column = (int) Math.max(0, diagnostic.getColumnNumber() - 1);
+		int endRow = row;
+		int endColumn = column + 1;
+
+		long position = diagnostic.getPosition();
+		long end = diagnostic.getEndPosition();
+		if (position != Diagnostic.NOPOS) {
+			try {
+				CharSequence content = diagnostic.getSource().getCharContent(true);
+				column = (int) (position - getLineStart(content, position));
+				endColumn = column + 1;
+				if (end != Diagnostic.NOPOS && end > position && end <= content.length()) {
+					for (int i = (int) position; i < end; i++) {
+						if (content.charAt(i) == '\n') {
+							endRow++;
+						}
+					}
+					endColumn = (int) (end - getLineStart(content, end));
+				}
+			} catch (IOException e) {
+				// Falls back to the column of javac
+			}
+		}
+		return new DebugError(diagnostic.getSource().getName(), problemType, diagnostic.getMessage(null),
+				row, column, endRow, endColumn);
+	}
+
+	/**
+	 * @return The index of the first character of the line a position is in.
+	 */
+	private static int getLineStart(CharSequence content, long position) {
+		int lineStart = (int) Math.min(position, content.length());
+		while (lineStart > 0 && content.charAt(lineStart - 1) != '\n') {
+			lineStart--;
+		}
+		return lineStart;
+	}
+}
@@ -0,0 +1,365 @@
+package zenit.javacodecompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import javax.lang.model.element.Element;
+import javax.lang.model.element.TypeElement;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.ImportTree;
+import com.sun.source.tree.MemberReferenceTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TaskEvent;
+import com.sun.source.util.TaskListener;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreePathScanner;
+import com.sun.source.util.Trees;
+
+/**
+ * Compiles a project incrementally: only the source files changed since the last build,
+ * and the files that use the classes declared in them, which may no longer compile.
+ * The other classes are read from the output directory.
+ *
+ * What each file declares and uses is recorded while it is compiled, in a
+ * {@link DependencyGraph} kept in the output directory, so it is known after a restart.
+ * Without a graph, or if the libraries or the JDK changed, every file is compiled.
+ * Files that failed to compile are compiled again by the next build.
+ *
+ * Before a file is compiled, its class files are looked up in the {@link CompileCache} of
+ * the project, by the content of the file, and restored from there if they are found.
+ */
+public class IncrementalCompiler {
+
+	private static final Map<File, IncrementalCompiler> PROJECTS = new HashMap<>();
+
+	private final File projectDirectory;
+	private DependencyGraph graph;
+	private CompileCache cache;
+	private String cacheConfiguration;
+	private long maxCacheBytes = CompileCache.DEFAULT_MAX_BYTES;
+	private int compiledCount;
+	private int restoredCount;
+
+	/**
+	 * @return The compiler of the project in the directory, the same for every call.
+	 */
+	public static synchronized IncrementalCompiler forProject(File projectDirectory) {
+		return PROJECTS.computeIfAbsent(projectDirectory.getAbsoluteFile(), IncrementalCompiler::new);
+	}
+
+	IncrementalCompiler(File projectDirectory) {
+		this.projectDirectory = projectDirectory.getAbsoluteFile();
+	}
+
+	/**
+	 * Compiles the files that changed since the last build, and their dependents.
+	 * @param compiler The compiler to compile with.
+	 * @param directory The output directory, relative to the project.
+	 * @param sourcepath The source directory, relative to the project.
+	 * @param libraries The libraries of the project, may be null.
+	 * @param listener Receives the diagnostics of the compiled files.
+	 * @return {@code true} if the files compiled without errors, or none had to be.
+	 */
+	public synchronized boolean build(InProcessCompiler compiler, String directory, String sourcepath,
+			String[] libraries, DiagnosticListener<? super JavaFileObject> listener) {
+		File outputDirectory = new File(projectDirectory, directory);
+		File sourceDirectory = new File(projectDirectory, sourcepath);
+		File graphFile = new File(outputDirectory, DependencyGraph.FILE_NAME);
+
+		String configuration = "java " + Runtime.version() + " " + sourcepath + " " + directory
+				+ (libraries != null ? " " + String.join(File.pathSeparator, libraries) : "");
+		if (graph == null || !graphFile.exists()) {
+			graph = DependencyGraph.read(graphFile);
+		}
+		if (graph == null || !graph.getConfiguration().equals(configuration)) {
+			graph = new DependencyGraph(configuration);
+		}
+		String fullConfiguration = CompileCache.getConfiguration(configuration, projectDirectory, libraries);
+		if (cache == null || !fullConfiguration.equals(cacheConfiguration)) {
+			cache = new CompileCache(outputDirectory, fullConfiguration, maxCacheBytes);
+			cacheConfiguration = fullConfiguration;
+		}
+
+		Map<String, File> sources = findSources(sourceDirectory);
+		Set<String> changed = new HashSet<>();
+		// The files as they are compiled, a file saved during the compile is compiled again
+		Map<String, DependencyGraph.Source> scanned = new HashMap<>();
+		for (Map.Entry<String, File> entry : sources.entrySet()) {
+			DependencyGraph.Source stamp = new DependencyGraph.Source();
+			stamp.lastModified = entry.getValue().lastModified();
+			stamp.length = entry.getValue().length();
+			scanned.put(entry.getKey(), stamp);
+
+			DependencyGraph.Source source = graph.get(entry.getKey());
+			if (source == null || source.lastModified != stamp.lastModified || source.length != stamp.length) {
+				changed.add(entry.getKey());
+			}
+		}
+		Set<String> removed = new HashSet<>(graph.getPaths());
+		removed.removeAll(sources.keySet());
+
+		Set<String> toCompile = new HashSet<>(changed);
+		if (graph.isEmpty()) {
+			toCompile.addAll(sources.keySet());
+		} else {
+			Set<String> modified = new HashSet<>(changed);
+			modified.addAll(removed);
+			toCompile.addAll(graph.getDependents(modified));
+			toCompile.retainAll(sources.keySet());
+		}
+
+		// Classes that were removed or renamed must not be found by their dependents
+		for (String path : changed) {
+			deleteClassFiles(graph.get(path), outputDirectory);
+		}
+		for (String path : removed) {
+			deleteClassFiles(graph.get(path), outputDirectory);
+			graph.remove(path);
+		}
+
+		restoredCount = 0;
+		for (String path : new ArrayList<>(toCompile)) {
+			DependencyGraph.Source cached = cache.restore(path, projectDirectory);
+			if (cached != null) {
+				cached.lastModified = scanned.get(path).lastModified;
+				cached.length = scanned.get(path).length;
+				graph.put(path, cached);
+				toCompile.remove(path);
+				restoredCount++;
+			}
+		}
+
+		compiledCount = toCompile.size();
+		if (toCompile.isEmpty()) {
+			writeGraph(graphFile);
+			return true;
+		}
+
+		List<File> files = new ArrayList<>();
+		for (String path : toCompile) {
+			files.add(sources.get(path));
+		}
+		String[] classpath = new String[libraries != null ? libraries.length + 1 : 1];
+		classpath[0] = directory;
+		if (libraries != null) {
+			System.arraycopy(libraries, 0, classpath, 1, libraries.length);
+		}
+
+		Map<String, DependencyGraph.Source> recorded = new LinkedHashMap<>();
+		boolean success = compiler.compile(files, projectDirectory, directory, sourcepath, classpath, listener,
+				task -> task.addTaskListener(new DependencyRecorder(task, recorded)));
+
+		// Files without classes, like package-info.java, are not analyzed
+		for (String path : toCompile) {
+			recorded.putIfAbsent(path, new DependencyGraph.Source());
+		}
+		for (Map.Entry<String, DependencyGraph.Source> entry : recorded.entrySet()) {
+			DependencyGraph.Source stamp = scanned.get(entry.getKey());
+			if (stamp == null) {
+				// Found on the source path although it was not there when the build started
+				stamp = new DependencyGraph.Source();
+				stamp.lastModified = -1;
+			}
+			DependencyGraph.Source source = entry.getValue();
+			source.lastModified = stamp.lastModified;
+			source.length = stamp.length;
+			graph.put(entry.getKey(), source);
+		}
+		if (!success) {
+			// Nothing was written, so all of them are compiled again next time
+			for (String path : recorded.keySet()) {
+				graph.get(path).lastModified = -1;
+			}
+		}
+		graph.retainProjectDependencies();
+		writeGraph(graphFile);
+
+		if (success) {
+			Map<String, String> declaringSources = graph.getDeclaringSources();
+			for (String path : recorded.keySet()) {
+				DependencyGraph.Source source = graph.get(path);
+				if (source.isCompiled(new File(projectDirectory, path))) {
+					cache.store(path, projectDirectory, source, declaringSources);
+				}
+			}
+			cache.evict();
+		}
+		return success;
+	}
+
+	/**
+	 * @return The number of files the last build compiled.
+	 */
+	public synchronized int getCompiledCount() {
+		return compiledCount;
+	}
+
+	/**
+	 * @return The number of files whose class files the last build restored from the cache.
+	 */
+	public synchronized int getRestoredCount() {
+		return restoredCount;
+	}
+
+	/**
+	 * Sets the size the compile cache of the project is kept below, from the next build.
+	 */
+	public synchronized void setMaxCacheBytes(long maxCacheBytes) {
+		this.maxCacheBytes = maxCacheBytes;
+		this.cache = null;
+	}
+
+	private void writeGraph(File graphFile) {
+		try {
+			graphFile.getParentFile().mkdirs();
+			graph.write(graphFile);
+		} catch (IOException e) {
+			System.err.println("IncrementalCompiler: could not write " + graphFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return The java files in the source directory, by their path relative to the project.
+	 */
+	private Map<String, File> findSources(File sourceDirectory) {
+		Map<String, File> sources = new HashMap<>();
+		if (!sourceDirectory.isDirectory()) {
+			return sources;
+		}
+		try (Stream<Path> paths = Files.walk(sourceDirectory.toPath())) {
+			paths.filter(path -> path.toString().endsWith(".java")).forEach(path ->
+					sources.put(toProjectPath(path), path.toFile()));
+		} catch (IOException e) {
+			System.err.println("IncrementalCompiler: could not list " + sourceDirectory + ": " + e.getMessage());
+		}
+		return sources;
+	}
+
+	private String toProjectPath(Path path) {
+		return projectDirectory.toPath().relativize(path.toAbsolutePath()).toString();
+	}
+
+	/**
+	 * Deletes the class files of the top-level classes of a source and their nested classes.
+	 */
+	private static void deleteClassFiles(DependencyGraph.Source source, File outputDirectory) {
+		if (source == null) {
+			return;
+		}
+		for (String className : source.classes) {
+			File classFile = new File(outputDirectory, className.replace('.', File.separatorChar) + ".class");
+			String simpleName = classFile.getName().replace(".class", "");
+			File[] nested = classFile.getParentFile().listFiles(
+					(dir, name) -> name.startsWith(simpleName + "$") && name.endsWith(".class"));
+			classFile.delete();
+			if (nested != null) {
+				for (File file : nested) {
+					file.delete();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Records the top-level classes each compiled file declares, and the classes its
+	 * names refer to, once a class has been analyzed and its names are resolved.
+	 */
+	private class DependencyRecorder implements TaskListener {
+
+		private final Trees trees;
+		private final Map<String, DependencyGraph.Source> recorded;
+		private final Set<CompilationUnitTree> importsRecorded = new HashSet<>();
+
+		DependencyRecorder(JavacTask task, Map<String, DependencyGraph.Source> recorded) {
+			this.trees = Trees.instance(task);
+			this.recorded = recorded;
+		}
+
+		@Override
+		public void finished(TaskEvent event) {
+			if (event.getKind() != TaskEvent.Kind.ANALYZE || event.getTypeElement() == null) {
+				return;
+			}
+			Path file = Path.of(event.getSourceFile().toUri());
+			if (!file.startsWith(projectDirectory.toPath())) {
+				return;
+			}
+			DependencyGraph.Source source = recorded.computeIfAbsent(toProjectPath(file),
+					path -> new DependencyGraph.Source());
+			source.classes.add(getTopLevelName(event.getTypeElement()));
+
+			ReferenceScanner scanner = new ReferenceScanner(source.dependencies);
+			scanner.scan(trees.getPath(event.getTypeElement()), null);
+			CompilationUnitTree unit = event.getCompilationUnit();
+			if (importsRecorded.add(unit)) {
+				for (ImportTree importTree : unit.getImports()) {
+					scanner.scan(new TreePath(new TreePath(unit), importTree), null);
+				}
+			}
+		}
+
+		private class ReferenceScanner extends TreePathScanner<Void, Void> {
+
+			private final Set<String> dependencies;
+
+			ReferenceScanner(Set<String> dependencies) {
+				this.dependencies = dependencies;
+			}
+
+			@Override
+			public Void visitIdentifier(IdentifierTree tree, Void unused) {
+				record();
+				return super.visitIdentifier(tree, unused);
+			}
+
+			@Override
+			public Void visitMemberSelect(MemberSelectTree tree, Void unused) {
+				record();
+				return super.visitMemberSelect(tree, unused);
+			}
+
+			@Override
+			public Void visitMemberReference(MemberReferenceTree tree, Void unused) {
+				record();
+				return super.visitMemberReference(tree, unused);
+			}
+
+			private void record() {
+				String name = getTopLevelName(trees.getElement(getCurrentPath()));
+				if (name != null) {
+					dependencies.add(name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return The name of the top-level class an element is declared in, or null if it is
+	 * not declared in a class, like a package.
+	 */
+	private static String getTopLevelName(Element element) {
+		TypeElement topLevel = null;
+		while (element != null) {
+			if (element instanceof TypeElement) {
+				topLevel = (TypeElement) element;
+			}
+			element = element.getEnclosingElement();
+		}
+		return topLevel != null ? topLevel.getQualifiedName().toString() : null;
+	}
+}
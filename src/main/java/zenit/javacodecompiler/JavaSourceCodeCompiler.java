@@ -1,9 +1,15 @@
 package zenit.javacodecompiler;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.List;
 import java.util.concurrent.Executors;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaFileObject;
+
 import javafx.application.Platform;
 import zenit.ConsoleRedirect;
 import zenit.console.ConsoleArea;
@@ -20,6 +26,8 @@ import zenit.ui.MainController;
  * the background or compile and run, redirecting process streams.
  * 
  * Uses {@link CommandBuilder} to build commands and runs them using {@link TerminalHelpers}.
+ * Compiling alone is done in process by {@link InProcessCompiler} when the project is compiled
+ * with the JDK Zenit runs on, and by the {@link CompileDaemon} of the JDK otherwise.
  * 
  * Java Virtual Machine needs to be installed on the machine for the compiler to work. 
  * Also the correct compiler and java_home paths must be configured.
@@ -30,6 +38,9 @@ import zenit.ui.MainController;
  *
  */
 public class JavaSourceCodeCompiler {
+
+	// Shared by all compiles, so its file manager is reused
+	private static final InProcessCompiler IN_PROCESS_COMPILER = new InProcessCompiler();
 	
 	protected File file;
 	protected File metadataFile;
@@ -93,14 +104,24 @@ public class JavaSourceCodeCompiler {
 		 * Only to be called via {@link Thread#start()}.
 		 * Decodes metadata, and runs {@link #compileInPackage()}.
 		 * If no metadata is provided, runs {@link #compile()}.
+		 * Runs {@link #compileInProcess()} instead if the JDK is the one Zenit runs on, or
+		 * {@link #compileInDaemon(String)} if the JDK can run a compile daemon.
 		 */
 		public void run() {
 			if (metadataFile != null) {
 				decodeMetadata();
 				createProjectPath();
-				compileInPackage();
-			} else {
-				compile();
+			}
+
+			String compilerJDK = getCompilerJDK();
+			if (IN_PROCESS_COMPILER.canCompileFor(compilerJDK)) {
+				compileInProcess();
+			} else if (!compileInDaemon(compilerJDK)) {
+				if (metadataFile != null) {
+					compileInPackage();
+				} else {
+					compile();
+				}
 			}
 			
 			if (inBackground && buffer instanceof DebugErrorBuffer) {
@@ -136,6 +157,97 @@ public class JavaSourceCodeCompiler {
 			externalLibraries = metadata.getExternalLibraries();	
 		}
 
+		/**
+		 * @return The JDK that compiles the file, as {@link CommandBuilder#setJDK(String)}
+		 * chooses it, or null if none is configured.
+		 */
+		protected String getCompilerJDK() {
+			if (JDKPath != null) {
+				return JDKPath;
+			}
+			File defaultJDKFile = JREVersions.getDefaultJDKFile();
+			return defaultJDKFile != null ? defaultJDKFile.getPath() : null;
+		}
+
+		/**
+		 * Compiles with {@link InProcessCompiler}, with the same arguments as
+		 * {@link #compile()} or {@link #compileInPackage()}. A project is compiled in the
+		 * background by its {@link IncrementalCompiler}. In the background the errors
+		 * are put in the buffer, otherwise they are printed like javac prints them.
+		 * @return {@code true} if compiled without errors.
+		 */
+		protected boolean compileInProcess() {
+			DiagnosticListener<JavaFileObject> listener;
+			if (inBackground && buffer instanceof DebugErrorBuffer) {
+				DebugErrorBuffer deb = (DebugErrorBuffer) buffer;
+				listener = diagnostic -> {
+					DebugError error = InProcessCompiler.toDebugError(diagnostic);
+					if (error != null) {
+						deb.put(error);
+					}
+				};
+			} else {
+				listener = diagnostic -> System.err.println(diagnostic);
+			}
+
+			if (metadataFile != null && inBackground && directory != null && sourcepath != null) {
+				// Compiled on save, only what the changes since the last compile affect
+				return IncrementalCompiler.forProject(projectFile).build(IN_PROCESS_COMPILER, directory, sourcepath,
+						CommandBuilder.mergeLibraries(internalLibraries, externalLibraries), listener);
+			}
+			if (metadataFile != null) {
+				runPath = new File(createRunPathInProject());
+				String[] libraries = CommandBuilder.mergeLibraries(internalLibraries, externalLibraries);
+				return IN_PROCESS_COMPILER.compile(List.of(runPath), projectFile, directory, sourcepath,
+						libraries, listener);
+			}
+			return IN_PROCESS_COMPILER.compile(List.of(file), file.getAbsoluteFile().getParentFile(), null, null,
+					null, listener);
+		}
+
+		/**
+		 * Compiles with the {@link CompileDaemon} of the JDK, with the same arguments as
+		 * {@link #compile()} or {@link #compileInPackage()}. In the background the errors
+		 * are put in the buffer as the daemon reports them, otherwise they are printed like
+		 * javac prints them.
+		 * @param JDK The JDK to compile with, null if none is configured.
+		 * @return {@code true} if the daemon compiled the files, with or without errors,
+		 * {@code false} if the JDK cannot run one or it failed, and javac has to be started.
+		 */
+		protected boolean compileInDaemon(String JDK) {
+			if (JDK == null || !CompileDaemon.canRunOn(JDK)) {
+				return false;
+			}
+			DebugErrorBuffer deb = inBackground && buffer instanceof DebugErrorBuffer ? (DebugErrorBuffer) buffer : null;
+			Consumer<DebugError> errors = error -> {
+				if (deb != null) {
+					deb.put(error);
+				} else {
+					System.err.println(error.getPlace() + ":" + error.getRow() + ": " + error.getProblemType() + ": "
+							+ error.getProblem());
+				}
+			};
+			try {
+				if (metadataFile != null) {
+					runPath = new File(createRunPathInProject());
+					String[] libraries = CommandBuilder.mergeLibraries(internalLibraries, externalLibraries);
+					CompileDaemon.forJDK(JDK).compile(List.of(runPath), projectFile, directory, sourcepath,
+							libraries, errors);
+				} else {
+					CompileDaemon.forJDK(JDK).compile(List.of(file), file.getAbsoluteFile().getParentFile(), null,
+							null, null, errors);
+				}
+			} catch (IOException e) {
+				System.err.println("JavaSourceCodeCompiler: " + e.getMessage() + ", starting javac instead");
+				if (deb != null) {
+					// javac reports them again
+					deb.clear();
+				}
+				return false;
+			}
+			return true;
+		}
+
 		/**
 		 * Builds a command using {@link CommandBuilder} to compile a single file
 		 * and executes command using {@link #executeCommand(String, File)} redirects
@@ -150,7 +262,7 @@ public class JavaSourceCodeCompiler {
 
 			String command = cb.generateCommand();
 			Process process = executeCommand(command, null);
-			redirectStreams(process);
+			redirectCompileStreams(process);
 			return process;
 		}
 
@@ -173,7 +285,7 @@ public class JavaSourceCodeCompiler {
 			
 			String command = cb.generateCommand();
 			Process process = executeCommand(command, projectFile);
-			redirectStreams(process);
+			redirectCompileStreams(process);
 			return process;
 		}
 
@@ -209,6 +321,16 @@ public class JavaSourceCodeCompiler {
 			return runPath;
 		}
 
+		/**
+		 * Redirects the streams of javac like {@link #redirectStreams(Process)}, unless it
+		 * compiled in the background, where {@link TerminalHelpers} has read them.
+		 */
+		protected void redirectCompileStreams(Process process) {
+			if (!inBackground && process != null) {
+				redirectStreams(process);
+			}
+		}
+
 		/**
 		 * Redirects the input stream and error stream from process to System.out and
 		 * System.error.
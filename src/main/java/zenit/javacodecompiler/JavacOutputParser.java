@@ -0,0 +1,105 @@
+package zenit.javacodecompiler;
+
+import java.io.File;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the errors and warnings javac prints, a line at a time as javac prints them, and
+ * passes each on as a {@link DebugError} once it has been read. Only needed when javac is
+ * started, {@link InProcessCompiler} and {@link CompileDaemon} report the diagnostics of
+ * the compiler itself.
+ *
+ * javac prints a diagnostic as
+ * <pre>
+ * src/app/Main.java:3: error: cannot find symbol
+ * 		foo();
+ * 		^
+ *   symbol:   method foo()
+ *   location: class Main
+ * </pre>
+ * with the source line, a caret under where it points, and then the rest of the message.
+ * Other lines, like the number of errors and notes, are skipped.
+ */
+class JavacOutputParser {
+
+	private static final Pattern HEADER = Pattern.compile("(.+\\.java):(\\d{1,9}): (error|warning): (.*)");
+	private static final Pattern SUMMARY = Pattern.compile("\\d+ (error|warning)s?");
+
+	private final File workingDirectory;
+	private final Consumer<DebugError> consumer;
+
+	// The diagnostic being read, place is null between diagnostics
+	private String place;
+	private String problemType;
+	private int row;
+	private StringBuilder problem;
+	private String sourceLine;
+	private int column;
+
+	/**
+	 * @param workingDirectory The directory javac runs in, which the paths it prints are
+	 * relative to. May be null.
+	 * @param consumer Receives each error or warning.
+	 */
+	JavacOutputParser(File workingDirectory, Consumer<DebugError> consumer) {
+		this.workingDirectory = workingDirectory;
+		this.consumer = consumer;
+	}
+
+	/**
+	 * Reads the next line javac printed.
+	 */
+	void parseLine(String line) {
+		Matcher header = HEADER.matcher(line);
+		if (header.matches()) {
+			finish();
+			File file = new File(header.group(1));
+			place = file.isAbsolute() || workingDirectory == null ? file.getPath()
+					: new File(workingDirectory, file.getPath()).getPath();
+			row = Integer.parseInt(header.group(2));
+			problemType = header.group(3);
+			problem = new StringBuilder(header.group(4));
+			sourceLine = null;
+			column = -1;
+		} else if (place == null) {
+			return;
+		} else if (SUMMARY.matcher(line).matches() || line.startsWith("Note: ")) {
+			finish();
+		} else if (column < 0 && line.trim().equals("^")) {
+			column = line.indexOf('^');
+		} else if (column < 0 && sourceLine == null) {
+			sourceLine = line;
+		} else {
+			problem.append('\n').append(line);
+		}
+	}
+
+	/**
+	 * Passes on the diagnostic being read, once javac is done.
+	 */
+	void finish() {
+		if (place == null) {
+			return;
+		}
+		int start = Math.max(0, column);
+		consumer.accept(new DebugError(place, problemType, problem.toString(), row, start, row, getEnd(start)));
+		place = null;
+	}
+
+	/**
+	 * @return The end of the identifier the caret points at, or the character after it.
+	 */
+	private int getEnd(int start) {
+		if (sourceLine == null || start >= sourceLine.length()
+				|| !Character.isJavaIdentifierStart(sourceLine.charAt(start))) {
+			return start + 1;
+		}
+		int end = start + 1;
+		while (end < sourceLine.length() && Character.isJavaIdentifierPart(sourceLine.charAt(end))) {
+			end++;
+		}
+		return end;
+	}
+}
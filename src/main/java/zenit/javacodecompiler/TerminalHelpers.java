@@ -4,7 +4,6 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.util.ArrayList;
 
 /**
  * Contains static helper methods to run shellscripts in terminal
@@ -49,52 +48,36 @@ public class TerminalHelpers {
 		return runBackgroundCommand(command, null, buffer);
 	}
 	
+	/**
+	 * Runs javac in {@code directory} and puts the errors and warnings it prints in the
+	 * buffer while it runs. Returns once javac has exited. Its output is printed to
+	 * System.out.
+	 * @param buffer Receives the errors and warnings, may be null.
+	 */
 	protected static Process runBackgroundCommand(String command, File directory, DebugErrorBuffer buffer) {
 		Process process = runCommand(command, directory);
-		
-		try {
-			process.waitFor();
-			
-			BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()));
-			String line;
-			String place;
-			String problemType;
-			String problem;
-			int row;
-			int column;
-			
-			ArrayList<DebugError> errors = new ArrayList<>();
-			DebugError error;
-			
-			try {
-				while ((line = reader.readLine()) != null) {
-
-					int colon1Index = line.indexOf(':');
-					int colon2Index = line.indexOf(':', colon1Index + 1);
-					int colon3Index = line.indexOf(':', colon2Index + 1);
-
-					place = line.substring(0, colon1Index);
-					row = Integer.parseInt(line.substring(colon1Index + 1, colon2Index));
-					problemType = line.substring(colon2Index + 1, colon3Index);
-					problem = line.substring(colon3Index + 2);
-
-					line = reader.readLine();
-					line = reader.readLine();
-					column = line.indexOf('^');
+		if (process == null) {
+			return null;
+		}
 
-					error = new DebugError(place, problemType, problem, row, column);
-					errors.add(error);
-				}
-			} catch (NumberFormatException | IndexOutOfBoundsException ex) {
+		// Both pipes are read while javac runs, it blocks once one of them is full
+		Thread output = new Thread(new StreamRedirector(process.getInputStream(), System.out::println),
+				"javac-output");
+		output.setDaemon(true);
+		output.start();
 
-			}
-			
+		JavacOutputParser parser = new JavacOutputParser(directory, error -> {
 			if (buffer != null) {
-				for (DebugError de : errors) {
-					buffer.put(de);
-				}
+				buffer.put(error);
 			}
-			
+		});
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				parser.parseLine(line);
+			}
+			parser.finish();
+			process.waitFor();
 		} catch (IOException | InterruptedException ex) {
 			ex.printStackTrace();
 		}
@@ -5,7 +5,6 @@ import java.io.FileNotFoundException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Scanner;
 import java.util.stream.Collectors;
 
 import org.fxmisc.richtext.model.StyleSpan;
@@ -65,8 +64,10 @@ public class Search {
 	}
 
 	/**
-	 * Searches for a word in the file. For large files (>500KB), runs entirely
-	 * on a background thread to avoid freezing the UI. Returns 0 immediately
+	 * Searches for a word in the text of the editor, including unsaved changes. The
+	 * lines are read from a snapshot of the document, so the text is never joined into
+	 * a single String. For large files (>500KB), runs entirely on a background thread
+	 * to avoid freezing the UI and does not style the matches. Returns 0 immediately
 	 * for large files — real count comes via setOnSearchComplete callback.
 	 * For small files, behaves synchronously as before.
 	 */
@@ -86,13 +87,15 @@ public class Search {
 
 		searchWord = word;
 
-		boolean largeFile = file.length() > MAX_HIGHLIGHT_BYTES;
+		boolean largeFile = isLargeFile();
+		Iterable<String> lines = zenCodeArea.lines();
 
 		if (largeFile) {
 			new Thread(() -> {
-				scanFileInternal(word);
+				scanLines(lines);
 
 				Platform.runLater(() -> {
+					markMatches(false);
 					if (onSearchComplete != null) onSearchComplete.accept(numberOfTimes);
 				});
 			}, "search-thread").start();
@@ -101,37 +104,36 @@ public class Search {
 
 		} else {
 			// Liten fil: originalbeteende synkront
-			try {
-				Scanner txtscan = new Scanner(file);
-				if (caseSensetive == false) {
-					notCaseSensetive(txtscan);
-				} else {
-					caseSensetive(txtscan);
-				}
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
-			}
+			scanLines(lines);
+			markMatches(true);
+			return numberOfTimes;
+		}
+	}
 
-			if (numberOfTimes > 0) {
-				for (int i = 0; i < numberOfTimes; i++) {
-					int start = zenCodeArea.getAbsolutePosition(line.get(i), wordPos.get(i));
-					int end = start + searchWord.length();
+	/**
+	 * Converts the matches found by {@link #scanLines(Iterable)} to absolute positions,
+	 * so that they can be jumped between, and moves the caret to the first one.
+	 * @param style {@code true} to also highlight every match.
+	 */
+	private void markMatches(boolean style) {
+		for (int i = 0; i < numberOfTimes; i++) {
+			int start = zenCodeArea.getAbsolutePosition(line.get(i), wordPos.get(i));
+			int end = start + searchWord.length();
 
-					// Bounds check
-					if (start < 0 || end > zenCodeArea.getLength() || start > end) continue;
+			// Bounds check
+			if (start < 0 || end > zenCodeArea.getLength() || start > end) continue;
 
-					absolutePos.add(new Tuple<>(start, end));
+			absolutePos.add(new Tuple<>(start, end));
 
-					// Använd absolutposition istället för rad+kolumn
-					zenCodeArea.setStyle(start, end,
-							List.of(isDarkMode ? "search-dark-mode" : "search-light-mode"));
-				}
-				if (!absolutePos.isEmpty()) {
-					zenCodeArea.moveTo(absolutePos.get(0).fst());
-					zenCodeArea.requestFollowCaret();
-				}
+			// Använd absolutposition istället för rad+kolumn
+			if (style) {
+				zenCodeArea.setStyle(start, end,
+						List.of(isDarkMode ? "search-dark-mode" : "search-light-mode"));
 			}
-			return numberOfTimes;
+		}
+		if (!absolutePos.isEmpty()) {
+			zenCodeArea.moveTo(absolutePos.get(0).fst());
+			if (style) zenCodeArea.requestFollowCaret();
 		}
 	}
 
@@ -140,7 +142,7 @@ public class Search {
 	}
 
 	public boolean isLargeFile() {
-		return file != null && file.length() > MAX_HIGHLIGHT_BYTES;
+		return zenCodeArea.isLargeFile() || zenCodeArea.getLength() > MAX_HIGHLIGHT_BYTES;
 	}
 
 	/**
@@ -241,18 +243,13 @@ public class Search {
 
 
 	/**
-	 * Runs file scan and populates line/wordPos lists.
+	 * Scans the lines and populates line/wordPos lists.
 	 */
-	private void scanFileInternal(String word) {
-		try {
-			Scanner txtscan = new Scanner(file);
-			if (!caseSensetive) {
-				notCaseSensetive(txtscan);
-			} else {
-				caseSensetive(txtscan);
-			}
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+	private void scanLines(Iterable<String> lines) {
+		if (!caseSensetive) {
+			notCaseSensetive(lines);
+		} else {
+			caseSensetive(lines);
 		}
 	}
 
@@ -281,10 +278,10 @@ public class Search {
 	/**
 	 * Making the search ignore if it's capital letters or lowercase
 	 */
-	private void notCaseSensetive(Scanner txtscan) {
+	private void notCaseSensetive(Iterable<String> lines) {
 
-		while (txtscan.hasNextLine()) {
-			String str = txtscan.nextLine().toLowerCase();
+		for (String text : lines) {
+			String str = text.toLowerCase();
 			numberOfLines++;
 			lineLenght = 0;
 			while (str.indexOf(searchWord.toLowerCase()) != -1) {
@@ -304,10 +301,10 @@ public class Search {
 	/**
 	 * This search makes a different if it's capital letters or lowercase
 	 */
-	private void caseSensetive(Scanner txtscan) {
+	private void caseSensetive(Iterable<String> lines) {
 
-		while (txtscan.hasNextLine()) {
-			String str = txtscan.nextLine();
+		for (String text : lines) {
+			String str = text;
 			numberOfLines++;
 			lineLenght = 0;
 			while (str.indexOf(searchWord) != -1) {
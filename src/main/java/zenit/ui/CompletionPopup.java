@@ -0,0 +1,308 @@
+package zenit.ui;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import javafx.application.Platform;
+import javafx.geometry.Bounds;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.Region;
+import javafx.stage.Popup;
+import zenit.LSP.CompletionCache;
+import zenit.LSP.LspCompletionItem;
+import zenit.LSP.LspCompletionList;
+import zenit.LSP.LspManager;
+import zenit.zencodearea.ZenCodeArea;
+
+/**
+ * A popup below the caret of a {@link ZenCodeArea} listing completion suggestions
+ * from the language server for the word being typed.
+ *
+ * While the popup is open, typing more of the word narrows the list from the last
+ * result in a {@link CompletionCache}, and only asks the server again when the cache
+ * cannot answer. A request still pending when the next one is sent is cancelled by
+ * {@link LspManager}. Moving the caret out of the word closes the popup.
+ *
+ * The list never takes the focus, so the code area keeps receiving the typed keys;
+ * the keys that navigate the list are routed here through {@link #handleKey(KeyEvent)}.
+ */
+public final class CompletionPopup {
+
+	private static final int VISIBLE_ROWS = 12;
+	private static final double ROW_HEIGHT = 24;
+
+	private final ZenCodeArea zenCodeArea;
+	private final LspManager lspManager;
+	private final Popup popup = new Popup();
+	private final ListView<LspCompletionItem> list = new ListView<>();
+	private final CompletionCache cache = new CompletionCache();
+
+	// True from opening the popup until it is closed, also while waiting for the first result
+	private boolean active;
+	private File file;
+	private CompletableFuture<LspCompletionList> request;
+	private String requestPrefix;
+
+	// The word being completed
+	private int line;
+	private int wordStart;
+
+	public CompletionPopup(ZenCodeArea zenCodeArea, LspManager lspManager) {
+		this.zenCodeArea = zenCodeArea;
+		this.lspManager = lspManager;
+
+		list.setFocusTraversable(false);
+		list.setPrefWidth(420);
+		list.setPlaceholder(new Label("No suggestions"));
+		list.setCellFactory(view -> new ItemCell());
+		list.getStyleClass().add("completion-popup");
+		list.setOnMouseClicked(event -> {
+			if (event.getClickCount() == 2) {
+				accept();
+			}
+		});
+
+		popup.getContent().add(list);
+		popup.setAutoHide(true);
+		popup.setOnHidden(event -> close());
+
+		zenCodeArea.caretPositionProperty().addListener((observable, oldCaret, newCaret) -> {
+			if (active) {
+				update();
+			}
+		});
+	}
+
+	/**
+	 * Opens the popup for the word before the caret.
+	 * @param file The file of the code area.
+	 */
+	public void show(File file) {
+		if (file == null || lspManager == null || !lspManager.isReady() || zenCodeArea.isLargeFile()) {
+			return;
+		}
+		this.file = file;
+		active = true;
+		line = zenCodeArea.getCurrentParagraph();
+		wordStart = findWordStart();
+		update();
+	}
+
+	/**
+	 * Closes the popup.
+	 */
+	public void hide() {
+		popup.hide();
+		close();
+	}
+
+	public boolean isShowing() {
+		return popup.isShowing();
+	}
+
+	/**
+	 * Handles the keys that navigate the list while it is shown.
+	 * @return {@code true} if the key was used and must not reach the code area.
+	 */
+	public boolean handleKey(KeyEvent event) {
+		if (!popup.isShowing()) {
+			return false;
+		}
+
+		int selected = list.getSelectionModel().getSelectedIndex();
+		int count = list.getItems().size();
+		switch (event.getCode()) {
+		case UP:
+			select(selected - 1, count);
+			return true;
+		case DOWN:
+			select(selected + 1, count);
+			return true;
+		case PAGE_UP:
+			select(Math.max(0, selected - VISIBLE_ROWS), count);
+			return true;
+		case PAGE_DOWN:
+			select(Math.min(count - 1, selected + VISIBLE_ROWS), count);
+			return true;
+		case ENTER:
+		case TAB:
+			return accept();
+		case ESCAPE:
+			hide();
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	private void select(int index, int count) {
+		if (count == 0) {
+			return;
+		}
+		index = (index + count) % count;
+		list.getSelectionModel().select(index);
+		list.scrollTo(Math.max(0, index - VISIBLE_ROWS / 2));
+	}
+
+	private void close() {
+		active = false;
+		if (request != null) {
+			request.cancel(false);
+			request = null;
+		}
+	}
+
+	/**
+	 * Follows the caret: narrows the list if it is still in the word being completed,
+	 * otherwise closes the popup.
+	 */
+	private void update() {
+		if (zenCodeArea.getCurrentParagraph() != line || findWordStart() != wordStart
+				|| zenCodeArea.getCaretColumn() < wordStart) {
+			hide();
+			return;
+		}
+
+		String uri = file.toPath().toUri().toString();
+		String prefix = currentPrefix();
+		List<LspCompletionItem> items = cache.lookup(uri, line, wordStart, prefix);
+		if (items != null) {
+			if (request != null) {
+				request.cancel(false);
+				request = null;
+			}
+			showItems(items);
+		} else if (request == null || !prefix.startsWith(requestPrefix)) {
+			// A pending request for a shorter prefix is waited for, its result can be
+			// narrowed; one for a longer prefix, after deleting, is stale and replaced
+			requestCompletion(uri, prefix);
+		}
+	}
+
+	private void requestCompletion(String uri, String prefix) {
+		try {
+			// The server must see what was typed since the last debounced didChange
+			zenCodeArea.sendLspChanges();
+		} catch (Exception e) {
+			e.printStackTrace();
+			return;
+		}
+
+		int requestLine = line;
+		int requestWordStart = wordStart;
+		CompletableFuture<LspCompletionList> sent = lspManager.requestCompletion(
+				file.getAbsolutePath(), line, zenCodeArea.getCaretColumn());
+		request = sent;
+		requestPrefix = prefix;
+
+		sent.whenComplete((result, error) -> Platform.runLater(() -> {
+			if (request != sent) {
+				return; // superseded, or the popup was closed
+			}
+			request = null;
+			if (error != null) {
+				Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+				if (!(cause instanceof CancellationException)) {
+					System.err.println("[LSP] Completion failed: " + cause.getMessage());
+				}
+				return;
+			}
+			cache.put(uri, requestLine, requestWordStart, prefix, result);
+			if (active) {
+				update();
+			}
+		}));
+	}
+
+	private void showItems(List<LspCompletionItem> items) {
+		list.getItems().setAll(items);
+		list.setPrefHeight(Math.max(1, Math.min(items.size(), VISIBLE_ROWS)) * ROW_HEIGHT + 4);
+		if (!items.isEmpty()) {
+			list.getSelectionModel().select(0);
+			list.scrollTo(0);
+		}
+
+		if (!popup.isShowing()) {
+			Bounds caret = zenCodeArea.getCaretBounds().orElse(null);
+			if (caret == null) {
+				return;
+			}
+			popup.show(zenCodeArea, caret.getMinX(), caret.getMaxY());
+		}
+	}
+
+	/**
+	 * Replaces the word being completed with the selected item.
+	 * @return {@code true} if an item was inserted.
+	 */
+	private boolean accept() {
+		LspCompletionItem item = list.getSelectionModel().getSelectedItem();
+		if (item == null) {
+			hide();
+			return false;
+		}
+
+		int start = item.hasTextEdit() && item.getEditStartLine() == line
+				? zenCodeArea.getAbsolutePosition(line, item.getEditStartChar())
+				: zenCodeArea.getAbsolutePosition(line, wordStart);
+		int end = zenCodeArea.getCaretPosition();
+
+		hide();
+		zenCodeArea.replaceText(Math.min(start, end), end, item.getInsertText());
+		return true;
+	}
+
+	private String currentPrefix() {
+		String text = zenCodeArea.getParagraph(line).getText();
+		return text.substring(wordStart, Math.min(text.length(), zenCodeArea.getCaretColumn()));
+	}
+
+	/**
+	 * @return The column where the identifier ending at the caret starts.
+	 */
+	private int findWordStart() {
+		String text = zenCodeArea.getParagraph(zenCodeArea.getCurrentParagraph()).getText();
+		int start = Math.min(text.length(), zenCodeArea.getCaretColumn());
+		while (start > 0 && Character.isJavaIdentifierPart(text.charAt(start - 1))) {
+			start--;
+		}
+		return start;
+	}
+
+	/**
+	 * Shows the label of an item, and its kind and detail dimmed after it.
+	 */
+	private static class ItemCell extends ListCell<LspCompletionItem> {
+		private final Label label = new Label();
+		private final Label detail = new Label();
+		private final HBox box = new HBox(8, label, new Region(), detail);
+
+		ItemCell() {
+			label.getStyleClass().add("completion-label");
+			detail.getStyleClass().add("completion-detail");
+			HBox.setHgrow(box.getChildren().get(1), Priority.ALWAYS);
+		}
+
+		@Override
+		protected void updateItem(LspCompletionItem item, boolean empty) {
+			super.updateItem(item, empty);
+			if (empty || item == null) {
+				setGraphic(null);
+				return;
+			}
+			label.setText(item.getLabel());
+			String kind = item.getKindLabel();
+			String description = item.getDetail() != null ? item.getDetail() : "";
+			detail.setText(kind.isEmpty() ? description : description.isEmpty() ? kind : kind + "  " + description);
+			setGraphic(box);
+		}
+	}
+}
@@ -12,8 +12,10 @@ import javafx.event.Event;
 import javafx.event.EventHandler;
 import javafx.scene.control.Tab;
 import javafx.scene.control.Tooltip;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.layout.AnchorPane;
+import javafx.scene.control.Label;
 import javafx.scene.control.Alert;
 import javafx.scene.control.Alert.AlertType;
 import javafx.scene.control.ButtonBar.ButtonData;
@@ -21,7 +23,9 @@ import javafx.scene.control.ButtonType;
 import zenit.LSP.LspDiagnostic;
 import zenit.LSP.LspManager;
 import zenit.filesystem.FileController;
+import zenit.util.IntervalTree;
 import zenit.util.StringUtilities;
+import zenit.zencodearea.StyleOverlay;
 import zenit.zencodearea.ZenCodeArea;
 
 /**
@@ -29,7 +33,6 @@ import zenit.zencodearea.ZenCodeArea;
  * Updated: LSP diagnostic highlighting (FUI403) and tooltips (FUI404).
  */
 public class FileTab extends Tab {
-	private File initialFile;
 	private File file;
 	private String initialTitle;
 	private MainController mc;
@@ -39,16 +42,29 @@ public class FileTab extends Tab {
 
 	private boolean hasChanged;
 
-	// Stores the latest diagnostics for this tab — used for tooltip lookup
-	private List<LspDiagnostic> currentDiagnostics = new ArrayList<>();
+	// Modification time and size of the file when it was last loaded or saved
+	private long savedModified;
+	private long savedLength;
+
+	// The latest diagnostics for this tab, indexed by document offset for tooltip lookup
+	private IntervalTree<LspDiagnostic> diagnosticIndex = IntervalTree.empty();
+
+	// The diagnostic the tooltip currently shows, null if hidden
+	private LspDiagnostic hoveredDiagnostic;
 
 	// Tooltip shown on hover
 	private final Tooltip diagnosticTooltip = new Tooltip();
 
+	// Shown next to the title while the file is edited in large-file mode
+	private final Label largeFileIndicator = new Label("LARGE");
+
+	private final CompletionPopup completionPopup;
+
 	public FileTab(ZenCodeArea zenCodeArea, MainController mc, LspManager lspManager) {
 		this.lspManager = lspManager;
 		this.zenCodeArea = zenCodeArea;
 		this.mc = mc;
+		this.completionPopup = new CompletionPopup(zenCodeArea, lspManager);
 		initialTitle = "Untitled";
 
 		zenCodeArea.setOnMouseClicked(new UpdateDetector());
@@ -71,10 +87,28 @@ public class FileTab extends Tab {
 		setContent(anchorPane);
 		setText(initialTitle);
 
-		zenCodeArea.textProperty().addListener((observable, oldText, newText) -> {
-			String initialFileContent = FileController.readFile(initialFile);
-			hasChanged = !initialFileContent.equals(newText);
-			updateUI();
+		// The undo manager is marked whenever the file is loaded or saved, so the tab
+		// has unsaved changes exactly when the undo history has moved away from the mark
+		zenCodeArea.getUndoManager().atMarkedPositionProperty().addListener(
+				(observable, wasAtMark, isAtMark) -> {
+					hasChanged = !isAtMark;
+					updateUI();
+				});
+
+		largeFileIndicator.setStyle(
+				"-fx-text-fill: #1e1e1e;" +
+						"-fx-background-color: #e5c07b;" +
+						"-fx-font-size: 9px;" +
+						"-fx-padding: 0 3 0 3;"
+		);
+		largeFileIndicator.setTooltip(new Tooltip(
+				"Large file: syntax highlighting and the language server are turned off"));
+
+		selectedProperty().addListener((observable, wasSelected, isSelected) -> {
+			zenCodeArea.setPrioritized(isSelected);
+			if (!isSelected) {
+				completionPopup.hide();
+			}
 		});
 
 		setStyle("-fx-background-color: #444;");
@@ -96,31 +130,23 @@ public class FileTab extends Tab {
 		);
 
 		zenCodeArea.addEventHandler(MouseEvent.MOUSE_MOVED, event -> {
-			if (currentDiagnostics.isEmpty()) {
-				diagnosticTooltip.hide();
-				return;
+			LspDiagnostic diagnostic = null;
+			if (diagnosticIndex.size() > 0) {
+				int charIndex = zenCodeArea.hit(event.getX(), event.getY())
+						.getCharacterIndex().orElse(-1);
+				if (charIndex >= 0) {
+					diagnostic = diagnosticIndex.find(charIndex);
+				}
 			}
 
-			// Find which line/column the mouse is over
-			int charIndex = zenCodeArea.hit(event.getX(), event.getY())
-					.getCharacterIndex().orElse(-1);
-
-			if (charIndex < 0) {
-				diagnosticTooltip.hide();
+			// Only touch the tooltip when the mouse moves onto another diagnostic
+			if (diagnostic == hoveredDiagnostic) {
 				return;
 			}
+			hoveredDiagnostic = diagnostic;
 
-			// Convert absolute char index to line/col
-			int line = zenCodeArea.offsetToPosition(charIndex,
-					org.fxmisc.richtext.model.TwoDimensional.Bias.Forward).getMajor();
-			int col  = zenCodeArea.offsetToPosition(charIndex,
-					org.fxmisc.richtext.model.TwoDimensional.Bias.Forward).getMinor();
-
-			// Check if cursor is within any diagnostic range
-			String msg = findDiagnosticMessage(line, col);
-
-			if (msg != null) {
-				diagnosticTooltip.setText(msg);
+			if (diagnostic != null) {
+				diagnosticTooltip.setText("[" + diagnostic.getSeverityLabel() + "] " + diagnostic.getMessage());
 				diagnosticTooltip.show(zenCodeArea,
 						event.getScreenX() + 10,
 						event.getScreenY() + 10);
@@ -129,80 +155,35 @@ public class FileTab extends Tab {
 			}
 		});
 
-		zenCodeArea.addEventHandler(MouseEvent.MOUSE_EXITED, e -> diagnosticTooltip.hide());
+		zenCodeArea.addEventHandler(MouseEvent.MOUSE_EXITED, e -> hideDiagnosticTooltip());
 	}
 
-	/**
-	 * Returns the message of the first diagnostic that covers (line, col),
-	 * or null if none match.
-	 */
-	private String findDiagnosticMessage(int line, int col) {
-		for (LspDiagnostic d : currentDiagnostics) {
-			if (line >= d.getStartLine() && line <= d.getEndLine()) {
-				int startC = (line == d.getStartLine()) ? d.getStartChar() : 0;
-				int endC   = (line == d.getEndLine())   ? d.getEndChar()   : Integer.MAX_VALUE;
-				if (col >= startC && col <= endC) {
-					return "[" + d.getSeverityLabel() + "] " + d.getMessage();
-				}
-			}
-		}
-		return null;
+	private void hideDiagnosticTooltip() {
+		hoveredDiagnostic = null;
+		diagnosticTooltip.hide();
 	}
 
 	// FUI403 — LSP diagnostic highlighting
 	/**
 	 * Called by MainController when new diagnostics arrive for this file.
-	 * Clears old highlighting, applies new underlines.
+	 * Replaces the underline overlay of the code area; only the lines whose
+	 * diagnostics changed are restyled.
 	 *
 	 * Must be called on the JavaFX thread (wrap in Platform.runLater if needed).
 	 */
 	public void applyDiagnostics(List<LspDiagnostic> diagnostics) {
-		this.currentDiagnostics = new ArrayList<>(diagnostics);
-
-		// Clear all previous LSP styling
-		clearDiagnosticStyles();
+		diagnosticIndex = new IntervalTree<>(diagnostics,
+				d -> zenCodeArea.getClampedOffset(d.getStartLine(), d.getStartChar()),
+				d -> zenCodeArea.getClampedOffset(d.getEndLine(), d.getEndChar()));
+		hideDiagnosticTooltip();
 
-		// Apply new underlines
+		List<StyleOverlay.Range> underlines = new ArrayList<>(diagnostics.size());
 		for (LspDiagnostic d : diagnostics) {
 			String cssClass = d.isError() ? "lsp-error" : "lsp-warning";
-			applyDiagnosticStyle(d, cssClass);
-		}
-	}
-
-	/**
-	 * Clears previous LSP underline styling from the entire document.
-	 */
-	private void clearDiagnosticStyles() {
-		// Re-trigger syntax highlighting which will reset spans
-		zenCodeArea.update();
-	}
-
-	/**
-	 * Applies a CSS class as underlining for a single diagnostic range.
-	 */
-	private void applyDiagnosticStyle(LspDiagnostic d, String cssClass) {
-		try {
-			int totalLines = zenCodeArea.getParagraphs().size();
-
-			for (int line = d.getStartLine(); line <= d.getEndLine(); line++) {
-				if (line >= totalLines) break;
-
-				int lineLength = zenCodeArea.getParagraph(line).length();
-				if (lineLength == 0) continue;
-
-				int startCol = (line == d.getStartLine()) ? d.getStartChar() : 0;
-				int endCol   = (line == d.getEndLine())
-						? Math.min(d.getEndChar(), lineLength)
-						: lineLength;
-
-				if (startCol >= endCol) continue;
-
-				// setStyle(paragraph, startCol, endCol, styles)
-				zenCodeArea.setStyle(line, startCol, endCol, List.of(cssClass));
-			}
-		} catch (Exception e) {
-			System.err.println("[FileTab] applyDiagnosticStyle failed: " + e.getMessage());
+			underlines.add(new StyleOverlay.Range(d.getStartLine(), d.getStartChar(),
+					d.getEndLine(), d.getEndChar(), cssClass));
 		}
+		zenCodeArea.setOverlay(underlines);
 	}
 
 	public void setStyle(int row, int column, String style) {
@@ -224,35 +205,44 @@ public class FileTab extends Tab {
 	public void shortcutsTrigger() {
 		if (file == null) return;
 
-		String text = zenCodeArea.getText();
 		int caretPosition = zenCodeArea.getCaretPosition();
 
-		if (caretPosition >= 6 && text.substring(caretPosition - 6, caretPosition).equals("sysout")) {
+		if (caretPosition >= 6 && zenCodeArea.getText(caretPosition - 6, caretPosition).equals("sysout")) {
 			zenCodeArea.replaceText(caretPosition - 6, caretPosition, "System.out.println();");
 			zenCodeArea.moveTo(caretPosition + 13);
-		} else if (caretPosition >= 6 && text.substring(caretPosition - 6, caretPosition).equals("syserr")) {
+		} else if (caretPosition >= 6 && zenCodeArea.getText(caretPosition - 6, caretPosition).equals("syserr")) {
 			zenCodeArea.replaceText(caretPosition - 6, caretPosition, "System.err.println();");
 			zenCodeArea.moveTo(caretPosition + 13);
-		} else if (caretPosition >= 4 && text.substring(caretPosition - 4, caretPosition).equals("main")) {
+		} else if (caretPosition >= 4 && zenCodeArea.getText(caretPosition - 4, caretPosition).equals("main")) {
 			zenCodeArea.replaceText(caretPosition - 4, caretPosition,
 					"public static void main(String[]args) {\n \n}");
 			zenCodeArea.moveTo(caretPosition + 37);
-		} else if (caretPosition >= 2 && text.substring(caretPosition - 2, caretPosition).equals("pv")) {
+		} else if (caretPosition >= 2 && zenCodeArea.getText(caretPosition - 2, caretPosition).equals("pv")) {
 			zenCodeArea.replaceText(caretPosition - 2, caretPosition, "public void ");
 			zenCodeArea.moveTo(caretPosition + 10);
+		} else {
+			completionPopup.show(file);
 		}
 	}
 
+	/**
+	 * Lets the completion popup handle a key before the code area and the scene's
+	 * shortcuts see it.
+	 * @return {@code true} if the popup used the key.
+	 */
+	public boolean handleCompletionKey(KeyEvent event) {
+		return completionPopup.handleKey(event);
+	}
+
 	public void commentsShortcutsTrigger() {
 		if (file == null) return;
 
-		String text = zenCodeArea.getText();
 		int caretPosition = zenCodeArea.getCaretPosition();
 
-		if (caretPosition >= 2 && text.substring(caretPosition - 2, caretPosition).equals("/*")) {
+		if (caretPosition >= 2 && zenCodeArea.getText(caretPosition - 2, caretPosition).equals("/*")) {
 			zenCodeArea.replaceText(caretPosition - 2, caretPosition, "/*\n* \n*/");
 			zenCodeArea.moveTo(caretPosition + 3);
-		} else if (caretPosition >= 3 && text.substring(caretPosition - 3, caretPosition).equals("/**")) {
+		} else if (caretPosition >= 3 && zenCodeArea.getText(caretPosition - 3, caretPosition).equals("/**")) {
 			zenCodeArea.replaceText(caretPosition - 3, caretPosition, "/**\n* \n* @author \n*/");
 			zenCodeArea.moveTo(caretPosition + 3);
 		} else {
@@ -278,10 +268,13 @@ public class FileTab extends Tab {
 	}
 
 	private void addMissingCurlyBrace(int row, int column, String spaces) {
-		int[] counts = {
-				StringUtilities.count(zenCodeArea.getText(), '{'),
-				StringUtilities.count(zenCodeArea.getText(), '}'),
-		};
+		if (zenCodeArea.isLargeFile()) return;
+
+		int[] counts = new int[2];
+		for (String line : zenCodeArea.lines()) {
+			counts[0] += StringUtilities.count(line, '{');
+			counts[1] += StringUtilities.count(line, '}');
+		}
 
 		if (counts[0] == counts[1] + 1) {
 			zenCodeArea.insertText(zenCodeArea.getCaretPosition(), "\n");
@@ -298,27 +291,97 @@ public class FileTab extends Tab {
 
 	public void update(File file) {
 		setFile(file, false);
+		markSaved();
+	}
+
+	/**
+	 * Checks whether the file was modified by another program since it was last loaded
+	 * or saved in this tab. This is the only place where the tab looks at the file on
+	 * disk after opening it.
+	 * @return {@code true} if the modification time or size of the file changed.
+	 */
+	public boolean isChangedOnDisk() {
+		return file != null && file.exists()
+				&& (file.lastModified() != savedModified || file.length() != savedLength);
+	}
+
+	/**
+	 * Replaces the text with the current content of the file, discarding any unsaved
+	 * changes and the undo history.
+	 */
+	public void reload() {
+		if (file != null) {
+			loadFileText(FileController.readFile(file));
+		}
+	}
+
+	/**
+	 * Keeps the text in the tab although the file changed on disk, and stops reporting
+	 * that change from {@link #isChangedOnDisk()}.
+	 */
+	public void ignoreDiskChange() {
+		savedModified = file.lastModified();
+		savedLength = file.length();
+	}
+
+	private void loadFileText(String text) {
+		setFileText(text);
+		zenCodeArea.getUndoManager().forgetHistory();
+		markSaved();
+	}
+
+	private void markSaved() {
+		zenCodeArea.getUndoManager().mark();
 		hasChanged = false;
+		ignoreDiskChange();
 		updateUI();
 	}
 
 	public File getFile()        { return file; }
 	public String getFileText()  { return zenCodeArea.getText(); }
+	public Iterable<String> getFileLines() { return zenCodeArea.lines(); }
 
 	public void setFile(File file, boolean shouldSetContent) {
-		this.initialFile  = file;
+		if (this.file != null && !this.file.equals(file)) {
+			// Renamed or saved as another file, which is opened under its new name
+			closeOnServer();
+		}
 		this.file         = file;
 		this.initialTitle = file == null ? "Untitled" : file.getName();
 		setText(initialTitle);
 
 		if (shouldSetContent && file != null) {
-			try {
-				this.lspManager.sendDidOpen(file.getAbsolutePath(),
-						FileController.readFile(file));
-			} catch (Exception e) {
-				e.printStackTrace();
+			boolean largeFile = file.length() > ZenCodeArea.LARGE_FILE_BYTES;
+			zenCodeArea.setLargeFile(largeFile);
+			setGraphic(largeFile ? largeFileIndicator : null);
+
+			String text = FileController.readFile(file);
+			loadFileText(text);
+			if (!largeFile) {
+				try {
+					// Sent after the text is set, so loading it is not sent again as an edit
+					this.lspManager.sendDidOpen(file.getAbsolutePath(), text);
+					zenCodeArea.clearPendingLspChanges();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
 			}
-			setFileText(FileController.readFile(file));
+		}
+	}
+
+	/**
+	 * Releases the resources held by this tab once it has been closed.
+	 */
+	public void dispose() {
+		hideDiagnosticTooltip();
+		completionPopup.hide();
+		zenCodeArea.dispose();
+		closeOnServer();
+	}
+
+	private void closeOnServer() {
+		if (file != null && lspManager != null) {
+			lspManager.sendDidClose(file.getAbsolutePath());
 		}
 	}
 
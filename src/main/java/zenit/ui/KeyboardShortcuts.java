@@ -59,7 +59,9 @@ public final class KeyboardShortcuts {
 			public void handle(KeyEvent ke) {
 				if (controller.getSelectedTab() != null) {
 					if (controller.getSelectedTab().getZenCodeArea().isFocused()) {
-						if (ke.getCode() == KeyCode.ENTER) {
+						if (controller.getSelectedTab().handleCompletionKey(ke)) {
+							ke.consume();
+						} else if (ke.getCode() == KeyCode.ENTER) {
 							controller.commentsShortcutsTrigger();
 							controller.navigateToCorrectTabIndex();
 							ke.consume(); // <-- stops passing the event to next node
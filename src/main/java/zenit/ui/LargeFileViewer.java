@@ -0,0 +1,206 @@
+package zenit.ui;
+
+import java.io.File;
+import java.io.IOException;
+
+import javafx.collections.ObservableListBase;
+import javafx.concurrent.Task;
+import javafx.geometry.Insets;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListCell;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.stage.Stage;
+import zenit.filesystem.MappedTextFile;
+
+/**
+ * A read-only window for text files too large to open in a tab. The file is
+ * memory-mapped through {@link MappedTextFile}, and the list only creates cells for the
+ * lines that are visible, so neither the file nor its lines are ever loaded as a whole.
+ * Search runs over the mapped bytes on a background thread.
+ */
+public class LargeFileViewer {
+
+	private final File file;
+	private final boolean darkmode;
+
+	private Stage stage;
+	private MappedTextFile mappedFile;
+	private ListView<Integer> lines;
+	private TextField searchField;
+	private Label status;
+	private Task<Long> runningSearch;
+
+	// Byte offset after the last match, where the next search starts
+	private long searchFrom;
+
+	public LargeFileViewer(File file, boolean darkmode) {
+		this.file = file;
+		this.darkmode = darkmode;
+	}
+
+	/**
+	 * Opens the viewer window and indexes the file in the background.
+	 */
+	public void start() {
+		lines = new ListView<>();
+		lines.setFixedCellSize(18);
+		lines.setCellFactory(list -> new LineCell());
+		lines.setStyle("-fx-font-family: monospace;");
+
+		searchField = new TextField();
+		searchField.setPromptText("Search");
+		searchField.setOnAction(event -> findNext());
+		searchField.textProperty().addListener((observable, oldText, newText) -> searchFrom = 0);
+		Button next = new Button("Next");
+		next.setOnAction(event -> findNext());
+		status = new Label("Indexing " + file.getName() + "...");
+
+		HBox toolbar = new HBox(8, searchField, next, status);
+		toolbar.setPadding(new Insets(6));
+		HBox.setHgrow(searchField, Priority.SOMETIMES);
+
+		BorderPane root = new BorderPane(lines);
+		root.setTop(toolbar);
+
+		Scene scene = new Scene(root, 900, 700);
+		if (darkmode) {
+			scene.getStylesheets().add(getClass().getResource("/zenit/ui/mainStyle.css").toExternalForm());
+		} else {
+			scene.getStylesheets().add(getClass().getResource("/zenit/ui/mainStyle-lm.css").toExternalForm());
+		}
+
+		stage = new Stage();
+		stage.setTitle(file.getName() + " (read-only)");
+		stage.setScene(scene);
+		stage.setOnHidden(event -> close());
+		stage.show();
+
+		Task<MappedTextFile> open = new Task<MappedTextFile>() {
+			@Override
+			protected MappedTextFile call() throws IOException {
+				return new MappedTextFile(file);
+			}
+		};
+		open.setOnSucceeded(event -> {
+			mappedFile = open.getValue();
+			if (!stage.isShowing()) {
+				close();
+				return;
+			}
+			lines.setItems(new LineNumbers(mappedFile.getLineCount()));
+			status.setText(mappedFile.getLineCount() + " lines");
+		});
+		open.setOnFailed(event -> {
+			status.setText("Could not open file");
+			DialogBoxes.errorDialog("Could not open file", "The file could not be read",
+					open.getException().getMessage());
+		});
+
+		Thread thread = new Thread(open, "large-file-index");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Searches for the next match of the search field after the previous match, and
+	 * wraps around to the start of the file once.
+	 */
+	private void findNext() {
+		String text = searchField.getText();
+		if (mappedFile == null || text.isEmpty()) {
+			return;
+		}
+		if (runningSearch != null) {
+			runningSearch.cancel();
+		}
+
+		MappedTextFile searched = mappedFile;
+		long from = searchFrom;
+		Task<Long> search = new Task<Long>() {
+			@Override
+			protected Long call() {
+				long match = searched.find(text, from, this::isCancelled);
+				if (match < 0 && from > 0 && !isCancelled()) {
+					match = searched.find(text, 0, this::isCancelled);
+				}
+				return match;
+			}
+		};
+		search.setOnSucceeded(event -> {
+			runningSearch = null;
+			long match = search.getValue();
+			if (match < 0) {
+				status.setText("No matches");
+				return;
+			}
+
+			searchFrom = match + 1;
+			int line = searched.getLineOf(match);
+			lines.getSelectionModel().select(line);
+			lines.scrollTo(Math.max(0, line - 5));
+			status.setText("Line " + (line + 1) + " of " + searched.getLineCount());
+		});
+
+		status.setText("Searching...");
+		runningSearch = search;
+		Thread thread = new Thread(search, "large-file-search");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	private void close() {
+		if (runningSearch != null) {
+			runningSearch.cancel();
+		}
+		if (mappedFile != null) {
+			try {
+				mappedFile.close();
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * The items of the list: the numbers 0 to {@code size - 1}, computed rather than stored.
+	 */
+	private static class LineNumbers extends ObservableListBase<Integer> {
+		private final int size;
+
+		LineNumbers(int size) {
+			this.size = size;
+		}
+
+		@Override
+		public Integer get(int index) {
+			return index;
+		}
+
+		@Override
+		public int size() {
+			return size;
+		}
+	}
+
+	/**
+	 * Shows the line number and the text of a line, read from the mapping when the cell
+	 * is shown.
+	 */
+	private class LineCell extends ListCell<Integer> {
+		@Override
+		protected void updateItem(Integer line, boolean empty) {
+			super.updateItem(line, empty);
+			if (empty || line == null) {
+				setText(null);
+			} else {
+				setText(String.format("%7d  %s", line + 1, mappedFile.getLine(line)));
+			}
+		}
+	}
+}
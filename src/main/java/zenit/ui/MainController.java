@@ -4,6 +4,7 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.regex.Matcher;
+import java.util.concurrent.ConcurrentHashMap;
 
 import zenit.LSP.DiagnosticsFormatter;
 import zenit.LSP.LspDiagnostic;
@@ -13,6 +14,7 @@ import zenit.LSP.DiagnosticsListener;
 import com.ibm.icu.util.TimeZone.SystemTimeZoneType;
 
 import javafx.application.Platform;
+import javafx.collections.ListChangeListener;
 import javafx.event.Event;
 import javafx.fxml.FXML;
 import javafx.fxml.FXMLLoader;
@@ -42,6 +44,7 @@ import zenit.filesystem.ProjectFile;
 import zenit.filesystem.RunnableClass;
 import zenit.filesystem.WorkspaceHandler;
 import zenit.filesystem.metadata.Metadata;
+import zenit.javacodecompiler.CompileDaemon;
 import zenit.javacodecompiler.DebugError;
 import zenit.javacodecompiler.DebugErrorBuffer;
 import zenit.javacodecompiler.JavaSourceCodeCompiler;
@@ -60,6 +63,9 @@ import zenit.zencodearea.ZenCodeArea;
  *
  */
 public class MainController extends VBox {
+	// Files larger than this are offered in the read-only viewer instead of a tab
+	private static final long READ_ONLY_VIEWER_BYTES = 50_000_000; // 50MB
+
 	private Stage stage;
 	
 	private FileController fileController;
@@ -153,9 +159,15 @@ public class MainController extends VBox {
 	private FileTreeClipboard clipboard;
 	private File workspace;
 	private LspManager lspManager;
-	private Map<String, List<LspDiagnostic>> diagnosticsMap = new HashMap<>();
+	private Map<String, List<LspDiagnostic>> diagnosticsMap = new ConcurrentHashMap<>();
 	private final DiagnosticsFormatter diagnosticsFormatter = new DiagnosticsFormatter();
 
+	// The errors of the last background compile by file, and what the running one reported
+	// so far. Only used on the JavaFX thread.
+	private Map<File, List<LspDiagnostic>> compileDiagnostics = new HashMap<>();
+	private DebugErrorBuffer compileBuffer;
+	private Set<File> compileReported;
+
 
 	/**
 	 * Loads a file Main.fxml, sets this MainController as its Controller, and loads
@@ -208,10 +220,21 @@ public class MainController extends VBox {
 			this.lspManager = new LspManager();
 			lspManager.setWorkspace(workspace);
 			lspManager.setDiagnosticsListener(this::handleLspDiagnostics);
-			lspManager.startServer();
-
+			lspManager.setStatusListener(status -> Platform.runLater(() -> updateStatusLeft(status)));
 
 			stage.setOnCloseRequest(event -> quit());
+			stage.focusedProperty().addListener((observable, wasFocused, isFocused) -> {
+				if (isFocused) {
+					checkExternalChanges();
+				}
+			});
+
+			// Launched in the background, tabs opened until it is ready are sent to it then
+			lspManager.startServerAsync().exceptionally(e -> {
+				e.printStackTrace();
+				Platform.runLater(() -> updateStatusLeft("Java language server could not be started"));
+				return null;
+			});
 
 		} catch (Exception e) {
 			e.printStackTrace();
@@ -294,6 +317,7 @@ public class MainController extends VBox {
 		btnRun.setPickOnBounds(true);
 		btnRun.setOnAction(event -> compileAndRun());
 		btnStop.setOnAction(event -> terminate());
+		tabPane.getTabs().addListener(this::tabsChanged);
 		initTree();
 		consoleController.setMainController(this);
 		consoleController.setCurrWorkspace(this.workspace);
@@ -573,7 +597,7 @@ public class MainController extends VBox {
 			}
 		}
 
-		boolean didWrite = fileController.writeFile(file, tab.getFileText());
+		boolean didWrite = fileController.writeLines(file, tab.getFileLines());
 
 		if (didWrite) {
 			tab.update(file);
@@ -650,7 +674,12 @@ public class MainController extends VBox {
 
 		try {
 			if (file != null) {
-				DebugErrorBuffer buffer = new DebugErrorBuffer();
+				Set<File> reported = new HashSet<>();
+				DebugErrorBuffer buffer = new DebugErrorBuffer(
+						error -> Platform.runLater(() -> showCompileError(error, reported)),
+						() -> Platform.runLater(() -> clearCompileErrors(reported)));
+				compileBuffer = buffer;
+				compileReported = reported;
 				JavaSourceCodeCompiler compiler = new JavaSourceCodeCompiler(file, metadataFile, true, buffer, this);
 				compiler.startCompile();
 			}
@@ -665,7 +694,12 @@ public class MainController extends VBox {
 	 * Implements DiagnosticsListener.
 	 */
 	private void handleLspDiagnostics(String fileUri, List<LspDiagnostic> diagnostics) {
-		diagnosticsMap.put(fileUri, diagnostics);
+		// The server publishes an empty list for files that are fixed or closed
+		if (diagnostics.isEmpty()) {
+			diagnosticsMap.remove(fileUri);
+		} else {
+			diagnosticsMap.put(fileUri, diagnostics);
+		}
 
 		Platform.runLater(() -> {
 			for (Tab tab : tabPane.getTabs()) {
@@ -673,19 +707,104 @@ public class MainController extends VBox {
 				String tabUri = fileTab.getFileUri();
 
 				if (tabUri != null && normalizeUri(tabUri).equals(normalizeUri(fileUri))) {
-					// FUI403 — understrykning
-					fileTab.applyDiagnostics(diagnostics);
-
-					// FUI405 — formatera och skicka till Problems-panelen
-					String fileName = fileTab.getFile().getName();
-					List<String> formatted = diagnosticsFormatter.format(fileName, diagnostics);
-					consoleController.setProblemsItems(formatted);
-
+					// FUI403 and FUI405, underlined and listed in the Problems panel
+					showDiagnostics(fileTab);
 					return;
 				}
 			}
 		});
 	}
+
+	/**
+	 * Underlines the problems the language server and the last background compile found in
+	 * a tab, and lists them in the Problems panel. A compile error on a line where the
+	 * server reports a problem of the same severity is taken to be the same problem.
+	 */
+	private void showDiagnostics(FileTab fileTab) {
+		List<LspDiagnostic> diagnostics = new ArrayList<>();
+		String tabUri = fileTab.getFileUri();
+		if (tabUri != null) {
+			for (Map.Entry<String, List<LspDiagnostic>> entry : diagnosticsMap.entrySet()) {
+				if (normalizeUri(entry.getKey()).equals(normalizeUri(tabUri))) {
+					diagnostics.addAll(entry.getValue());
+				}
+			}
+		}
+
+		File file = fileTab.getFile();
+		List<LspDiagnostic> compiled = file != null ? compileDiagnostics.get(file.getAbsoluteFile()) : null;
+		if (compiled != null) {
+			List<LspDiagnostic> fromServer = new ArrayList<>(diagnostics);
+			for (LspDiagnostic diagnostic : compiled) {
+				boolean reported = fromServer.stream().anyMatch(d -> d.getStartLine() == diagnostic.getStartLine()
+						&& d.getSeverity() == diagnostic.getSeverity());
+				if (!reported) {
+					diagnostics.add(diagnostic);
+				}
+			}
+		}
+
+		fileTab.applyDiagnostics(diagnostics);
+		String fileName = file != null ? file.getName() : fileTab.getText();
+		consoleController.setProblemsItems(diagnosticsFormatter.format(fileName, diagnostics));
+	}
+
+	/**
+	 * Shows the problems in a file again, if it is open in a tab.
+	 */
+	private void showDiagnostics(File file) {
+		for (Tab tab : tabPane.getTabs()) {
+			FileTab fileTab = (FileTab) tab;
+			if (fileTab.getFile() != null && fileTab.getFile().getAbsoluteFile().equals(file)) {
+				showDiagnostics(fileTab);
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Shows an error of the running background compile as soon as it is reported. The first
+	 * one in a file replaces what the last compile found in it.
+	 * @param reported The files the compile reported errors in so far.
+	 */
+	private void showCompileError(DebugError error, Set<File> reported) {
+		if (reported != compileReported) {
+			// A newer compile has started
+			return;
+		}
+		File file = new File(error.getPlace()).getAbsoluteFile();
+		if (reported.add(file)) {
+			compileDiagnostics.put(file, new ArrayList<>());
+		}
+		compileDiagnostics.get(file).add(toLspDiagnostic(error));
+		showDiagnostics(file);
+	}
+
+	/**
+	 * Forgets the errors the running background compile reported so far, when it is
+	 * compiled again and reports them once more.
+	 * @param reported The files the compile reported errors in so far.
+	 */
+	private void clearCompileErrors(Set<File> reported) {
+		if (reported != compileReported) {
+			// A newer compile has started
+			return;
+		}
+		for (File file : reported) {
+			compileDiagnostics.remove(file);
+			showDiagnostics(file);
+		}
+		reported.clear();
+	}
+
+	/**
+	 * @return The error as a diagnostic, with the lines counted from 0 like the language
+	 * server counts them.
+	 */
+	private static LspDiagnostic toLspDiagnostic(DebugError error) {
+		return new LspDiagnostic(error.getRow() - 1, error.getColumn(), error.getEndRow() - 1, error.getEndColumn(),
+				error.isError() ? 1 : 2, error.getProblem());
+	}
 	/**
 	 * Normalizes a file URI for comparison.
 	 */
@@ -696,16 +815,39 @@ public class MainController extends VBox {
 	}
 
 	/**
-	 * Collects errors from buffer and displays them in code area
+	 * Collects the errors of a finished background compile from its buffer, and shows them
+	 * in place of those of the previous compile.
 	 * @param buffer Buffer to collect errors from
 	 */
 	public void errorHandler(DebugErrorBuffer buffer) {
+		List<DebugError> errors = new ArrayList<>();
 		DebugError error;
-		while (!buffer.isEmpty()) {
-			error = buffer.get();
-
-			getSelectedTab().setStyle(error.getRow(), error.getColumn(), "underline");
+		while ((error = buffer.get()) != null) {
+			errors.add(error);
 		}
+
+		Platform.runLater(() -> {
+			if (buffer != compileBuffer) {
+				// A newer compile has started
+				return;
+			}
+			Map<File, List<LspDiagnostic>> found = new HashMap<>();
+			for (DebugError compileError : errors) {
+				found.computeIfAbsent(new File(compileError.getPlace()).getAbsoluteFile(), file -> new ArrayList<>())
+						.add(toLspDiagnostic(compileError));
+			}
+			Set<File> changed = new HashSet<>(compileDiagnostics.keySet());
+			changed.addAll(found.keySet());
+			compileDiagnostics = found;
+			for (File file : changed) {
+				showDiagnostics(file);
+			}
+			// The Problems panel ends up listing the file being edited
+			FileTab selected = getSelectedTab();
+			if (selected != null && selected.getFile() != null && changed.contains(selected.getFile().getAbsoluteFile())) {
+				showDiagnostics(selected);
+			}
+		});
 	}
 
 	/**
@@ -750,6 +892,10 @@ public class MainController extends VBox {
 	
 	@FXML
 	public void quit() {
+		if (lspManager != null) {
+			lspManager.shutdown(LspManager.SHUTDOWN_TIMEOUT_MS);
+		}
+		CompileDaemon.stopAll();
 		System.exit(0);
 	}
 
@@ -784,7 +930,8 @@ public class MainController extends VBox {
 	/**
 	 * Tries to open the content of a file into a new tab using the FileController
 	 * instance. If tab containing file-content is already open, switches to that
-	 * tab.
+	 * tab. Files larger than {@link #READ_ONLY_VIEWER_BYTES} can instead be opened in
+	 * a {@link LargeFileViewer}, which does not load them into memory.
 	 * 
 	 * @param file The file which content to be opened.
 	 */
@@ -792,6 +939,20 @@ public class MainController extends VBox {
 
 		if (file != null && getTabFromFile(file) == null) {
 
+			if (file.length() > READ_ONLY_VIEWER_BYTES) {
+				int choice = DialogBoxes.twoChoiceDialog("Large file",
+					file.getName() + " is " + (file.length() / 1_000_000) + " MB",
+					"Opening it in the editor loads the whole file into memory. "
+					+ "Open it in the read-only viewer instead?",
+					"Open read-only", "Open in editor");
+				if (choice == 1) {
+					new LargeFileViewer(file, isDarkMode).start();
+					return;
+				} else if (choice != 2) {
+					return;
+				}
+			}
+
 			this.currentFile = file;
 			if (supportedFileFormat(file)) {
 				System.out.println("[DEBUG] Opening file tab at " + file.getAbsolutePath());
@@ -1131,6 +1292,54 @@ public class MainController extends VBox {
 		return tab;
 	}
 
+	/**
+	 * Looks for open files that were modified by another program. Tabs without unsaved
+	 * changes are reloaded; for tabs with unsaved changes the user chooses which version
+	 * to keep. Runs when the window regains focus, since that is when the files are
+	 * likely to have been edited elsewhere.
+	 */
+	private void checkExternalChanges() {
+		for (Tab tab : tabPane.getTabs()) {
+			FileTab fileTab = (FileTab) tab;
+			if (!fileTab.isChangedOnDisk()) {
+				continue;
+			}
+
+			if (!fileTab.hasChanged()) {
+				fileTab.reload();
+				continue;
+			}
+
+			int choice = DialogBoxes.twoChoiceDialog("File Changed",
+					"The file was changed outside Zenit",
+					"The file '" + fileTab.getFile().getName() + "' was modified by another program "
+					+ "and also has unsaved changes in Zenit.",
+					"Reload from disk", "Keep my changes");
+			if (choice == 1) {
+				fileTab.reload();
+			} else {
+				fileTab.ignoreDiskChange();
+			}
+		}
+	}
+
+	/**
+	 * Releases the resources of tabs removed from the TabPane, whichever way they were closed.
+	 */
+	private void tabsChanged(ListChangeListener.Change<? extends Tab> change) {
+		while (change.next()) {
+			for (Tab tab : change.getRemoved()) {
+				FileTab fileTab = (FileTab) tab;
+				activeZenCodeAreas.remove(fileTab.getZenCodeArea());
+				fileTab.dispose();
+				String fileUri = fileTab.getFileUri();
+				if (fileUri != null) {
+					diagnosticsMap.keySet().removeIf(uri -> normalizeUri(uri).equals(normalizeUri(fileUri)));
+				}
+			}
+		}
+	}
+
 	/**
 	 * Gets the currently selected tab, and removes it from the TabPane. If the file
 	 * has been modified, a dialog is shown asking if the user wants to save or not,
@@ -1184,6 +1393,10 @@ public class MainController extends VBox {
 			boolean success = fileController.changeWorkspace(workspace);
 			if (success) {	
 				try {
+					// The new window starts a server for the new workspace
+					if (lspManager != null) {
+						lspManager.shutdown(LspManager.SHUTDOWN_TIMEOUT_MS);
+					}
 //					new TestUI().start(stage);
 					new Zenit().start(stage);
 				} catch (Exception ex) {
@@ -0,0 +1,113 @@
+package zenit.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToIntFunction;
+
+/**
+ * An immutable interval tree for finding the values whose interval contains a point.
+ *
+ * The intervals are stored sorted by start in arrays, which form an implicit balanced
+ * binary search tree: the middle element of a range is the root of that range. Each
+ * root also stores the largest end within its subtree, so subtrees that end before the
+ * point are skipped. A lookup takes O(log n + k) for k matching intervals.
+ *
+ * @param <T> The type of the values.
+ */
+public class IntervalTree<T> {
+	private final Object[] values;
+	private final int[] starts;
+	private final int[] ends;
+	private final int[] order; // position of each value in the list it was built from
+	private final int[] maxEnds;
+
+	/**
+	 * Builds a tree of closed intervals.
+	 * @param values The values to index.
+	 * @param start Returns the first point of the interval of a value.
+	 * @param end Returns the last point of the interval of a value.
+	 */
+	public IntervalTree(List<? extends T> values, ToIntFunction<? super T> start, ToIntFunction<? super T> end) {
+		int size = values.size();
+		int[] startsByIndex = new int[size];
+		for (int i = 0; i < size; i++) {
+			startsByIndex[i] = start.applyAsInt(values.get(i));
+		}
+
+		Integer[] sorted = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			sorted[i] = i;
+		}
+		Arrays.sort(sorted, Comparator.comparingInt(i -> startsByIndex[i]));
+
+		this.values = new Object[size];
+		starts = new int[size];
+		ends = new int[size];
+		order = new int[size];
+		maxEnds = new int[size];
+		for (int i = 0; i < size; i++) {
+			T value = values.get(sorted[i]);
+			this.values[i] = value;
+			starts[i] = startsByIndex[sorted[i]];
+			ends[i] = end.applyAsInt(value);
+			order[i] = sorted[i];
+		}
+		computeMaxEnds(0, size - 1);
+	}
+
+	/**
+	 * @return A tree without intervals.
+	 */
+	public static <T> IntervalTree<T> empty() {
+		return new IntervalTree<>(List.of(), value -> 0, value -> 0);
+	}
+
+	private int computeMaxEnds(int low, int high) {
+		if (low > high) {
+			return Integer.MIN_VALUE;
+		}
+		int mid = (low + high) >>> 1;
+		maxEnds[mid] = Math.max(ends[mid],
+				Math.max(computeMaxEnds(low, mid - 1), computeMaxEnds(mid + 1, high)));
+		return maxEnds[mid];
+	}
+
+	/**
+	 * Finds the value whose interval contains {@code point}. If several do, returns the
+	 * one that came first in the list the tree was built from.
+	 * @param point The point to look up.
+	 * @return The value, or null if no interval contains the point.
+	 */
+	@SuppressWarnings("unchecked")
+	public T find(int point) {
+		int found = find(point, 0, values.length - 1, -1);
+		return found < 0 ? null : (T) values[found];
+	}
+
+	private int find(int point, int low, int high, int best) {
+		if (low > high) {
+			return best;
+		}
+		int mid = (low + high) >>> 1;
+		if (maxEnds[mid] < point) {
+			return best;
+		}
+
+		best = find(point, low, mid - 1, best);
+		if (starts[mid] <= point) {
+			if (ends[mid] >= point && (best < 0 || order[mid] < order[best])) {
+				best = mid;
+			}
+			best = find(point, mid + 1, high, best);
+		}
+		return best;
+	}
+
+	/**
+	 * @return The number of intervals in the tree.
+	 */
+	public int size() {
+		return values.length;
+	}
+}
@@ -22,13 +22,16 @@ public class StringUtilities {
 	 * @author Pontus Laos
 	 */
 	public static int count(String haystack, char needle) {
-		if (haystack == null || haystack.length() == 0) {
+		if (haystack == null) {
 			return 0;
 		}
-		
-		if (haystack.charAt(0) == needle) {
-			return 1 + count(haystack.substring(1), needle);
+
+		int count = 0;
+		for (int i = 0; i < haystack.length(); i++) {
+			if (haystack.charAt(i) == needle) {
+				count++;
+			}
 		}
-		return count(haystack.substring(1), needle);
+		return count;
 	}
 }
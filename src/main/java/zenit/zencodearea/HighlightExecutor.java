@@ -0,0 +1,112 @@
+package zenit.zencodearea;
+
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The thread pool shared by all {@link ZenCodeArea ZenCodeAreas} for syntax highlighting.
+ *
+ * The pool has a fixed upper bound of daemon threads that time out when idle, so the
+ * number of threads does not grow with the number of tabs opened during a session.
+ * Work for the visible tab is queued ahead of work for tabs in the background.
+ *
+ * The queue itself is not bounded. It stays small because each area has at most one
+ * job queued or running: {@link ZenCodeArea} cancels its pass and removes its job with
+ * {@link #remove(Job)} before it submits the next one, so the queue holds at most one
+ * job per open area.
+ */
+public final class HighlightExecutor {
+
+	private static final int MAX_THREADS =
+			Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() / 2));
+
+	private static final AtomicLong SEQUENCE = new AtomicLong();
+
+	private static final ThreadPoolExecutor POOL;
+
+	static {
+		AtomicInteger threadNumber = new AtomicInteger();
+		ThreadFactory factory = runnable -> {
+			Thread thread = new Thread(runnable, "highlighter-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+
+		POOL = new ThreadPoolExecutor(MAX_THREADS, MAX_THREADS, 30, TimeUnit.SECONDS,
+				new PriorityBlockingQueue<>(), factory);
+		POOL.allowCoreThreadTimeOut(true);
+	}
+
+	private HighlightExecutor() {
+	}
+
+	/**
+	 * Queues a highlighting task. Callers remove their previous job first, see the
+	 * class comment.
+	 * @param task The task to run.
+	 * @param visible {@code true} if the task belongs to the visible tab and should run
+	 * before tasks of tabs in the background.
+	 * @return A handle that can be passed to {@link #remove(Job)}.
+	 */
+	public static Job submit(Runnable task, boolean visible) {
+		Job job = new Job(task, visible ? 0 : 1, SEQUENCE.incrementAndGet());
+		POOL.execute(job);
+		return job;
+	}
+
+	/**
+	 * Removes a task from the queue if it has not started yet.
+	 * @param job The handle returned by {@link #submit(Runnable, boolean)}.
+	 */
+	public static void remove(Job job) {
+		if (job != null) {
+			POOL.remove(job);
+		}
+	}
+
+	/**
+	 * @return The number of threads currently in the pool.
+	 */
+	public static int getPoolSize() {
+		return POOL.getPoolSize();
+	}
+
+	/**
+	 * @return The number of tasks waiting for a thread.
+	 */
+	public static int getQueueSize() {
+		return POOL.getQueue().size();
+	}
+
+	/**
+	 * A queued task, ordered by priority and then by submission order.
+	 */
+	public static final class Job implements Runnable, Comparable<Job> {
+		private final Runnable task;
+		private final int priority;
+		private final long sequence;
+
+		private Job(Runnable task, int priority, long sequence) {
+			this.task = task;
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public void run() {
+			task.run();
+		}
+
+		@Override
+		public int compareTo(Job other) {
+			if (priority != other.priority) {
+				return Integer.compare(priority, other.priority);
+			}
+			return Long.compare(sequence, other.sequence);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package zenit.zencodearea;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+/**
+ * Keeps the lexer state at the start of every paragraph of a {@link ZenCodeArea} so that
+ * an edit only re-lexes the paragraphs it damaged, plus any following paragraphs whose
+ * entry state changed (for example when a block comment is opened or closed).
+ *
+ * The owner reports every text change with {@link #textChanged(int, int, int)}. A pass is
+ * started with {@link #prepare(int, int)}, can be run on any thread against a snapshot of
+ * the document, and is only accepted by {@link #commit(Result)} if no change was reported
+ * in the meantime. {@link #highlight(IntFunction)} does all three at once.
+ *
+ * After a {@link #reset(int)} nothing is styled, and the entry states are only known for
+ * a prefix of the document. Passes then style the paragraphs in the viewport first, and
+ * the rest of the document in chunks of {@link #FILL_CHUNK} paragraphs. To reach the
+ * viewport, a pass only runs the lexer over the paragraphs above it to find their states,
+ * which is several times faster than building spans for them.
+ */
+public class IncrementalHighlighter {
+
+	/** Lexer state between paragraphs: plain code. */
+	public static final int DEFAULT = 0;
+
+	/** Lexer state between paragraphs: inside an unterminated block comment. */
+	public static final int BLOCK_COMMENT = 1;
+
+	/** Lexer state between paragraphs: inside an unterminated text block. */
+	public static final int TEXT_BLOCK = 2;
+
+	/** The number of paragraphs styled by a pass outside the viewport. */
+	public static final int FILL_CHUNK = 1000;
+
+	/**
+	 * Lexes a single paragraph.
+	 */
+	public interface ParagraphLexer {
+
+		/**
+		 * Appends the spans for {@code paragraph} (without its line break) to {@code spans}.
+		 * @param paragraph The text of the paragraph.
+		 * @param entryState The state the lexer is in at the start of the paragraph.
+		 * @param spans The builder to append spans to.
+		 * @return The state the lexer is in at the end of the paragraph.
+		 */
+		int lex(String paragraph, int entryState, StyleSpansBuilder<Collection<String>> spans);
+
+		/**
+		 * Lexes {@code paragraph} only to find the state at its end.
+		 * @param paragraph The text of the paragraph.
+		 * @param entryState The state the lexer is in at the start of the paragraph.
+		 * @return The state the lexer is in at the end of the paragraph.
+		 */
+		default int scan(String paragraph, int entryState) {
+			return lex(paragraph, entryState, new StyleSpansBuilder<>());
+		}
+	}
+
+	private final Supplier<? extends ParagraphLexer> lexers;
+
+	private int[] entryStates;
+	private int paragraphCount;
+
+	// The entry states of paragraphs 0 to knownStates - 1 are known
+	private int knownStates;
+
+	// Paragraphs that have not been styled since the last reset
+	private final BitSet unstyled = new BitSet();
+
+	// Inclusive range of paragraphs that must be re-lexed, dirtyTo < 0 if none
+	private int dirtyFrom;
+	private int dirtyTo;
+
+	// Incremented on every change, so that passes prepared before it can be recognized
+	private long generation;
+
+	/**
+	 * @param lexers Creates a lexer for each pass, since passes may run concurrently.
+	 */
+	public IncrementalHighlighter(Supplier<? extends ParagraphLexer> lexers) {
+		this.lexers = lexers;
+		clear(1);
+	}
+
+	/**
+	 * Forgets all lexer state and marks every paragraph as unstyled.
+	 * @param paragraphCount Number of paragraphs in the document.
+	 */
+	public void reset(int paragraphCount) {
+		clear(paragraphCount);
+	}
+
+	private void clear(int paragraphCount) {
+		this.paragraphCount = Math.max(1, paragraphCount);
+		entryStates = new int[Math.max(16, this.paragraphCount)];
+		knownStates = 1;
+		unstyled.clear();
+		unstyled.set(0, this.paragraphCount);
+		dirtyTo = -1;
+		generation++;
+	}
+
+	/**
+	 * Records a text change. The paragraphs {@code firstParagraph} to
+	 * {@code firstParagraph + removedBreaks} of the old document were replaced by
+	 * {@code firstParagraph} to {@code firstParagraph + insertedBreaks} of the new one.
+	 * @param firstParagraph Paragraph in which the change starts.
+	 * @param removedBreaks Number of line breaks in the removed text.
+	 * @param insertedBreaks Number of line breaks in the inserted text.
+	 */
+	public void textChanged(int firstParagraph, int removedBreaks, int insertedBreaks) {
+		int delta = insertedBreaks - removedBreaks;
+		int tailFrom = firstParagraph + removedBreaks + 1;
+		int tail = paragraphCount - tailFrom;
+
+		ensureCapacity(paragraphCount + delta);
+		if (delta != 0) {
+			if (tail > 0) {
+				System.arraycopy(entryStates, tailFrom, entryStates, tailFrom + delta, tail);
+			}
+			shiftUnstyled(tailFrom, delta);
+		}
+		paragraphCount += delta;
+		generation++;
+
+		int changedTo = firstParagraph + insertedBreaks;
+		if (dirtyTo > firstParagraph + removedBreaks) {
+			dirtyTo += delta;
+		} else if (dirtyTo >= firstParagraph) {
+			dirtyTo = changedTo;
+		}
+
+		if (firstParagraph >= knownStates) {
+			// No pass has reached this far yet, the changed paragraphs are styled when one does
+			unstyled.set(firstParagraph, changedTo + 1);
+			return;
+		}
+
+		knownStates = knownStates > tailFrom ? knownStates + delta : firstParagraph + 1;
+		if (dirtyTo < 0) {
+			dirtyFrom = firstParagraph;
+			dirtyTo = changedTo;
+		} else {
+			dirtyFrom = Math.min(dirtyFrom, firstParagraph);
+			dirtyTo = Math.max(dirtyTo, changedTo);
+		}
+	}
+
+	/**
+	 * @return {@code true} if some paragraphs have not been lexed since they changed.
+	 */
+	public boolean isDirty() {
+		return dirtyTo >= 0;
+	}
+
+	/**
+	 * @return {@code true} if some paragraphs are damaged or have not been styled yet.
+	 */
+	public boolean needsHighlighting() {
+		return isDirty() || !unstyled.isEmpty();
+	}
+
+	/**
+	 * @return The number of paragraphs the highlighter currently tracks.
+	 */
+	public int getParagraphCount() {
+		return paragraphCount;
+	}
+
+	/**
+	 * Prepares, runs and commits a pass over the whole document on the calling thread.
+	 * @param paragraphs Returns the text of a paragraph by index.
+	 * @return The spans of the lexed range, or null if there was nothing to highlight.
+	 */
+	public Result highlight(IntFunction<String> paragraphs) {
+		Pass pass = prepare();
+		if (pass == null) {
+			return null;
+		}
+		Result result = pass.run(paragraphs, () -> false);
+		commit(result);
+		return result;
+	}
+
+	/**
+	 * Prepares a pass that treats the whole document as visible.
+	 * @see #prepare(int, int)
+	 */
+	public Pass prepare() {
+		return prepare(0, paragraphCount - 1);
+	}
+
+	/**
+	 * Captures what the next pass has to lex. Damaged paragraphs come first, then the
+	 * unstyled paragraphs in the viewport, then a chunk of unstyled paragraphs below the
+	 * viewport, and finally those above it. The work stays recorded until the result of
+	 * the pass is committed.
+	 * @param viewFrom First paragraph in the viewport.
+	 * @param viewTo Last paragraph in the viewport.
+	 * @return A pass that can be run on any thread, or null if there is nothing to highlight.
+	 */
+	public Pass prepare(int viewFrom, int viewTo) {
+		int last = paragraphCount - 1;
+
+		if (isDirty()) {
+			int from = Math.min(dirtyFrom, last);
+			int to = Math.min(dirtyTo, last);
+			int end = Math.min(paragraphCount, Math.max(to + 2, knownStates + 1));
+			int[] states = Arrays.copyOfRange(entryStates, from, end);
+			return new Pass(lexers.get(), generation, from, from, to, paragraphCount, knownStates, states);
+		}
+
+		if (unstyled.isEmpty()) {
+			return null;
+		}
+
+		viewFrom = Math.max(0, Math.min(viewFrom, last));
+		viewTo = Math.max(viewFrom, Math.min(viewTo, last));
+
+		int from = unstyled.nextSetBit(viewFrom);
+		int to;
+		if (from >= 0 && from <= viewTo) {
+			to = unstyled.previousSetBit(viewTo);
+		} else {
+			if (from < 0) {
+				from = unstyled.nextSetBit(0);
+			}
+			to = unstyled.previousSetBit(Math.min(last, from + FILL_CHUNK - 1));
+		}
+
+		int scanFrom = Math.min(from, knownStates - 1);
+		int[] states = Arrays.copyOfRange(entryStates, scanFrom, Math.min(paragraphCount, to + 2));
+		return new Pass(lexers.get(), generation, scanFrom, from, to, paragraphCount, 0, states);
+	}
+
+	/**
+	 * Stores the paragraph states computed by a pass and clears the work it covered.
+	 * @param result The result of a pass prepared by this highlighter.
+	 * @return {@code false} if the text changed after the pass was prepared, in which
+	 * case the result is stale and must not be applied.
+	 */
+	public boolean commit(Result result) {
+		if (result == null || result.generation != generation) {
+			return false;
+		}
+
+		System.arraycopy(result.states, 0, entryStates, result.statesFrom, result.states.length);
+		knownStates = Math.max(knownStates, result.statesFrom + result.states.length);
+		unstyled.clear(result.firstParagraph, result.lastParagraph + 1);
+		dirtyTo = -1;
+		return true;
+	}
+
+	/**
+	 * @return The generation of the text the highlighter currently describes.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > entryStates.length) {
+			entryStates = Arrays.copyOf(entryStates, Math.max(capacity, entryStates.length * 2));
+		}
+	}
+
+	/**
+	 * Moves the unstyled marks of paragraphs {@code from} and later by {@code delta}.
+	 * Copies runs of marks rather than single bits, since unstyled paragraphs are mostly
+	 * contiguous.
+	 */
+	private void shiftUnstyled(int from, int delta) {
+		if (unstyled.nextSetBit(Math.min(from, from + delta)) < 0) {
+			return;
+		}
+
+		BitSet tail = unstyled.get(from, Math.max(from, unstyled.length()));
+		unstyled.clear(Math.min(from, from + delta), Math.max(from, unstyled.length()));
+		for (int i = tail.nextSetBit(0); i >= 0; i = tail.nextSetBit(i)) {
+			int end = tail.nextClearBit(i);
+			unstyled.set(from + delta + i, from + delta + end);
+			i = end;
+		}
+	}
+
+	/**
+	 * A highlighting pass prepared by {@link IncrementalHighlighter#prepare(int, int)}. Holds
+	 * its own copy of the paragraph states, so it does not touch the highlighter while running.
+	 */
+	public static class Pass {
+		private final ParagraphLexer lexer;
+		private final long generation;
+		private final int scanFrom;
+		private final int from;
+		private final int to;
+		private final int paragraphCount;
+		private final int settleBefore; // 0 if the pass stops after paragraph to
+		private final int[] states; // states[i] is the entry state of paragraph scanFrom + i
+
+		Pass(ParagraphLexer lexer, long generation, int scanFrom, int from, int to,
+				int paragraphCount, int settleBefore, int[] states) {
+			this.lexer = lexer;
+			this.generation = generation;
+			this.scanFrom = scanFrom;
+			this.from = from;
+			this.to = to;
+			this.paragraphCount = paragraphCount;
+			this.settleBefore = settleBefore;
+			this.states = states;
+		}
+
+		/**
+		 * Finds the entry state of the first paragraph to style, lexes the paragraphs up to
+		 * the end of the range, and for damaged paragraphs continues past them for as long
+		 * as the state at the end of a paragraph differs from the recorded entry state of
+		 * the next.
+		 * @param paragraphs Returns the text of a paragraph by index, as it was when the
+		 * pass was prepared.
+		 * @param cancelled Checked between paragraphs; the pass stops if it returns true.
+		 * @return The spans of the lexed range, or null if the pass was cancelled.
+		 */
+		public Result run(IntFunction<String> paragraphs, BooleanSupplier cancelled) {
+			int state = states[0];
+			int paragraph = scanFrom;
+			while (paragraph < from) {
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+				state = lexer.scan(paragraphs.apply(paragraph), state);
+				paragraph++;
+				states[paragraph - scanFrom] = state;
+			}
+
+			StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+			while (true) {
+				if (cancelled.getAsBoolean()) {
+					return null;
+				}
+
+				String text = paragraphs.apply(paragraph);
+				state = lexer.lex(text, state, spans);
+
+				if (paragraph == paragraphCount - 1) {
+					break;
+				}
+				spans.add(Collections.emptyList(), 1); // line break
+
+				paragraph++;
+				boolean stable = states[paragraph - scanFrom] == state;
+				states[paragraph - scanFrom] = state;
+				if (paragraph > to && (stable || paragraph >= settleBefore)) {
+					paragraph--;
+					break;
+				}
+			}
+
+			// Keep the entry state of the paragraph after the range as well
+			int[] lexedStates = Arrays.copyOf(states, Math.min(paragraphCount, paragraph + 2) - scanFrom);
+			return new Result(generation, from, paragraph, scanFrom, lexedStates, spans.create());
+		}
+	}
+
+	/**
+	 * The spans produced by one highlighting pass.
+	 */
+	public static class Result {
+		private final long generation;
+		private final int firstParagraph;
+		private final int lastParagraph;
+		private final int statesFrom;
+		private final int[] states;
+		private final StyleSpans<Collection<String>> spans;
+
+		Result(long generation, int firstParagraph, int lastParagraph, int statesFrom, int[] states,
+				StyleSpans<Collection<String>> spans) {
+			this.generation = generation;
+			this.firstParagraph = firstParagraph;
+			this.lastParagraph = lastParagraph;
+			this.statesFrom = statesFrom;
+			this.states = states;
+			this.spans = spans;
+		}
+
+		/**
+		 * @return Index of the first lexed paragraph; the spans start at its first character.
+		 */
+		public int getFirstParagraph() {
+			return firstParagraph;
+		}
+
+		/**
+		 * @return Index of the last lexed paragraph.
+		 */
+		public int getLastParagraph() {
+			return lastParagraph;
+		}
+
+		public StyleSpans<Collection<String>> getSpans() {
+			return spans;
+		}
+	}
+}
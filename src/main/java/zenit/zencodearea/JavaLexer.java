@@ -0,0 +1,506 @@
+package zenit.zencodearea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+/**
+ * A hand-written, single-pass lexer for Java source used for syntax highlighting.
+ *
+ * Characters are classified through a lookup table and keywords are found in an
+ * open-addressed hash table, so lexing does not allocate. Tokens are written to a
+ * reusable int array as (kind, start, end) triples and read back with
+ * {@link #getKind(int)}, {@link #getStart(int)} and {@link #getEnd(int)}.
+ *
+ * An instance keeps its token buffer between calls and must not be shared between threads.
+ */
+public class JavaLexer implements IncrementalHighlighter.ParagraphLexer {
+
+	public static final int COMMENT = 0;
+	public static final int STRING = 1;
+	public static final int ANNOTATION = 2;
+	public static final int CONTROL = 3;
+	public static final int KEYWORD = 4;
+	public static final int CLASSNAME = 5;
+	public static final int METHOD = 6;
+	public static final int NUMBER = 7;
+	public static final int OPERATOR = 8;
+	public static final int PAREN = 9;
+	public static final int BRACE = 10;
+	public static final int BRACKET = 11;
+	public static final int SEMICOLON = 12;
+
+	/** CSS style class of every token kind, indexed by kind. */
+	public static final String[] STYLE_CLASSES = {
+		"comment", "string", "annotation", "control", "keyword", "classname", "method",
+		"number", "operator", "paren", "brace", "bracket", "semicolon"
+	};
+
+	private static final String[] KEYWORDS = new String[] {
+		"abstract", "assert", "boolean", "byte",
+		"case", "catch", "char", "class", "const",
+		"default", "double",
+		"enum", "extends", "false", "final", "finally", "float",
+		"goto", "implements", "import",
+		"instanceof", "int", "interface", "long", "native",
+		"new", "null", "package", "private", "protected", "public",
+		"record", "return", "sealed", "short", "static", "strictfp", "super",
+		"synchronized", "throw", "throws",
+		"transient", "true", "try", "var", "void", "volatile",
+		"permits", "yield"
+	};
+
+	private static final String[] CONTROL_KEYWORDS = new String[] {
+		"if", "else", "for", "while", "do", "switch",
+		"break", "continue",
+		"this"
+	};
+
+	// Character classes
+	private static final byte OTHER = 0;
+	private static final byte SPACE = 1;
+	private static final byte LOWER = 2;
+	private static final byte UPPER = 3;
+	private static final byte IDENT = 4; // '_' and '$'
+	private static final byte DIGIT = 5;
+	private static final byte OPERATOR_CHAR = 6;
+	private static final byte SLASH = 7;
+	private static final byte QUOTE = 8;
+	private static final byte APOSTROPHE = 9;
+	private static final byte AT = 10;
+	private static final byte PAREN_CHAR = 11;
+	private static final byte BRACE_CHAR = 12;
+	private static final byte BRACKET_CHAR = 13;
+	private static final byte SEMICOLON_CHAR = 14;
+	private static final byte NEWLINE = 15;
+
+	private static final byte[] CHAR_CLASS = new byte[128];
+
+	// Keyword hash table: slot -> index into KEYWORD_CHARS/KEYWORD_KINDS, -1 if empty
+	private static final int TABLE_MASK = 127;
+	private static final int[] KEYWORD_SLOTS = new int[TABLE_MASK + 1];
+	private static final char[][] KEYWORD_CHARS;
+	private static final int[] KEYWORD_KINDS;
+
+	private static final Collection<String> NO_STYLE = Collections.emptyList();
+	private static final List<Collection<String>> STYLES;
+
+	static {
+		for (char c = 'a'; c <= 'z'; c++) CHAR_CLASS[c] = LOWER;
+		for (char c = 'A'; c <= 'Z'; c++) CHAR_CLASS[c] = UPPER;
+		for (char c = '0'; c <= '9'; c++) CHAR_CLASS[c] = DIGIT;
+		for (char c : "+-*%=<>!&|".toCharArray()) CHAR_CLASS[c] = OPERATOR_CHAR;
+		CHAR_CLASS['_'] = IDENT;
+		CHAR_CLASS['$'] = IDENT;
+		CHAR_CLASS[' '] = SPACE;
+		CHAR_CLASS['\t'] = SPACE;
+		CHAR_CLASS['\r'] = SPACE;
+		CHAR_CLASS['\f'] = SPACE;
+		CHAR_CLASS['\n'] = NEWLINE;
+		CHAR_CLASS['/'] = SLASH;
+		CHAR_CLASS['"'] = QUOTE;
+		CHAR_CLASS['\''] = APOSTROPHE;
+		CHAR_CLASS['@'] = AT;
+		CHAR_CLASS['('] = PAREN_CHAR;
+		CHAR_CLASS[')'] = PAREN_CHAR;
+		CHAR_CLASS['{'] = BRACE_CHAR;
+		CHAR_CLASS['}'] = BRACE_CHAR;
+		CHAR_CLASS['['] = BRACKET_CHAR;
+		CHAR_CLASS[']'] = BRACKET_CHAR;
+		CHAR_CLASS[';'] = SEMICOLON_CHAR;
+
+		int count = KEYWORDS.length + CONTROL_KEYWORDS.length;
+		KEYWORD_CHARS = new char[count][];
+		KEYWORD_KINDS = new int[count];
+		Arrays.fill(KEYWORD_SLOTS, -1);
+		for (int i = 0; i < count; i++) {
+			boolean control = i >= KEYWORDS.length;
+			String keyword = control ? CONTROL_KEYWORDS[i - KEYWORDS.length] : KEYWORDS[i];
+			KEYWORD_CHARS[i] = keyword.toCharArray();
+			KEYWORD_KINDS[i] = control ? CONTROL : KEYWORD;
+
+			int slot = hash(keyword, 0, keyword.length()) & TABLE_MASK;
+			while (KEYWORD_SLOTS[slot] != -1) {
+				slot = (slot + 1) & TABLE_MASK;
+			}
+			KEYWORD_SLOTS[slot] = i;
+		}
+
+		List<Collection<String>> styles = new ArrayList<>(STYLE_CLASSES.length);
+		for (String styleClass : STYLE_CLASSES) {
+			styles.add(Collections.singleton(styleClass));
+		}
+		STYLES = List.copyOf(styles);
+	}
+
+	private int[] tokens = new int[3 * 64];
+	private int tokenCount;
+
+	/**
+	 * Lexes {@code text} from {@code start} (inclusive) to {@code end} (exclusive). The
+	 * range may span several lines. Replaces the tokens of the previous call.
+	 * @param text The text to lex.
+	 * @param start Offset of the first character to lex.
+	 * @param end Offset after the last character to lex.
+	 * @param entryState The state at {@code start}, one of the
+	 * {@link IncrementalHighlighter} state constants.
+	 * @return The state at {@code end}.
+	 */
+	public int tokenize(CharSequence text, int start, int end, int entryState) {
+		tokenCount = 0;
+		int pos = start;
+
+		if (entryState == IncrementalHighlighter.BLOCK_COMMENT) {
+			int close = indexOfCommentEnd(text, pos, end);
+			if (close < 0) {
+				addToken(COMMENT, pos, end);
+				return IncrementalHighlighter.BLOCK_COMMENT;
+			}
+			addToken(COMMENT, pos, close);
+			pos = close;
+		} else if (entryState == IncrementalHighlighter.TEXT_BLOCK) {
+			int close = indexOfTextBlockEnd(text, pos, end);
+			if (close < 0) {
+				addToken(STRING, pos, end);
+				return IncrementalHighlighter.TEXT_BLOCK;
+			}
+			addToken(STRING, pos, close);
+			pos = close;
+		}
+
+		while (pos < end) {
+			char c = text.charAt(pos);
+			byte type = c < 128 ? CHAR_CLASS[c] : (Character.isJavaIdentifierStart(c) ? IDENT : OTHER);
+			int tokenStart = pos;
+
+			switch (type) {
+			case SPACE:
+			case NEWLINE:
+			case OTHER:
+				pos++;
+				break;
+
+			case LOWER:
+			case UPPER:
+			case IDENT:
+				pos = lexIdentifier(text, pos, end, type);
+				break;
+
+			case DIGIT:
+				pos = skipNumber(text, pos, end);
+				addToken(NUMBER, tokenStart, pos);
+				break;
+
+			case SLASH:
+				if (pos + 1 < end && text.charAt(pos + 1) == '/') {
+					pos = indexOfLineEnd(text, pos, end);
+					addToken(COMMENT, tokenStart, pos);
+				} else if (pos + 1 < end && text.charAt(pos + 1) == '*') {
+					int close = indexOfCommentEnd(text, pos + 2, end);
+					if (close < 0) {
+						addToken(COMMENT, tokenStart, end);
+						return IncrementalHighlighter.BLOCK_COMMENT;
+					}
+					pos = close;
+					addToken(COMMENT, tokenStart, pos);
+				} else {
+					pos++;
+					addToken(OPERATOR, tokenStart, pos);
+				}
+				break;
+
+			case QUOTE:
+				if (pos + 2 < end && text.charAt(pos + 1) == '"' && text.charAt(pos + 2) == '"') {
+					int close = indexOfTextBlockEnd(text, pos + 3, end);
+					if (close < 0) {
+						addToken(STRING, tokenStart, end);
+						return IncrementalHighlighter.TEXT_BLOCK;
+					}
+					pos = close;
+				} else {
+					pos = skipQuoted(text, pos + 1, end, '"');
+				}
+				addToken(STRING, tokenStart, pos);
+				break;
+
+			case APOSTROPHE:
+				pos = skipQuoted(text, pos + 1, end, '\'');
+				addToken(STRING, tokenStart, pos);
+				break;
+
+			case AT:
+				pos++;
+				while (pos < end && isIdentifierPart(text.charAt(pos))) pos++;
+				if (pos - tokenStart > 1) {
+					addToken(ANNOTATION, tokenStart, pos);
+				}
+				break;
+
+			case OPERATOR_CHAR:
+				pos++;
+				while (pos < end && text.charAt(pos) < 128 && CHAR_CLASS[text.charAt(pos)] == OPERATOR_CHAR) pos++;
+				addToken(OPERATOR, tokenStart, pos);
+				break;
+
+			case PAREN_CHAR:
+				addToken(PAREN, pos, ++pos);
+				break;
+
+			case BRACE_CHAR:
+				addToken(BRACE, pos, ++pos);
+				break;
+
+			case BRACKET_CHAR:
+				addToken(BRACKET, pos, ++pos);
+				break;
+
+			case SEMICOLON_CHAR:
+				addToken(SEMICOLON, pos, ++pos);
+				break;
+
+			default:
+				pos++;
+			}
+		}
+		return IncrementalHighlighter.DEFAULT;
+	}
+
+	/**
+	 * Lexes a single paragraph and appends its spans.
+	 * @see IncrementalHighlighter.ParagraphLexer
+	 */
+	@Override
+	public int lex(String paragraph, int entryState, StyleSpansBuilder<Collection<String>> spans) {
+		int exitState = tokenize(paragraph, 0, paragraph.length(), entryState);
+
+		int last = 0;
+		for (int i = 0; i < tokenCount; i++) {
+			int start = tokens[3 * i + 1];
+			int end = tokens[3 * i + 2];
+			spans.add(NO_STYLE, start - last);
+			spans.add(STYLES.get(tokens[3 * i]), end - start);
+			last = end;
+		}
+		spans.add(NO_STYLE, paragraph.length() - last);
+		return exitState;
+	}
+
+	/**
+	 * Lexes a single paragraph without building spans.
+	 * @see IncrementalHighlighter.ParagraphLexer
+	 */
+	@Override
+	public int scan(String paragraph, int entryState) {
+		return tokenize(paragraph, 0, paragraph.length(), entryState);
+	}
+
+	/**
+	 * @return The number of tokens produced by the last call to {@link #tokenize}.
+	 */
+	public int getTokenCount() {
+		return tokenCount;
+	}
+
+	public int getKind(int token) {
+		return tokens[3 * token];
+	}
+
+	public int getStart(int token) {
+		return tokens[3 * token + 1];
+	}
+
+	public int getEnd(int token) {
+		return tokens[3 * token + 2];
+	}
+
+	private void addToken(int kind, int start, int end) {
+		int i = 3 * tokenCount;
+		if (i + 3 > tokens.length) {
+			tokens = Arrays.copyOf(tokens, tokens.length * 2);
+		}
+		tokens[i] = kind;
+		tokens[i + 1] = start;
+		tokens[i + 2] = end;
+		tokenCount++;
+	}
+
+	/**
+	 * Lexes an identifier or keyword starting at {@code pos} and returns the offset after it.
+	 */
+	private int lexIdentifier(CharSequence text, int pos, int end, byte firstType) {
+		int start = pos;
+		boolean alphanumeric = firstType != IDENT;
+		pos++;
+		while (pos < end) {
+			char c = text.charAt(pos);
+			if (c < 128) {
+				byte type = CHAR_CLASS[c];
+				if (type == LOWER || type == UPPER || type == DIGIT) {
+					pos++;
+					continue;
+				}
+				if (type != IDENT) break;
+			} else if (!Character.isJavaIdentifierPart(c)) {
+				break;
+			}
+			alphanumeric = false;
+			pos++;
+		}
+
+		if (firstType == LOWER) {
+			int kind = keywordKind(text, start, pos);
+			if (kind >= 0) {
+				addToken(kind, start, pos);
+				return pos;
+			}
+			if (isNonSealed(text, start, pos, end)) {
+				addToken(KEYWORD, start, pos + 7);
+				return pos + 7;
+			}
+		}
+
+		if (!alphanumeric) {
+			return pos;
+		}
+
+		if (firstType == UPPER) {
+			addToken(CLASSNAME, start, pos);
+		} else if (isMethodName(text, start, pos, end)) {
+			addToken(METHOD, start, pos);
+		}
+		return pos;
+	}
+
+	/**
+	 * An identifier is styled as a method if it is followed by a parenthesis and is not
+	 * accessed through a dot.
+	 */
+	private static boolean isMethodName(CharSequence text, int start, int pos, int end) {
+		if (start > 0 && text.charAt(start - 1) == '.') {
+			return false;
+		}
+		while (pos < end) {
+			char c = text.charAt(pos);
+			if (c == '(') return true;
+			if (c != ' ' && c != '\t' && c != '\r' && c != '\n') return false;
+			pos++;
+		}
+		return false;
+	}
+
+	/**
+	 * "non-sealed" is the only keyword containing a hyphen, so it is matched separately.
+	 */
+	private static boolean isNonSealed(CharSequence text, int start, int pos, int end) {
+		return pos - start == 3 && regionEquals(text, start, "non")
+				&& pos + 7 <= end && text.charAt(pos) == '-' && regionEquals(text, pos + 1, "sealed")
+				&& (pos + 7 == end || !isIdentifierPart(text.charAt(pos + 7)));
+	}
+
+	private static int keywordKind(CharSequence text, int start, int end) {
+		int slot = hash(text, start, end) & TABLE_MASK;
+		int index;
+		while ((index = KEYWORD_SLOTS[slot]) != -1) {
+			char[] keyword = KEYWORD_CHARS[index];
+			if (keyword.length == end - start) {
+				int i = 0;
+				while (i < keyword.length && keyword[i] == text.charAt(start + i)) i++;
+				if (i == keyword.length) {
+					return KEYWORD_KINDS[index];
+				}
+			}
+			slot = (slot + 1) & TABLE_MASK;
+		}
+		return -1;
+	}
+
+	private static int hash(CharSequence text, int start, int end) {
+		int h = end - start;
+		for (int i = start; i < end; i++) {
+			h = 31 * h + text.charAt(i);
+		}
+		return h ^ (h >>> 7);
+	}
+
+	private static boolean regionEquals(CharSequence text, int start, String word) {
+		for (int i = 0; i < word.length(); i++) {
+			if (text.charAt(start + i) != word.charAt(i)) return false;
+		}
+		return true;
+	}
+
+	private static boolean isIdentifierPart(char c) {
+		if (c < 128) {
+			byte type = CHAR_CLASS[c];
+			return type == LOWER || type == UPPER || type == DIGIT || type == IDENT;
+		}
+		return Character.isJavaIdentifierPart(c);
+	}
+
+	private static int skipNumber(CharSequence text, int pos, int end) {
+		if (text.charAt(pos) == '0' && pos + 1 < end && (text.charAt(pos + 1) | 0x20) == 'x') {
+			pos += 2;
+			while (pos < end && (Character.digit(text.charAt(pos), 16) >= 0 || text.charAt(pos) == '_')) pos++;
+			return pos;
+		}
+		while (pos < end) {
+			char c = text.charAt(pos);
+			if ((c >= '0' && c <= '9') || c == '_' || c == '.') {
+				pos++;
+			} else if ("fFdDlL".indexOf(c) >= 0) {
+				return pos + 1;
+			} else {
+				break;
+			}
+		}
+		return pos;
+	}
+
+	/**
+	 * Returns the offset after the closing quote, or the end of the line if the literal
+	 * is not terminated.
+	 */
+	private static int skipQuoted(CharSequence text, int pos, int end, char quote) {
+		while (pos < end) {
+			char c = text.charAt(pos);
+			if (c == quote) return pos + 1;
+			if (c == '\n') return pos;
+			pos += c == '\\' ? 2 : 1;
+		}
+		return Math.min(pos, end);
+	}
+
+	private static int indexOfLineEnd(CharSequence text, int pos, int end) {
+		while (pos < end && text.charAt(pos) != '\n') pos++;
+		return pos;
+	}
+
+	/**
+	 * Returns the offset after the closing star-slash, or -1 if the comment is not closed.
+	 */
+	private static int indexOfCommentEnd(CharSequence text, int pos, int end) {
+		for (int i = pos; i + 1 < end; i++) {
+			if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') return i + 2;
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the offset after the closing triple quote, or -1 if the text block is not closed.
+	 */
+	private static int indexOfTextBlockEnd(CharSequence text, int pos, int end) {
+		for (int i = pos; i + 2 < end; i++) {
+			char c = text.charAt(i);
+			if (c == '\\') {
+				i++;
+			} else if (c == '"' && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+				return i + 3;
+			}
+		}
+		return -1;
+	}
+}
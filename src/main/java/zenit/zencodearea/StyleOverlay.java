@@ -0,0 +1,219 @@
+package zenit.zencodearea;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.IntBinaryOperator;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+
+/**
+ * Style classes drawn on top of the syntax highlighting of a {@link ZenCodeArea}, such
+ * as the underlines of language server diagnostics.
+ *
+ * The overlay is kept apart from the syntax spans and merged into them whenever either
+ * changes: the highlighter overlays it on every pass it applies, and replacing the
+ * ranges only restyles the paragraphs whose ranges were added or removed, without
+ * re-lexing anything.
+ */
+public class StyleOverlay {
+
+	/**
+	 * A style class applied from one position to another. Positions are paragraph and
+	 * column indices, the end column is exclusive.
+	 */
+	public static final class Range {
+		private final int startLine;
+		private final int startColumn;
+		private final int endLine;
+		private final int endColumn;
+		private final String styleClass;
+
+		public Range(int startLine, int startColumn, int endLine, int endColumn, String styleClass) {
+			this.startLine = startLine;
+			this.startColumn = startColumn;
+			this.endLine = endLine;
+			this.endColumn = endColumn;
+			this.styleClass = styleClass;
+		}
+
+		public int getStartLine()   { return startLine; }
+		public int getStartColumn() { return startColumn; }
+		public int getEndLine()     { return endLine; }
+		public int getEndColumn()   { return endColumn; }
+		public String getStyleClass() { return styleClass; }
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Range)) {
+				return false;
+			}
+			Range range = (Range) other;
+			return startLine == range.startLine && startColumn == range.startColumn
+					&& endLine == range.endLine && endColumn == range.endColumn
+					&& styleClass.equals(range.styleClass);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(startLine, startColumn, endLine, endColumn, styleClass);
+		}
+	}
+
+	private Set<Range> ranges = new LinkedHashSet<>();
+
+	// Every style class the overlay has used, so they can be stripped from the area again
+	private final Set<String> styleClasses = new HashSet<>();
+
+	/**
+	 * Replaces the ranges of the overlay.
+	 * @param newRanges The new ranges.
+	 * @return The paragraphs that must be restyled, as sorted and disjoint inclusive
+	 * {@code {from, to}} intervals. Only paragraphs touched by a range that was added
+	 * or removed are included.
+	 */
+	public List<int[]> setRanges(Collection<Range> newRanges) {
+		Set<Range> next = new LinkedHashSet<>(newRanges);
+		List<int[]> changed = new ArrayList<>();
+		for (Range range : ranges) {
+			if (!next.contains(range)) {
+				changed.add(new int[] { range.startLine, range.endLine });
+			}
+		}
+		for (Range range : next) {
+			if (!ranges.contains(range)) {
+				changed.add(new int[] { range.startLine, range.endLine });
+				styleClasses.add(range.styleClass);
+			}
+		}
+		ranges = next;
+
+		changed.sort((a, b) -> Integer.compare(a[0], b[0]));
+		List<int[]> merged = new ArrayList<>();
+		for (int[] interval : changed) {
+			int[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+			if (last != null && interval[0] <= last[1] + 1) {
+				last[1] = Math.max(last[1], interval[1]);
+			} else {
+				merged.add(interval);
+			}
+		}
+		return merged;
+	}
+
+	/**
+	 * @return {@code true} if the overlay has no ranges.
+	 */
+	public boolean isEmpty() {
+		return ranges.isEmpty();
+	}
+
+	/**
+	 * Removes every style class the overlay has used from {@code spans}, leaving the
+	 * syntax highlighting.
+	 */
+	public StyleSpans<Collection<String>> strip(StyleSpans<Collection<String>> spans) {
+		if (styleClasses.isEmpty()) {
+			return spans;
+		}
+		return spans.mapStyles(styles -> {
+			for (String style : styles) {
+				if (styleClasses.contains(style)) {
+					List<String> kept = new ArrayList<>(styles);
+					kept.removeAll(styleClasses);
+					return kept;
+				}
+			}
+			return styles;
+		});
+	}
+
+	/**
+	 * Merges the ranges of the overlay into syntax spans.
+	 * @param spans The syntax spans, starting at the first character of {@code firstParagraph}.
+	 * @param start The offset of the first character of {@code firstParagraph}.
+	 * @param firstParagraph The paragraph the spans start in.
+	 * @param lastParagraph The paragraph the spans end in.
+	 * @param offsets Converts a paragraph and column to an offset in the document.
+	 * @return The spans with the style classes of the overlay added.
+	 */
+	public StyleSpans<Collection<String>> apply(StyleSpans<Collection<String>> spans, int start,
+			int firstParagraph, int lastParagraph, IntBinaryOperator offsets) {
+		if (ranges.isEmpty()) {
+			return spans;
+		}
+
+		int end = start + spans.length();
+		List<int[]> boundaries = new ArrayList<>(); // {offset, +1 or -1, index of the style class}
+		List<String> classes = new ArrayList<>();
+		for (Range range : ranges) {
+			if (range.endLine < firstParagraph || range.startLine > lastParagraph) {
+				continue;
+			}
+			int from = Math.max(start, offsets.applyAsInt(range.startLine, range.startColumn));
+			int to = Math.min(end, offsets.applyAsInt(range.endLine, range.endColumn));
+			if (from < to) {
+				int styleClass = classes.indexOf(range.styleClass);
+				if (styleClass < 0) {
+					styleClass = classes.size();
+					classes.add(range.styleClass);
+				}
+				boundaries.add(new int[] { from, 1, styleClass });
+				boundaries.add(new int[] { to, -1, styleClass });
+			}
+		}
+		if (boundaries.isEmpty()) {
+			return spans;
+		}
+		boundaries.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+		// Sweep the boundaries, counting how many ranges of each style class are open
+		StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+		int[] open = new int[classes.size()];
+		Map<BitSet, Collection<String>> styleSets = new HashMap<>();
+		int position = start;
+		for (int[] boundary : boundaries) {
+			if (boundary[0] > position) {
+				builder.add(activeStyles(open, classes, styleSets), boundary[0] - position);
+				position = boundary[0];
+			}
+			open[boundary[2]] += boundary[1];
+		}
+		builder.add(activeStyles(open, classes, styleSets), end - position);
+
+		return spans.overlay(builder.create(), (syntax, overlay) -> {
+			if (overlay.isEmpty()) {
+				return syntax;
+			}
+			List<String> merged = new ArrayList<>(syntax);
+			merged.addAll(overlay);
+			return merged;
+		});
+	}
+
+	private static Collection<String> activeStyles(int[] open, List<String> classes,
+			Map<BitSet, Collection<String>> styleSets) {
+		// A BitSet, since there may be any number of classes
+		BitSet key = new BitSet(open.length);
+		for (int i = 0; i < open.length; i++) {
+			if (open[i] > 0) {
+				key.set(i);
+			}
+		}
+		return styleSets.computeIfAbsent(key, bits -> {
+			List<String> styles = new ArrayList<>();
+			for (int i = bits.nextSetBit(0); i >= 0; i = bits.nextSetBit(i + 1)) {
+				styles.add(classes.get(i));
+			}
+			return styles;
+		});
+	}
+}
@@ -3,87 +3,57 @@ package zenit.zencodearea;
 import javafx.scene.input.KeyCode;
 import javafx.scene.input.KeyEvent;
 import zenit.LSP.LspManager;
+import zenit.LSP.LspTextChange;
 import javafx.concurrent.Task;
 
 import java.io.File;
+import java.io.IOException;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Optional;
-import java.util.Collections;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import zenit.ui.CommentToggler;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import zenit.util.StringUtilities;
 
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
+import org.fxmisc.richtext.model.Paragraph;
+import org.fxmisc.richtext.model.PlainTextChange;
 import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.StyledDocument;
+import org.fxmisc.richtext.model.TwoDimensional.Bias;
+import org.fxmisc.richtext.model.TwoDimensional.Position;
 import org.fxmisc.wellbehaved.event.Nodes;
 import org.fxmisc.wellbehaved.event.EventPattern;
 import org.fxmisc.wellbehaved.event.InputMap;
+import org.reactfx.Subscription;
 
 public class ZenCodeArea extends CodeArea {
-	private ExecutorService executor;
+	/**
+	 * Files larger than this are edited in large-file mode, without syntax highlighting
+	 * and without the language server.
+	 */
+	public static final long LARGE_FILE_BYTES = 5_000_000; // 5MB
+
+	// Paragraphs styled first while the area has not been laid out yet
+	private static final int DEFAULT_VIEWPORT = 100;
+
+	private IncrementalHighlighter highlighter;
+	private final StyleOverlay overlay = new StyleOverlay();
+	private Task<IncrementalHighlighter.Result> runningPass;
+	private HighlightExecutor.Job runningJob;
+	private boolean prioritized = true;
+	private boolean largeFile;
+	private Subscription subscriptions;
+	private final AtomicLong appliedPasses = new AtomicLong();
+	private final AtomicLong droppedPasses = new AtomicLong();
 	private LspManager lspManager;
+	private List<LspTextChange> pendingLspChanges = new ArrayList<>();
 	// private int fontSize;
 	// private String font;
 
-	private static final String[] KEYWORDS = new String[] {
-		"abstract", "assert", "boolean", "byte",
-		"case", "catch", "char", "class", "const",
-		"default", "double",
-		"enum", "extends", "false", "final", "finally", "float",
-		"goto", "implements", "import",
-		"instanceof", "int", "interface", "long", "native",
-		"new", "null", "package", "private", "protected", "public",
-		"record", "return", "sealed", "short", "static", "strictfp", "super",
-		"synchronized", "throw", "throws",
-		"transient", "true", "try", "var", "void", "volatile",
-		"permits", "non-sealed", "yield"
-	};
-
-	private static final String[] CONTROL_KEYWORDS = new String[] {
-		"if", "else", "for", "while", "do", "switch",
-		"break", "continue",
-		"this"
-	};
-
-	private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
-	private static final String CONTROL_PATTERN = "\\b(" + String.join("|", CONTROL_KEYWORDS) + ")\\b";
-	private static final String PAREN_PATTERN = "\\(|\\)";
-	private static final String BRACE_PATTERN = "\\{|\\}";
-	private static final String BRACKET_PATTERN = "\\[|\\]";
-	private static final String SEMICOLON_PATTERN = "\\;";
-	private static final String STRING_PATTERN = "\"([^\"\\\\]|\\\\.)*\"";
-	private static final String CHAR_PATTERN = "'([^'\\\\]|\\\\.)'";
-	private static final String COMMENT_PATTERN = "//[^\n]*" + "|" + "/\\*(.|\\R)*?\\*/";
-	private static final String NUMBER_PATTERN = "\\b(\\d+\\.?\\d*[fFdDlL]?|0[xX][0-9a-fA-F]+)\\b";
-	private static final String ANNOTATION_PATTERN = "@[\\w]+";
-	private static final String CLASS_NAME_PATTERN = "\\b[A-Z][a-zA-Z0-9]*\\b";
-	private static final String OPERATOR_PATTERN = "\\+|-|\\*|/|%|==|!=|<=|>=|<|>|&&|\\|\\||!|=|\\+=|-=|\\*=|/=";
-	private static final String METHOD_PATTERN = 
-	"(?<!\\.)\\b(?!if|for|while|switch|catch|case|return|new|assert|throw)([a-z][a-zA-Z0-9]*)(?=\\s*\\()";
-
 	private File currentFile;
 
-	private static final Pattern PATTERN = Pattern.compile(
-		"(?<COMMENT>" + COMMENT_PATTERN + ")"
-		+ "|(?<STRING>" + STRING_PATTERN + ")"
-		+ "|(?<CHAR>" + CHAR_PATTERN + ")"
-		+ "|(?<ANNOTATION>" + ANNOTATION_PATTERN + ")"
-		+ "|(?<CONTROL>" + CONTROL_PATTERN + ")"
-		+ "|(?<KEYWORD>" + KEYWORD_PATTERN + ")"
-		+ "|(?<CLASSNAME>" + CLASS_NAME_PATTERN + ")"
-		+ "|(?<METHOD>" + METHOD_PATTERN + ")"
-		+ "|(?<NUMBER>" + NUMBER_PATTERN + ")"
-		+ "|(?<OPERATOR>" + OPERATOR_PATTERN + ")"
-		+ "|(?<PAREN>" + PAREN_PATTERN + ")"
-		+ "|(?<BRACE>" + BRACE_PATTERN + ")"
-		+ "|(?<BRACKET>" + BRACKET_PATTERN + ")"
-		+ "|(?<SEMICOLON>" + SEMICOLON_PATTERN + ")");
-
 	public ZenCodeArea(LspManager lspManager, File file) {
 		this(14, "Times new Roman", lspManager, file);
 
@@ -91,96 +61,310 @@ public class ZenCodeArea extends CodeArea {
 
 	public ZenCodeArea(int textSize, String font, LspManager lspManager, File file) {
 		this.currentFile= file;
+		this.lspManager = lspManager;
 		setParagraphGraphicFactory(LineNumberFactory.get(this));
 
-		multiPlainChanges().successionEnds(
+		highlighter = new IncrementalHighlighter(JavaLexer::new);
+		Subscription damage = plainTextChanges().subscribe(this::trackDamage);
+
+		// A single highlighting pipeline: every edit cancels the pass in flight, and a new
+		// pass is started off the FX thread once typing pauses
+		Subscription cancel = multiPlainChanges().subscribe(ignore -> cancelHighlighting());
+		Subscription start = multiPlainChanges().successionEnds(Duration.ofMillis(300))
+			.subscribe(ignore -> startHighlighting());
+
+		// Edits are collected as they happen and sent as one incremental didChange
+		Subscription lspEdits = plainTextChanges().subscribe(this::trackLspChange);
+		Subscription lsp = multiPlainChanges().successionEnds(
 			Duration.ofMillis(300)).subscribe( //changeing the ms here determines how fast the lsp server recieves msgs
 				ignore ->{
-					setStyleSpans(0, computeHighlighting(getText()));
 					try {
-						if (file != null && lspManager != null && file.length() <= 500_000) {
-							lspManager.sendDidChange(file.getAbsolutePath(), getText());
-						}
+						sendLspChanges();
 					} catch (Exception e) {
 						e.printStackTrace();
 					}
 				});
+		subscriptions = damage.and(cancel).and(start).and(lspEdits).and(lsp);
 
-		executor = Executors.newSingleThreadExecutor();
-		setParagraphGraphicFactory(LineNumberFactory.get(this));
-		multiPlainChanges().successionEnds(Duration.ofMillis(500)).supplyTask(
-			this::computeHighlightingAsync).awaitLatest(multiPlainChanges()).filterMap(t -> {
-
-				if (t.isSuccess()) {
-					return Optional.of(t.get());
-
-				} else {
-					t.getFailure().printStackTrace();
-					return Optional.empty();
-				}
-			}).subscribe(this::applyHighlighting);
-		computeHighlightingAsync();
-
+		InputMap<KeyEvent> im = InputMap.consume(
+			EventPattern.keyPressed(KeyCode.TAB),
+			e -> this.replaceSelection("    "));
+		Nodes.addInputMap(this, im);
 
 		// fontSize = textSize;
 		// this.font = font;
 		setStyle("-fx-font-size: " + textSize + ";-fx-font-family: " + font);
 	}
 
+	/**
+	 * Re-highlights the whole document, discarding any styling applied on top of the
+	 * syntax highlighting.
+	 */
 	public void update() {
-		var highlighting = computeHighlighting(getText());
-		applyHighlighting(highlighting);
+		highlighter.reset(getParagraphs().size());
+		startHighlighting();
+	}
+
+	/**
+	 * Switches large-file mode on or off. In large-file mode the area stops tracking
+	 * highlighting state and sends no changes to the language server, so an edit costs
+	 * no more than updating the paragraph tree of the document.
+	 * @param largeFile {@code true} to enter large-file mode.
+	 */
+	public void setLargeFile(boolean largeFile) {
+		if (this.largeFile == largeFile) {
+			return;
+		}
+
+		this.largeFile = largeFile;
+		if (largeFile) {
+			cancelHighlighting();
+			clearStyle(0, getLength());
+		} else {
+			update();
+		}
+	}
+
+	/**
+	 * @return {@code true} if the area is in large-file mode.
+	 */
+	public boolean isLargeFile() {
+		return largeFile;
+	}
+
+	/**
+	 * Returns the lines of the current text without joining them into a single String.
+	 * The lines are read from an immutable snapshot of the document, so they can be
+	 * iterated on any thread while editing continues.
+	 * @return The lines of the text, without line breaks.
+	 */
+	public Iterable<String> lines() {
+		List<? extends Paragraph<?, ?, ?>> paragraphs = getContent().snapshot().getParagraphs();
+		return () -> paragraphs.stream().map(paragraph -> paragraph.getText()).iterator();
+	}
+
+	/**
+	 * Replaces the style classes drawn on top of the syntax highlighting, such as
+	 * diagnostic underlines. Only the paragraphs whose overlay ranges were added or
+	 * removed are restyled, and the syntax highlighting is not recomputed.
+	 * @param ranges The new overlay ranges.
+	 */
+	public void setOverlay(Collection<StyleOverlay.Range> ranges) {
+		int last = getParagraphs().size() - 1;
+		for (int[] paragraphs : overlay.setRanges(ranges)) {
+			int from = Math.min(paragraphs[0], last);
+			int to = Math.min(paragraphs[1], last);
+			int start = getAbsolutePosition(from, 0);
+			int end = getAbsolutePosition(to, getParagraphLength(to));
+			if (start < end) {
+				StyleSpans<Collection<String>> syntax = overlay.strip(getStyleSpans(start, end));
+				setStyleSpans(start, overlay.apply(syntax, start, from, to, this::getClampedOffset));
+			}
+		}
+	}
+
+	/**
+	 * Converts a paragraph and column to an offset, clamping positions past the end of a
+	 * paragraph or of the document. Positions from the language server may refer to
+	 * text that has been edited since.
+	 * @param paragraph Index of the paragraph.
+	 * @param column Column in the paragraph.
+	 * @return The offset in the document.
+	 */
+	public int getClampedOffset(int paragraph, int column) {
+		int last = getParagraphs().size() - 1;
+		if (paragraph > last) {
+			return getLength();
+		}
+		return getAbsolutePosition(paragraph, Math.min(column, getParagraphLength(paragraph)));
+	}
+
+	/**
+	 * Lets highlighting of this area run ahead of areas in the background.
+	 * @param prioritized {@code true} while the area is in the visible tab.
+	 */
+	public void setPrioritized(boolean prioritized) {
+		boolean raised = prioritized && !this.prioritized;
+		this.prioritized = prioritized;
+
+		if (raised && runningPass != null) {
+			startHighlighting(); // requeue ahead of the background tabs
+		}
+	}
+
+	/**
+	 * Releases the pending highlighting work and stops reacting to edits.
+	 * Called when the tab holding this area is closed.
+	 */
+	@Override
+	public void dispose() {
+		cancelHighlighting();
+		if (subscriptions != null) {
+			subscriptions.unsubscribe();
+			subscriptions = null;
+		}
+		super.dispose();
+	}
+
+	/**
+	 * @return The number of highlighting passes whose spans were applied.
+	 */
+	public long getAppliedHighlightPasses() {
+		return appliedPasses.get();
 	}
 
-	private Task<StyleSpans<Collection<String>>> computeHighlightingAsync() {
-		String text = getText();
-		Task<StyleSpans<Collection<String>>> task = new Task<StyleSpans<Collection<String>>>() {
+	/**
+	 * @return The number of highlighting passes that were cancelled or finished after a
+	 * newer edit, and therefore never applied.
+	 */
+	public long getDroppedHighlightPasses() {
+		return droppedPasses.get();
+	}
+
+	/**
+	 * Records which paragraphs a text change damaged. Runs once per change, before
+	 * later changes of the same batch are applied, so paragraph indices are exact.
+	 */
+	private void trackDamage(PlainTextChange change) {
+		if (largeFile) {
+			return;
+		}
+
+		if (change.getPosition() == 0 && change.getInserted().length() == getLength()) {
+			// The whole document was replaced, e.g. when a file is opened
+			highlighter.reset(getParagraphs().size());
+			return;
+		}
+
+		int paragraph = offsetToPosition(change.getPosition(), Bias.Forward).getMajor();
+		highlighter.textChanged(paragraph,
+			StringUtilities.count(change.getRemoved(), '\n'),
+			StringUtilities.count(change.getInserted(), '\n'));
+	}
+
+	/**
+	 * Records a text change for the next didChange. The start position is read after the
+	 * change, which is safe since the text before the change is unchanged.
+	 */
+	private void trackLspChange(PlainTextChange change) {
+		if (currentFile == null || lspManager == null || largeFile) {
+			return;
+		}
+
+		Position start = offsetToPosition(change.getPosition(), Bias.Forward);
+		pendingLspChanges.add(LspTextChange.of(start.getMajor(), start.getMinor(),
+			change.getRemoved(), change.getInserted()));
+	}
+
+	/**
+	 * Forgets the edits collected for the next didChange. Called after the language
+	 * server was sent the whole text, which already contains them.
+	 */
+	public void clearPendingLspChanges() {
+		pendingLspChanges = new ArrayList<>();
+	}
+
+	/**
+	 * Sends the changes collected since the last call to the language server. Called
+	 * when typing pauses, and before requests that need the server to see the latest text.
+	 */
+	public void sendLspChanges() throws IOException {
+		if (pendingLspChanges.isEmpty()) {
+			return;
+		}
+
+		List<LspTextChange> changes = pendingLspChanges;
+		pendingLspChanges = new ArrayList<>();
+		lspManager.sendDidChange(currentFile.getAbsolutePath(), changes, this::getText);
+	}
+
+	/**
+	 * Cancels the highlighting pass in flight, if any. Its result would describe text
+	 * that no longer exists.
+	 */
+	private void cancelHighlighting() {
+		if (runningPass != null) {
+			runningPass.cancel();
+			HighlightExecutor.remove(runningJob);
+			runningPass = null;
+			runningJob = null;
+		}
+	}
+
+	/**
+	 * Starts a pass on the shared highlighting pool. The pass reads an immutable snapshot
+	 * of the document, so the text is never copied on the FX thread.
+	 *
+	 * Damaged paragraphs are highlighted first, then the paragraphs in the viewport. Any
+	 * paragraphs that are still unstyled after that, for example after opening a large
+	 * file, are styled by one pass per chunk, and each chunk is picked relative to the
+	 * viewport at the time, so scrolling moves the work along with it.
+	 */
+	private void startHighlighting() {
+		cancelHighlighting();
+		if (largeFile) {
+			return;
+		}
+
+		if (highlighter.getParagraphCount() != getParagraphs().size()) {
+			highlighter.reset(getParagraphs().size());
+		}
+
+		int visible = getVisibleParagraphs().size();
+		int viewFrom = 0;
+		int viewTo = DEFAULT_VIEWPORT - 1;
+		if (visible > 0) {
+			viewFrom = visibleParToAllParIndex(0);
+			viewTo = visibleParToAllParIndex(visible - 1);
+		}
+
+		IncrementalHighlighter.Pass pass = highlighter.prepare(viewFrom, viewTo);
+		if (pass == null) {
+			return;
+		}
+
+		StyledDocument<?, ?, ?> snapshot = getContent().snapshot();
+		Task<IncrementalHighlighter.Result> task = new Task<IncrementalHighlighter.Result>() {
 			@Override
-			protected StyleSpans<Collection<String>> call() throws Exception {
-				return computeHighlighting(text);
+			protected IncrementalHighlighter.Result call() throws Exception {
+				return pass.run(i -> snapshot.getParagraph(i).getText(), this::isCancelled);
 			}
 		};
-		executor.execute(task);
-		return task;
+		task.setOnSucceeded(event -> {
+			if (runningPass == task) {
+				runningPass = null;
+				runningJob = null;
+			}
+			applyHighlighting(task.getValue());
+		});
+		task.setOnCancelled(event -> droppedPasses.incrementAndGet());
+		task.setOnFailed(event -> {
+			droppedPasses.incrementAndGet();
+			task.getException().printStackTrace();
+		});
+
+		runningPass = task;
+		runningJob = HighlightExecutor.submit(task, prioritized);
 	}
 
-	private void applyHighlighting(StyleSpans<Collection<String>> highlighting) {
-		setStyleSpans(0, highlighting);
+	/**
+	 * Applies the spans of a finished pass, unless the text changed while it ran, and
+	 * starts the next pass if parts of the document are still unstyled.
+	 */
+	private void applyHighlighting(IncrementalHighlighter.Result result) {
+		if (!highlighter.commit(result)) {
+			droppedPasses.incrementAndGet();
+			return;
+		}
 
-		InputMap<KeyEvent> im = InputMap.consume(
-			EventPattern.keyPressed(KeyCode.TAB),
-			e -> this.replaceSelection("    "));
-		Nodes.addInputMap(this, im);
-	}
+		int start = getAbsolutePosition(result.getFirstParagraph(), 0);
+		setStyleSpans(start, overlay.apply(result.getSpans(), start,
+			result.getFirstParagraph(), result.getLastParagraph(), this::getClampedOffset));
+		appliedPasses.incrementAndGet();
 
-	private static StyleSpans<Collection<String>> computeHighlighting(String text) {
-		Matcher matcher = PATTERN.matcher(text);
-		int lastKwEnd = 0;
-		StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-		while (matcher.find()) {
-			String styleClass =
-			matcher.group("COMMENT")    != null ? "comment"    :
-			matcher.group("STRING")     != null ? "string"     :
-			matcher.group("CHAR")       != null ? "string"     :
-			matcher.group("ANNOTATION") != null ? "annotation" :
-			matcher.group("CONTROL")    != null ? "control"    :
-			matcher.group("KEYWORD")    != null ? "keyword"    :
-			matcher.group("CLASSNAME")  != null ? "classname"  :
-			matcher.group("METHOD")     != null ? "method"     :
-			matcher.group("NUMBER")     != null ? "number"     :
-			matcher.group("OPERATOR")   != null ? "operator"   :
-			matcher.group("PAREN")      != null ? "paren"      :
-			matcher.group("BRACE")      != null ? "brace"      :
-			matcher.group("BRACKET")    != null ? "bracket"    :
-			matcher.group("SEMICOLON")  != null ? "semicolon"  :
-			null;
-			assert styleClass != null;
-			spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
-			spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
-			lastKwEnd = matcher.end();
-		}
-		spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
-		return spansBuilder.create();
+		if (highlighter.needsHighlighting()) {
+			startHighlighting();
+		}
 	}
 
 	public void setFontSize(int newFontSize) {
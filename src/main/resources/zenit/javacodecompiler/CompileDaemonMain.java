@@ -0,0 +1,168 @@
+import java.io.BufferedReader;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+/**
+ * The compile daemon of Zenit, see zenit.javacodecompiler.CompileDaemon. Started by the java
+ * launcher of a JDK as a source file program, so it runs on any JDK from 11 on and compiles
+ * with the compiler of that JDK, which stays loaded and warm from one compile to the next.
+ *
+ * Reads requests from standard input until it is closed, and answers on standard output,
+ * as lines of text:
+ * <pre>
+ * COMPILE
+ * number of options
+ * options, one per line
+ * number of files
+ * files, one per line
+ * </pre>
+ * is answered with a diagnostic for each error, warning and note as it is reported:
+ * <pre>
+ * DIAGNOSTIC
+ * kind
+ * path of the source, empty if there is none
+ * line, -1 if there is none
+ * character index in the line, -1 if there is none
+ * line of the end
+ * character index of the end in its line, the end is the character after the start if
+ * javac reports no end
+ * number of lines of the message
+ * the message
+ * </pre>
+ * and then {@code DONE true} or {@code DONE false}. Standard output is only used for
+ * answers, anything else is printed on standard error.
+ *
+ * Written for Java 11, and only using the JDK, since it is compiled by the launcher.
+ */
+public class CompileDaemonMain {
+
+	public static void main(String[] args) throws IOException {
+		BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+		PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out),
+				StandardCharsets.UTF_8));
+		System.setOut(System.err);
+		PrintWriter log = new PrintWriter(new OutputStreamWriter(System.err, StandardCharsets.UTF_8), true);
+
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null) {
+			out.println("NO COMPILER");
+			out.flush();
+			return;
+		}
+		StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8);
+		out.println("READY");
+		out.flush();
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (!line.equals("COMPILE")) {
+				log.println("CompileDaemonMain: unknown request " + line);
+				return;
+			}
+			List<String> options = readLines(in);
+			List<String> files = readLines(in);
+
+			DiagnosticListener<JavaFileObject> listener = diagnostic -> writeDiagnostic(out, diagnostic);
+			boolean success;
+			try {
+				// The locations of the previous compile are kept by the file manager
+				fileManager.setLocation(StandardLocation.CLASS_OUTPUT, null);
+				fileManager.setLocation(StandardLocation.SOURCE_PATH, null);
+				fileManager.setLocation(StandardLocation.CLASS_PATH, null);
+				success = Boolean.TRUE.equals(compiler.getTask(log, fileManager, listener, options, null,
+						fileManager.getJavaFileObjectsFromStrings(files)).call());
+			} catch (IOException | RuntimeException e) {
+				log.println("CompileDaemonMain: " + e);
+				success = false;
+			} finally {
+				fileManager.flush();
+			}
+			out.println("DONE " + success);
+			out.flush();
+		}
+	}
+
+	private static List<String> readLines(BufferedReader in) throws IOException {
+		String count = in.readLine();
+		if (count == null) {
+			throw new IOException("The request ended early");
+		}
+		List<String> lines = new ArrayList<>();
+		for (int i = Integer.parseInt(count); i > 0; i--) {
+			lines.add(in.readLine());
+		}
+		return lines;
+	}
+
+	private static void writeDiagnostic(PrintWriter out, Diagnostic<? extends JavaFileObject> diagnostic) {
+		String[] message = diagnostic.getMessage(null).split("\r?\n", -1);
+		out.println("DIAGNOSTIC");
+		out.println(diagnostic.getKind());
+		out.println(diagnostic.getSource() != null ? diagnostic.getSource().getName() : "");
+		long[] range = getRange(diagnostic);
+		out.println(range[0]);
+		out.println(range[1]);
+		out.println(range[2]);
+		out.println(range[3]);
+		out.println(message.length);
+		for (String messageLine : message) {
+			out.println(messageLine);
+		}
+	}
+
+	/**
+	 * @return The line and character index of the diagnostic, and of its end. The column
+	 * number of javac counts a tab as up to eight columns.
+	 */
+	private static long[] getRange(Diagnostic<? extends JavaFileObject> diagnostic) {
+		long line = diagnostic.getLineNumber() != Diagnostic.NOPOS ? diagnostic.getLineNumber() : -1;
+		long column = diagnostic.getColumnNumber() != Diagnostic.NOPOS
+				? Math.max(0, diagnostic.getColumnNumber() - 1) : -1;
+		long endLine = line;
+		long endColumn = column + 1;
+
+		long position = diagnostic.getPosition();
+		long end = diagnostic.getEndPosition();
+		if (position != Diagnostic.NOPOS && diagnostic.getSource() != null) {
+			try {
+				CharSequence content = diagnostic.getSource().getCharContent(true);
+				column = position - getLineStart(content, position);
+				endColumn = column + 1;
+				if (end != Diagnostic.NOPOS && end > position && end <= content.length()) {
+					for (int i = (int) position; i < end; i++) {
+						if (content.charAt(i) == '\n') {
+							endLine++;
+						}
+					}
+					endColumn = end - getLineStart(content, end);
+				}
+			} catch (IOException e) {
+				// Falls back to the column of javac
+			}
+		}
+		return new long[] { line, column, endLine, endColumn };
+	}
+
+	private static int getLineStart(CharSequence content, long position) {
+		int lineStart = (int) Math.min(position, content.length());
+		while (lineStart > 0 && content.charAt(lineStart - 1) != '\n') {
+			lineStart--;
+		}
+		return lineStart;
+	}
+}
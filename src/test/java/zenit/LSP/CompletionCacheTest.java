@@ -0,0 +1,83 @@
+package zenit.LSP;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for CompletionCache
+ */
+class CompletionCacheTest {
+
+    private static final String URI = "file:///Main.java";
+
+    private CompletionCache cache;
+
+    @BeforeEach
+    void setUp() {
+        cache = new CompletionCache();
+    }
+
+    private static LspCompletionList result(boolean incomplete, String... labels) {
+        List<LspCompletionItem> items = new ArrayList<>();
+        for (String label : labels) {
+            items.add(new LspCompletionItem(label, null, 2, null, null, null, -1, -1));
+        }
+        return new LspCompletionList(items, incomplete);
+    }
+
+    private static List<String> labels(List<LspCompletionItem> items) {
+        List<String> labels = new ArrayList<>();
+        for (LspCompletionItem item : items) {
+            labels.add(item.getLabel());
+        }
+        return labels;
+    }
+
+    @Test
+    @DisplayName("Typing more of the word narrows the cached result")
+    void testNarrowing() {
+        cache.put(URI, 4, 8, "pr", result(false, "println", "print", "printf", "process", "Process"));
+
+        assertEquals(List.of("println", "print", "printf", "process", "Process"),
+                labels(cache.lookup(URI, 4, 8, "pr")));
+        assertEquals(List.of("println", "print", "printf"), labels(cache.lookup(URI, 4, 8, "pri")));
+        assertEquals(List.of("process", "Process"), labels(cache.lookup(URI, 4, 8, "PRO")), "Matching ignores case");
+        assertTrue(cache.lookup(URI, 4, 8, "prx").isEmpty());
+    }
+
+    @Test
+    @DisplayName("Another word, line or document, or a shorter prefix needs a new request")
+    void testMiss() {
+        cache.put(URI, 4, 8, "pr", result(false, "println"));
+
+        assertNull(cache.lookup(URI, 4, 8, "p"), "Deleting below the requested prefix");
+        assertNull(cache.lookup(URI, 4, 12, "pr"));
+        assertNull(cache.lookup(URI, 5, 8, "pr"));
+        assertNull(cache.lookup("file:///Other.java", 4, 8, "pr"));
+    }
+
+    @Test
+    @DisplayName("An incomplete result is only reused for the same prefix")
+    void testIncomplete() {
+        cache.put(URI, 0, 0, "Str", result(true, "String", "StringBuilder"));
+
+        assertEquals(2, cache.lookup(URI, 0, 0, "Str").size());
+        assertNull(cache.lookup(URI, 0, 0, "Stri"));
+    }
+
+    @Test
+    @DisplayName("The filter text of an item is matched instead of its label")
+    void testFilterText() {
+        LspCompletionItem item = new LspCompletionItem("size() : int", null, 2, "size()", "size", null, -1, -1);
+        cache.put(URI, 0, 0, "", new LspCompletionList(List.of(item), false));
+
+        assertEquals(1, cache.lookup(URI, 0, 0, "si").size());
+        assertEquals("size()", item.getInsertText());
+    }
+}
@@ -0,0 +1,91 @@
+package zenit.LSP;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the JDT LS command line built by JdtLaunchProfile
+ */
+class JdtLaunchProfileTest {
+
+    @TempDir
+    File tempDir;
+
+    private File serverDir;
+    private File stateDir;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverDir = new File(tempDir, "jdt-language-server");
+        File plugins = new File(serverDir, "plugins");
+        plugins.mkdirs();
+        new File(plugins, "org.eclipse.equinox.launcher_1.7.0.jar").createNewFile();
+        stateDir = new File(tempDir, "state");
+    }
+
+    private JdtLaunchProfile profile(String workspace, int javaVersion) {
+        return new JdtLaunchProfile(serverDir, new File(tempDir, workspace), stateDir, javaVersion);
+    }
+
+    private static String valueAfter(List<String> command, String option) {
+        return command.get(command.indexOf(option) + 1);
+    }
+
+    @Test
+    @DisplayName("The data directory is the same across starts and differs between workspaces")
+    void testDataDirectory() {
+        String data = valueAfter(profile("projects", 21).buildCommand(), "-data");
+        assertEquals(data, valueAfter(profile("projects", 21).buildCommand(), "-data"));
+        assertNotEquals(data, valueAfter(profile("other", 21).buildCommand(), "-data"));
+        assertTrue(data.startsWith(stateDir.getAbsolutePath()), "Data should be kept in the state directory");
+        assertTrue(new File(data).getName().startsWith("projects-"));
+    }
+
+    @Test
+    @DisplayName("The protocol is not logged and JVM logging stays off stdout")
+    void testLogging() {
+        List<String> command = profile("projects", 21).buildCommand();
+        assertFalse(command.contains("-Dlog.protocol=true"));
+        assertFalse(command.contains("-Dlog.level=ALL"));
+        assertTrue(command.contains("-Xlog:disable"));
+        assertTrue(command.indexOf("-Xlog:disable") < command.indexOf("-jar"), "JVM options go before -jar");
+    }
+
+    @Test
+    @DisplayName("JDK 19 and later create the class data sharing archive automatically")
+    void testAutoCreatedArchive() {
+        JdtLaunchProfile profile = profile("projects", 21);
+        List<String> command = profile.buildCommand();
+        assertTrue(command.contains("-XX:+AutoCreateSharedArchive"));
+        assertTrue(command.stream().anyMatch(option -> option.startsWith("-XX:SharedArchiveFile=")));
+        assertEquals("created", profile.getSharedArchiveStatus());
+    }
+
+    @Test
+    @DisplayName("Older JDKs write the archive at exit and use it once it exists")
+    void testArchiveAtExit() throws IOException {
+        JdtLaunchProfile profile = profile("projects", 17);
+        assertTrue(profile.buildCommand().stream().anyMatch(option -> option.startsWith("-XX:ArchiveClassesAtExit=")));
+
+        profile.createDirectories();
+        File archive = profile.getSharedArchive(new File(serverDir, "plugins/org.eclipse.equinox.launcher_1.7.0.jar"));
+        assertTrue(archive.createNewFile());
+        assertTrue(profile.buildCommand().contains("-XX:SharedArchiveFile=" + archive.getAbsolutePath()));
+        assertEquals("reused", profile.getSharedArchiveStatus());
+    }
+
+    @Test
+    @DisplayName("A missing server is reported")
+    void testMissingServer() {
+        JdtLaunchProfile profile = new JdtLaunchProfile(new File(tempDir, "missing"), tempDir, stateDir, 21);
+        assertThrows(RuntimeException.class, profile::buildCommand);
+    }
+}
@@ -0,0 +1,41 @@
+package zenit.LSP;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LatencyHistogram
+ */
+class LatencyHistogramTest {
+
+    @Test
+    @DisplayName("Percentiles are bounded by the bucket that holds them")
+    void testPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(3));
+        }
+        for (int i = 0; i < 10; i++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(200));
+        }
+
+        assertEquals(100, histogram.getCount());
+        double p50 = histogram.getPercentileMillis(50);
+        assertTrue(p50 >= 3 && p50 < 6, "p50 was " + p50);
+        double p99 = histogram.getPercentileMillis(99);
+        assertTrue(p99 >= 200 && p99 <= 200.0001, "p99 is capped at the max, was " + p99);
+        assertEquals(22.7, histogram.getMeanMillis(), 0.001);
+    }
+
+    @Test
+    @DisplayName("An empty histogram reports zero")
+    void testEmpty() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentileMillis(95));
+        assertEquals(0, histogram.getMeanMillis());
+    }
+}
@@ -0,0 +1,329 @@
+package zenit.LSP;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the request handling of LspManager
+ * Connects the manager to a scripted server over pipes
+ */
+class LspManagerTest {
+
+    private LspManager manager;
+    private LspMessageReader fromManager;
+    private LspWriter toManager;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        manager = new LspManager();
+        connect();
+        answerInitialize(readInitialize());
+        assertEquals("initialized", fromManager.readMessage().get("method").getAsString());
+        awaitReady();
+        assertTrue(manager.isIncrementalSync());
+    }
+
+    // Ready is set just after initialized and the queued documents were sent
+    private void awaitReady() throws InterruptedException {
+        for (int i = 0; i < 100 && !manager.isReady(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(manager.isReady());
+    }
+
+    private void connect() throws IOException {
+        PipedInputStream serverIn = new PipedInputStream(1 << 16);
+        PipedOutputStream managerOut = new PipedOutputStream(serverIn);
+        PipedInputStream managerIn = new PipedInputStream(1 << 16);
+        PipedOutputStream serverOut = new PipedOutputStream(managerIn);
+
+        fromManager = new LspMessageReader(serverIn);
+        toManager = new LspWriter(serverOut);
+        toManager.start();
+        manager.connect(managerIn, managerOut);
+    }
+
+    private JsonObject readInitialize() throws IOException {
+        JsonObject initialize = fromManager.readMessage();
+        assertEquals("initialize", initialize.get("method").getAsString());
+        JsonObject folder = initialize.getAsJsonObject("params").getAsJsonArray("workspaceFolders")
+                .get(0).getAsJsonObject();
+        assertTrue(folder.get("uri").getAsString().startsWith("file:///"));
+        return initialize;
+    }
+
+    private void answerInitialize(JsonObject initialize) {
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + initialize.get("id")
+                + ",\"result\":{\"capabilities\":{\"textDocumentSync\":2}}}");
+    }
+
+    private static String openedText(JsonObject didOpen) {
+        assertEquals("textDocument/didOpen", didOpen.get("method").getAsString());
+        return didOpen.getAsJsonObject("params").getAsJsonObject("textDocument").get("text").getAsString();
+    }
+
+    @AfterEach
+    void tearDown() {
+        toManager.close(1000);
+        manager.getWriter().close(1000);
+    }
+
+    // A method lsp4j has no result type for, so the result is passed on as JSON
+    private CompletableFuture<Object> echo(long timeoutMillis, String supersedeKey) {
+        JsonObject params = new JsonObject();
+        params.addProperty("line", 3);
+        return manager.sendRequest("test/echo", params, timeoutMillis, supersedeKey);
+    }
+
+    @Test
+    @DisplayName("Responses complete the request with the same id, in any order")
+    void testCorrelation() throws Exception {
+        CompletableFuture<Object> first = echo(5000, null);
+        CompletableFuture<Object> second = echo(5000, null);
+        int firstId = fromManager.readMessage().get("id").getAsInt();
+        int secondId = fromManager.readMessage().get("id").getAsInt();
+        assertTrue(secondId > firstId, "Ids should increase");
+
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + secondId + ",\"result\":\"second\"}");
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + firstId + ",\"result\":\"first\"}");
+
+        assertEquals("first", ((JsonElement) first.get(5, TimeUnit.SECONDS)).getAsString());
+        assertEquals("second", ((JsonElement) second.get(5, TimeUnit.SECONDS)).getAsString());
+        assertEquals(0, manager.getPendingRequestCount());
+        assertEquals(2, manager.getLatencies().get("test/echo").getCount());
+    }
+
+    @Test
+    @DisplayName("Error responses complete the request exceptionally")
+    void testErrorResponse() throws Exception {
+        CompletableFuture<Object> request = echo(5000, null);
+        int id = fromManager.readMessage().get("id").getAsInt();
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + id
+                + ",\"error\":{\"code\":-32601,\"message\":\"Unhandled method\"}}");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> request.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof LspResponseException);
+        assertEquals(-32601, ((LspResponseException) e.getCause()).getCode());
+    }
+
+    @Test
+    @DisplayName("A request that times out is cancelled on the server")
+    void testTimeout() throws Exception {
+        CompletableFuture<Object> request = echo(50, null);
+        int id = fromManager.readMessage().get("id").getAsInt();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> request.get(5, TimeUnit.SECONDS));
+        assertTrue(e.getCause() instanceof TimeoutException);
+
+        JsonObject cancel = fromManager.readMessage();
+        assertEquals("$/cancelRequest", cancel.get("method").getAsString());
+        assertEquals(id, cancel.getAsJsonObject("params").get("id").getAsInt());
+        assertEquals(0, manager.getPendingRequestCount());
+    }
+
+    @Test
+    @DisplayName("A newer request with the same key cancels the older one")
+    void testSupersede() throws Exception {
+        CompletableFuture<Object> older = echo(5000, "echo:A.java");
+        CompletableFuture<Object> newer = echo(5000, "echo:A.java");
+        int olderId = fromManager.readMessage().get("id").getAsInt();
+        int newerId = fromManager.readMessage().get("id").getAsInt();
+
+        assertTrue(older.isCancelled());
+        JsonObject cancel = fromManager.readMessage();
+        assertEquals("$/cancelRequest", cancel.get("method").getAsString());
+        assertEquals(olderId, cancel.getAsJsonObject("params").get("id").getAsInt());
+
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + newerId + ",\"result\":null}");
+        assertNull(newer.get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    @DisplayName("Completion results are parsed and sorted by their sort text")
+    void testCompletion() throws Exception {
+        CompletableFuture<LspCompletionList> request = manager.requestCompletion("/tmp/Main.java", 2, 12);
+        JsonObject sent = fromManager.readMessage();
+        assertEquals("textDocument/completion", sent.get("method").getAsString());
+        assertEquals(12, sent.getAsJsonObject("params").getAsJsonObject("position").get("character").getAsInt());
+
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + sent.get("id") + ",\"result\":{\"isIncomplete\":true,\"items\":["
+                + "{\"label\":\"println(String x) : void\",\"kind\":2,\"sortText\":\"2\",\"filterText\":\"println\","
+                + "\"textEdit\":{\"range\":{\"start\":{\"line\":2,\"character\":8},\"end\":{\"line\":2,\"character\":12}},"
+                + "\"newText\":\"println\"}},"
+                + "{\"label\":\"print\",\"kind\":2,\"sortText\":\"1\"}]}}");
+
+        LspCompletionList list = request.get(5, TimeUnit.SECONDS);
+        assertTrue(list.isIncomplete());
+        assertEquals("print", list.getItems().get(0).getLabel());
+        LspCompletionItem println = list.getItems().get(1);
+        assertEquals("println", println.getInsertText());
+        assertEquals("println", println.getFilterText());
+        assertEquals(8, println.getEditStartChar());
+        assertEquals("method", println.getKindLabel());
+    }
+
+    @Test
+    @DisplayName("Edits are sent as versioned ranged changes after didOpen")
+    void testDidChange() throws Exception {
+        manager.sendDidOpen("/tmp/Main.java", "class Main {}");
+        JsonObject open = fromManager.readMessage();
+        assertEquals("textDocument/didOpen", open.get("method").getAsString());
+        assertEquals("class Main {}", open.getAsJsonObject("params").getAsJsonObject("textDocument")
+                .get("text").getAsString());
+
+        manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 6, "Main", "Test")),
+                () -> fail("The text should not be needed"));
+        JsonObject params = fromManager.readMessage().getAsJsonObject("params");
+        assertEquals(2, params.getAsJsonObject("textDocument").get("version").getAsInt());
+        JsonObject change = params.getAsJsonArray("contentChanges").get(0).getAsJsonObject();
+        assertEquals("Test", change.get("text").getAsString());
+        assertEquals(10, change.getAsJsonObject("range").getAsJsonObject("end").get("character").getAsInt());
+    }
+
+    @Test
+    @DisplayName("Documents opened before the server is ready are sent after initialized")
+    void testQueuedDidOpen() throws Exception {
+        // A manager of its own, which documents are opened in before it is connected
+        tearDown();
+        manager = new LspManager();
+        manager.sendDidOpen("/tmp/Main.java", "class Main {}");
+        manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 6, "Main", "Test")),
+                () -> "class Test {}");
+        connect();
+
+        JsonObject initialize = readInitialize();
+        manager.sendDidOpen("/tmp/Other.java", "class Other {}");
+        assertFalse(manager.isReady());
+        answerInitialize(initialize);
+
+        assertEquals("initialized", fromManager.readMessage().get("method").getAsString());
+        assertEquals("class Test {}", openedText(fromManager.readMessage()));
+        assertEquals("class Other {}", openedText(fromManager.readMessage()));
+        awaitReady();
+
+        manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 6, "Test", "Main")),
+                () -> "class Main {}");
+        JsonObject change = fromManager.readMessage();
+        assertEquals("textDocument/didChange", change.get("method").getAsString());
+        assertEquals(2, change.getAsJsonObject("params").getAsJsonObject("textDocument").get("version").getAsInt());
+    }
+
+    @Test
+    @DisplayName("Closing a document sends didClose and forgets its version")
+    void testDidClose() throws Exception {
+        manager.sendDidOpen("/tmp/Main.java", "class Main {}");
+        fromManager.readMessage();
+        assertEquals(1, manager.getOpenDocumentCount());
+
+        manager.sendDidClose("/tmp/Main.java");
+        JsonObject close = fromManager.readMessage();
+        assertEquals("textDocument/didClose", close.get("method").getAsString());
+        assertTrue(close.getAsJsonObject("params").getAsJsonObject("textDocument").get("uri").getAsString()
+                .endsWith("/tmp/Main.java"));
+        assertEquals(0, manager.getOpenDocumentCount());
+
+        // Closed again, or never opened, nothing is sent before the next didOpen
+        manager.sendDidClose("/tmp/Main.java");
+        manager.sendDidClose("/tmp/Large.java");
+
+        // Edited again, the document is opened again
+        manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 6, "Main", "Test")),
+                () -> "class Test {}");
+        assertEquals("class Test {}", openedText(fromManager.readMessage()));
+    }
+
+    @Test
+    @DisplayName("A dropped didChange resyncs the whole text instead of opening the document again")
+    void testDroppedDidChange() throws Exception {
+        manager.sendDidOpen("/tmp/Main.java", "class Main {}");
+        fromManager.readMessage();
+
+        // Nothing is read, so the pipe and then the queue of the writer fill up
+        String text = "x".repeat(1024);
+        int sent = 0;
+        while (manager.getWriter().getDroppedCount() == 0) {
+            manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 0, "", text)),
+                    () -> fail("The text should not be needed"));
+            sent++;
+        }
+        for (int i = 1; i < sent; i++) {
+            assertEquals("textDocument/didChange", fromManager.readMessage().get("method").getAsString());
+        }
+
+        manager.sendDidChange("/tmp/Main.java", List.of(LspTextChange.of(0, 0, "", "y")), () -> "class Test {}");
+        JsonObject resync = fromManager.readMessage();
+        assertEquals("textDocument/didChange", resync.get("method").getAsString());
+        JsonObject params = resync.getAsJsonObject("params");
+        assertEquals(sent + 2, params.getAsJsonObject("textDocument").get("version").getAsInt());
+        JsonObject change = params.getAsJsonArray("contentChanges").get(0).getAsJsonObject();
+        assertEquals("class Test {}", change.get("text").getAsString());
+        assertFalse(change.has("range"));
+        assertEquals(1, manager.getOpenDocumentCount());
+    }
+
+    @Test
+    @DisplayName("Shutdown sends exit once the server answered it")
+    void testShutdown() throws Exception {
+        Thread stopping = new Thread(() -> manager.shutdown(5000));
+        stopping.start();
+
+        JsonObject shutdown = fromManager.readMessage();
+        assertEquals("shutdown", shutdown.get("method").getAsString());
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":" + shutdown.get("id") + ",\"result\":null}");
+        assertEquals("exit", fromManager.readMessage().get("method").getAsString());
+
+        stopping.join(5000);
+        assertFalse(stopping.isAlive());
+        assertFalse(manager.isReady());
+    }
+
+    @Test
+    @DisplayName("Shutdown gives up on a server that does not answer")
+    void testShutdownTimeout() throws Exception {
+        long start = System.nanoTime();
+        manager.shutdown(200);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) < 2000);
+        assertEquals("shutdown", fromManager.readMessage().get("method").getAsString());
+    }
+
+    @Test
+    @DisplayName("Published diagnostics reach the listener")
+    void testDiagnostics() throws Exception {
+        CompletableFuture<List<LspDiagnostic>> received = new CompletableFuture<>();
+        manager.setDiagnosticsListener((uri, diagnostics) -> received.complete(diagnostics));
+
+        toManager.send("{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/publishDiagnostics\",\"params\":{"
+                + "\"uri\":\"file:///tmp/Main.java\",\"diagnostics\":[{\"range\":{\"start\":{\"line\":1,"
+                + "\"character\":2},\"end\":{\"line\":1,\"character\":5}},\"severity\":2,\"message\":\"Unused\"}]}}");
+
+        LspDiagnostic diagnostic = received.get(5, TimeUnit.SECONDS).get(0);
+        assertEquals(2, diagnostic.getStartChar());
+        assertTrue(diagnostic.isWarning());
+        assertEquals("Unused", diagnostic.getMessage());
+    }
+
+    @Test
+    @DisplayName("Requests from the server are answered")
+    void testServerRequest() throws IOException {
+        toManager.send("{\"jsonrpc\":\"2.0\",\"id\":\"cfg-1\",\"method\":\"workspace/configuration\",\"params\":{}}");
+
+        JsonObject answer = fromManager.readMessage();
+        assertEquals("cfg-1", answer.get("id").getAsString());
+        assertTrue(answer.has("result"));
+    }
+}
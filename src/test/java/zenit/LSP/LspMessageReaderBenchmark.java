@@ -0,0 +1,163 @@
+package zenit.LSP;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark replaying the output of a JDT LS session through {@link LspMessageReader}
+ * and through the byte-by-byte header loop that LspManager used before it.
+ *
+ * Set {@code session} to a file holding the raw stdout of a language server (for example
+ * captured with {@code tee} between Zenit and JDT LS) to replay a real recording. By
+ * default a session shaped like a JDT LS startup is generated: a large initialize
+ * response, status and log notifications, and publishDiagnostics for many files.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args="LspMessageReaderBenchmark -p session=/path/to/jdtls-stdout.bin"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LspMessageReaderBenchmark {
+
+	@Param({ "" })
+	public String session;
+
+	private byte[] recording;
+
+	@Setup
+	public void setUp() throws IOException {
+		recording = session.isEmpty() ? generateSession() : Files.readAllBytes(Path.of(session));
+	}
+
+	@Benchmark
+	public int bufferedReader() throws IOException {
+		LspMessageReader reader = new LspMessageReader(new ByteArrayInputStream(recording));
+		int messages = 0;
+		while (reader.readMessage() != null) {
+			messages++;
+		}
+		return messages;
+	}
+
+	@Benchmark
+	public int byteByByteBaseline() throws IOException {
+		InputStream is = new ByteArrayInputStream(recording);
+		int messages = 0;
+		JsonObject message;
+		while ((message = readBaseline(is)) != null) {
+			if (message.size() > 0) {
+				messages++;
+			}
+		}
+		return messages;
+	}
+
+	/**
+	 * The header loop and String decoding LspMessageReader replaced, kept here as the baseline.
+	 */
+	private static JsonObject readBaseline(InputStream is) throws IOException {
+		int contentLength = -1;
+		StringBuilder headerBuf = new StringBuilder();
+
+		int b;
+		while ((b = is.read()) != -1) {
+			headerBuf.append((char) b);
+			String h = headerBuf.toString();
+			if (h.endsWith("\r\n\r\n") || h.endsWith("\n\n")) {
+				break;
+			}
+		}
+		if (b == -1) {
+			return null;
+		}
+
+		for (String line : headerBuf.toString().split("\r?\n")) {
+			if (line.startsWith("Content-Length:")) {
+				contentLength = Integer.parseInt(
+						line.substring("Content-Length:".length()).trim());
+			}
+		}
+
+		byte[] bodyBytes = new byte[contentLength];
+		int read = 0;
+		while (read < contentLength) {
+			int r = is.read(bodyBytes, read, contentLength - read);
+			if (r == -1) break;
+			read += r;
+		}
+
+		String json = new String(bodyBytes, 0, read, StandardCharsets.UTF_8);
+		JsonReader jsonReader = new JsonReader(new java.io.StringReader(json));
+		jsonReader.setLenient(true);
+		return JsonParser.parseReader(jsonReader).getAsJsonObject();
+	}
+
+	static byte[] generateSession() {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		StringBuilder capabilities = new StringBuilder("{\"textDocumentSync\":{\"openClose\":true,\"change\":2}");
+		for (int i = 0; i < 60; i++) {
+			capabilities.append(",\"provider").append(i).append("\":{\"resolveProvider\":true,")
+					.append("\"triggerCharacters\":[\".\",\"@\",\"#\",\"*\",\" \"]}");
+		}
+		capabilities.append('}');
+		write(out, "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":{\"capabilities\":" + capabilities + "}}");
+
+		for (int i = 0; i < 400; i++) {
+			write(out, "{\"jsonrpc\":\"2.0\",\"method\":\"window/logMessage\",\"params\":{\"type\":3,"
+					+ "\"message\":\"Oct 18, 2026 10:00:0" + (i % 10) + " AM Importing Maven project(s) "
+					+ i + " of 400\"}}");
+			write(out, "{\"jsonrpc\":\"2.0\",\"method\":\"language/status\",\"params\":{\"type\":\"Starting\","
+					+ "\"message\":\"" + (i / 4) + "% Starting Java Language Server\"}}");
+		}
+
+		for (int file = 0; file < 200; file++) {
+			StringBuilder diagnostics = new StringBuilder();
+			for (int d = 0; d < file % 12; d++) {
+				if (d > 0) diagnostics.append(',');
+				diagnostics.append("{\"range\":{\"start\":{\"line\":").append(d * 7)
+						.append(",\"character\":8},\"end\":{\"line\":").append(d * 7)
+						.append(",\"character\":21}},\"severity\":").append(d % 2 + 1)
+						.append(",\"code\":\"536870973\",\"source\":\"Java\",")
+						.append("\"message\":\"The value of the local variable värde").append(d)
+						.append(" is not used\"}");
+			}
+			write(out, "{\"jsonrpc\":\"2.0\",\"method\":\"textDocument/publishDiagnostics\",\"params\":{"
+					+ "\"uri\":\"file:///home/user/workspace/project/src/main/java/com/example/Class"
+					+ file + ".java\",\"diagnostics\":[" + diagnostics + "]}}");
+		}
+		return out.toByteArray();
+	}
+
+	static void write(ByteArrayOutputStream out, String json) {
+		byte[] body = json.getBytes(StandardCharsets.UTF_8);
+		out.writeBytes(("Content-Length: " + body.length + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+		out.writeBytes(body);
+	}
+}
@@ -0,0 +1,107 @@
+package zenit.LSP;
+
+import com.google.gson.JsonObject;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LspMessageReader
+ * Feeds framed messages through a small read buffer, so headers and
+ * bodies are split across reads
+ */
+class LspMessageReaderTest {
+
+    private static byte[] frame(String header, String body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        out.writeBytes(header.replace("%d", String.valueOf(bytes.length)).getBytes(StandardCharsets.US_ASCII));
+        out.writeBytes(bytes);
+        return out.toByteArray();
+    }
+
+    private static LspMessageReader reader(byte[]... frames) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (byte[] frame : frames) {
+            out.writeBytes(frame);
+        }
+        return new LspMessageReader(new ByteArrayInputStream(out.toByteArray()), 7);
+    }
+
+    @Test
+    @DisplayName("Reads consecutive messages until the stream ends")
+    void testConsecutiveMessages() throws IOException {
+        LspMessageReader reader = reader(
+                frame("Content-Length: %d\r\n\r\n", "{\"id\":1}"),
+                frame("Content-Length: %d\r\nContent-Type: application/vscode-jsonrpc; charset=utf-8\r\n\r\n",
+                        "{\"method\":\"window/logMessage\"}"));
+
+        assertEquals(1, reader.readMessage().get("id").getAsInt());
+        assertEquals("window/logMessage", reader.readMessage().get("method").getAsString());
+        assertNull(reader.readMessage());
+    }
+
+    @Test
+    @DisplayName("Header names are matched case-insensitively and bare line feeds end lines")
+    void testHeaderVariants() throws IOException {
+        LspMessageReader reader = reader(frame("content-length:%d\n\n", "{\"id\":2}"));
+
+        assertEquals(2, reader.readMessage().get("id").getAsInt());
+    }
+
+    @Test
+    @DisplayName("Content-Length counts bytes, not characters")
+    void testMultiByteBody() throws IOException {
+        String body = "{\"message\":\"Variabeln är oanvänd — ✓\"}";
+        LspMessageReader reader = reader(frame("Content-Length: %d\r\n\r\n", body),
+                frame("Content-Length: %d\r\n\r\n", "{\"id\":3}"));
+
+        assertEquals("Variabeln är oanvänd — ✓", reader.readMessage().get("message").getAsString());
+        assertEquals(3, reader.readMessage().get("id").getAsInt());
+    }
+
+    @Test
+    @DisplayName("Bodies larger than the buffers are read whole")
+    void testLargeBody() throws IOException {
+        String text = "x".repeat(100_000);
+        LspMessageReader reader = reader(frame("Content-Length: %d\r\n\r\n", "{\"text\":\"" + text + "\"}"),
+                frame("Content-Length: %d\r\n\r\n", "{\"id\":4}"));
+
+        JsonObject message = reader.readMessage();
+        assertEquals(text, message.get("text").getAsString());
+        assertEquals(4, reader.readMessage().get("id").getAsInt());
+    }
+
+    @Test
+    @DisplayName("A header block without Content-Length is skipped")
+    void testMissingContentLength() throws IOException {
+        LspMessageReader reader = reader("Content-Type: text\r\n\r\n".getBytes(StandardCharsets.US_ASCII),
+                frame("Content-Length: %d\r\n\r\n", "{\"id\":5}"));
+
+        assertEquals(5, reader.readMessage().get("id").getAsInt());
+    }
+
+    @Test
+    @DisplayName("A malformed body does not break the framing of the next message")
+    void testMalformedBody() throws IOException {
+        LspMessageReader reader = reader(frame("Content-Length: %d\r\n\r\n", "[1, 2]"),
+                frame("Content-Length: %d\r\n\r\n", "{\"id\":6}"));
+
+        assertThrows(IllegalStateException.class, reader::readMessage);
+        assertEquals(6, reader.readMessage().get("id").getAsInt());
+    }
+
+    @Test
+    @DisplayName("A stream ending inside a message is an error")
+    void testTruncatedBody() {
+        LspMessageReader reader = reader("Content-Length: 50\r\n\r\n{\"id\"".getBytes(StandardCharsets.US_ASCII));
+
+        assertThrows(IOException.class, reader::readMessage);
+    }
+}
@@ -0,0 +1,48 @@
+package zenit.LSP;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LspTextChange
+ * Checks the end position computed from the removed text of an edit
+ */
+class LspTextChangeTest {
+
+    @Test
+    @DisplayName("An insertion has an empty range")
+    void testInsertion() {
+        LspTextChange change = LspTextChange.of(3, 7, "", "foo\nbar");
+        assertEquals(3, change.getEndLine());
+        assertEquals(7, change.getEndChar());
+        assertEquals("foo\nbar", change.getText());
+    }
+
+    @Test
+    @DisplayName("Removing text within a line ends on the same line")
+    void testRemovalWithinLine() {
+        LspTextChange change = LspTextChange.of(2, 4, "abc", "x");
+        assertEquals(2, change.getEndLine());
+        assertEquals(7, change.getEndChar());
+    }
+
+    @Test
+    @DisplayName("Removing line breaks ends on a later line")
+    void testRemovalAcrossLines() {
+        LspTextChange change = LspTextChange.of(1, 5, "tail\nwhole line\nhe", "");
+        assertEquals(1, change.getStartLine());
+        assertEquals(5, change.getStartChar());
+        assertEquals(3, change.getEndLine());
+        assertEquals(2, change.getEndChar());
+    }
+
+    @Test
+    @DisplayName("Removing text ending in a line break ends at the start of the next line")
+    void testRemovalEndingWithBreak() {
+        LspTextChange change = LspTextChange.of(0, 0, "line\n", "");
+        assertEquals(1, change.getEndLine());
+        assertEquals(0, change.getEndChar());
+    }
+}
@@ -0,0 +1,256 @@
+package zenit.LSP;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.lsp4j.CompletionParams;
+import org.eclipse.lsp4j.DidChangeTextDocumentParams;
+import org.eclipse.lsp4j.DidOpenTextDocumentParams;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.Range;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentIdentifier;
+import org.eclipse.lsp4j.TextDocumentItem;
+import org.eclipse.lsp4j.VersionedTextDocumentIdentifier;
+import org.eclipse.lsp4j.jsonrpc.MessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.JsonRpcMethod;
+import org.eclipse.lsp4j.jsonrpc.json.MessageJsonHandler;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageConsumer;
+import org.eclipse.lsp4j.jsonrpc.json.StreamMessageProducer;
+import org.eclipse.lsp4j.jsonrpc.messages.Message;
+import org.eclipse.lsp4j.jsonrpc.messages.NotificationMessage;
+import org.eclipse.lsp4j.jsonrpc.messages.RequestMessage;
+import org.eclipse.lsp4j.jsonrpc.services.ServiceEndpoints;
+import org.eclipse.lsp4j.services.LanguageServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the message throughput of LspManager before and after it moved to
+ * lsp4j, in both directions.
+ *
+ * Inbound, a JDT LS session (see {@link LspMessageReaderBenchmark}) is read with the
+ * hand-rolled reader of the old LspManager, with lsp4j's StreamMessageProducer, and
+ * with {@link LspMessageProducer}, which lsp4j now reads through. The lsp4j variants
+ * also map each message to its typed params.
+ *
+ * Outbound, a typing session is sent: a didOpen of a large file followed by ranged
+ * didChange notifications with a completion request after every third one. It is
+ * written with the JsonWriter code of the old LspManager, with lsp4j's
+ * StreamMessageConsumer, and with {@link LspMessageConsumer} on an {@link LspWriter}.
+ * Only ranged edits are sent, so the writer has nothing to coalesce.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args="LspThroughputBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LspThroughputBenchmark {
+
+	private static final int EDITS = 1500;
+
+	@Param({ "" })
+	public String session;
+
+	private byte[] recording;
+	private MessageJsonHandler jsonHandler;
+	private List<Message> outgoing;
+
+	@Setup
+	public void setUp() throws IOException {
+		recording = session.isEmpty() ? LspMessageReaderBenchmark.generateSession() : Files.readAllBytes(Path.of(session));
+
+		Map<String, JsonRpcMethod> methods = new HashMap<>(ServiceEndpoints.getSupportedMethods(LanguageServer.class));
+		methods.putAll(ServiceEndpoints.getSupportedMethods(LspClient.class));
+		jsonHandler = new MessageJsonHandler(methods);
+		jsonHandler.setMethodProvider(id -> "initialize");
+
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			text.append("\t\tint värde").append(i).append(" = compute(\"line ").append(i).append("\");\n");
+		}
+
+		outgoing = new ArrayList<>();
+		String uri = "file:///home/user/workspace/project/src/main/java/com/example/Main.java";
+		outgoing.add(notification("textDocument/didOpen",
+				new DidOpenTextDocumentParams(new TextDocumentItem(uri, "java", 1, text.toString()))));
+		for (int i = 0; i < EDITS; i++) {
+			Range range = new Range(new Position(100 + i / 40, 8 + i % 40), new Position(100 + i / 40, 8 + i % 40));
+			outgoing.add(notification("textDocument/didChange", new DidChangeTextDocumentParams(
+					new VersionedTextDocumentIdentifier(uri, i + 2),
+					List.of(new TextDocumentContentChangeEvent(range, "x")))));
+			if (i % 3 == 2) {
+				RequestMessage request = new RequestMessage();
+				request.setJsonrpc("2.0");
+				request.setId(i);
+				request.setMethod("textDocument/completion");
+				request.setParams(new CompletionParams(new TextDocumentIdentifier(uri),
+						new Position(100 + i / 40, 9 + i % 40)));
+				outgoing.add(request);
+			}
+		}
+	}
+
+	private static NotificationMessage notification(String method, Object params) {
+		NotificationMessage message = new NotificationMessage();
+		message.setJsonrpc("2.0");
+		message.setMethod(method);
+		message.setParams(params);
+		return message;
+	}
+
+	@Benchmark
+	public int inboundHandRolled() throws IOException {
+		LspMessageReader reader = new LspMessageReader(new ByteArrayInputStream(recording));
+		int messages = 0;
+		while (reader.readMessage() != null) {
+			messages++;
+		}
+		return messages;
+	}
+
+	@Benchmark
+	public int inboundLsp4jStream() {
+		int[] messages = new int[1];
+		new StreamMessageProducer(new ByteArrayInputStream(recording), jsonHandler).listen(message -> messages[0]++);
+		return messages[0];
+	}
+
+	@Benchmark
+	public int inboundLsp4jBuffered() {
+		int[] messages = new int[1];
+		new LspMessageProducer(new ByteArrayInputStream(recording), jsonHandler, (message, issues) -> { })
+				.listen(message -> messages[0]++);
+		return messages[0];
+	}
+
+	@Benchmark
+	public long outboundHandRolled() {
+		LspWriter writer = new LspWriter(OutputStream.nullOutputStream());
+		writer.start();
+		for (Message message : outgoing) {
+			writeHandRolled(writer, message);
+		}
+		writer.close(10_000);
+		return writer.getWrittenCount();
+	}
+
+	@Benchmark
+	public int outboundLsp4jStream() {
+		MessageConsumer consumer = new StreamMessageConsumer(OutputStream.nullOutputStream(), jsonHandler);
+		for (Message message : outgoing) {
+			consumer.consume(message);
+		}
+		return outgoing.size();
+	}
+
+	@Benchmark
+	public long outboundLsp4jWriter() {
+		LspWriter writer = new LspWriter(OutputStream.nullOutputStream());
+		writer.start();
+		MessageConsumer consumer = new LspMessageConsumer(writer, jsonHandler, null);
+		for (Message message : outgoing) {
+			consumer.consume(message);
+		}
+		writer.close(10_000);
+		return writer.getWrittenCount();
+	}
+
+	/**
+	 * Sends a message of the typing session the way LspManager encoded it before lsp4j.
+	 */
+	private void writeHandRolled(LspWriter writer, Message message) {
+		if (message instanceof RequestMessage) {
+			RequestMessage request = (RequestMessage) message;
+			CompletionParams params = (CompletionParams) request.getParams();
+			int id = Integer.parseInt(request.getId());
+			writer.send(json -> {
+				json.beginObject();
+				json.name("jsonrpc").value("2.0");
+				json.name("id").value(id);
+				json.name("method").value("textDocument/completion");
+				json.name("params").beginObject();
+				json.name("textDocument").beginObject().name("uri").value(params.getTextDocument().getUri()).endObject();
+				json.name("position").beginObject()
+						.name("line").value(params.getPosition().getLine())
+						.name("character").value(params.getPosition().getCharacter()).endObject();
+				json.endObject();
+				json.endObject();
+			});
+			return;
+		}
+
+		Object params = ((NotificationMessage) message).getParams();
+		if (params instanceof DidOpenTextDocumentParams) {
+			TextDocumentItem document = ((DidOpenTextDocumentParams) params).getTextDocument();
+			writer.send(json -> {
+				json.beginObject();
+				json.name("jsonrpc").value("2.0");
+				json.name("method").value("textDocument/didOpen");
+				json.name("params").beginObject();
+				json.name("textDocument").beginObject();
+				json.name("uri").value(document.getUri());
+				json.name("languageId").value("java");
+				json.name("version").value(1);
+				json.name("text").value(document.getText());
+				json.endObject();
+				json.endObject();
+				json.endObject();
+			});
+			return;
+		}
+
+		DidChangeTextDocumentParams change = (DidChangeTextDocumentParams) params;
+		String uri = change.getTextDocument().getUri();
+		writer.sendDidChange(uri, false, json -> {
+			json.beginObject();
+			json.name("jsonrpc").value("2.0");
+			json.name("method").value("textDocument/didChange");
+			json.name("params").beginObject();
+			json.name("textDocument").beginObject();
+			json.name("uri").value(uri);
+			json.name("version").value(change.getTextDocument().getVersion());
+			json.endObject();
+			json.name("contentChanges").beginArray();
+			for (TextDocumentContentChangeEvent event : change.getContentChanges()) {
+				Range range = event.getRange();
+				json.beginObject();
+				json.name("range").beginObject();
+				json.name("start").beginObject()
+						.name("line").value(range.getStart().getLine())
+						.name("character").value(range.getStart().getCharacter()).endObject();
+				json.name("end").beginObject()
+						.name("line").value(range.getEnd().getLine())
+						.name("character").value(range.getEnd().getCharacter()).endObject();
+				json.endObject();
+				json.name("text").value(event.getText());
+				json.endObject();
+			}
+			json.endArray();
+			json.endObject();
+			json.endObject();
+		});
+	}
+}
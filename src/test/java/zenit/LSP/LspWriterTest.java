@@ -0,0 +1,170 @@
+package zenit.LSP;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for LspWriter
+ * Holds the writer thread inside its first write with a gated stream,
+ * so the tests control what is queued behind it
+ */
+class LspWriterTest {
+
+    /**
+     * Blocks every write until released, then collects the bytes.
+     */
+    private static class GatedStream extends OutputStream {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch gate = new CountDownLatch(1);
+
+        @Override
+        public synchronized void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            entered.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (this) {
+                bytes.write(b, off, len);
+            }
+        }
+
+        synchronized String written() {
+            return bytes.toString(StandardCharsets.UTF_8);
+        }
+    }
+
+    private final GatedStream stream = new GatedStream();
+    private LspWriter writer;
+
+    @AfterEach
+    void tearDown() {
+        stream.gate.countDown();
+        writer.close(1000);
+    }
+
+    private LspWriter startBlocked(int capacity, long offerTimeoutMillis) throws InterruptedException {
+        writer = new LspWriter(stream, capacity, offerTimeoutMillis);
+        writer.start();
+        // Larger than the buffer of the writer, so it reaches the gate before the flush
+        writer.send("{\"id\":0,\"padding\":\"" + "x".repeat(70_000) + "\"}");
+        assertTrue(stream.entered.await(5, TimeUnit.SECONDS), "The writer thread should start writing");
+        return writer;
+    }
+
+    @Test
+    @DisplayName("Messages are framed and written in order")
+    void testFraming() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new LspWriter(out);
+        writer.start();
+        writer.send("{\"id\":1}");
+        writer.send("{\"id\":2}");
+        writer.close(5000);
+
+        assertEquals("Content-Length: 8\r\n\r\n{\"id\":1}Content-Length: 8\r\n\r\n{\"id\":2}",
+                out.toString(StandardCharsets.UTF_8));
+        assertEquals(2, writer.getWrittenCount());
+    }
+
+    @Test
+    @DisplayName("Text is escaped for JSON and encoded as UTF-8")
+    void testEscaping() throws IOException {
+        String text = "String s = \"a\\b\";\r\n\tchar c = '\u0001'; // 😀 – \u2028 ñ";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new LspWriter(out);
+        writer.start();
+        writer.send(json -> json.beginObject().name("text").value(text).endObject());
+        writer.close(5000);
+
+        LspMessageReader reader = new LspMessageReader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(text, reader.readMessage().get("text").getAsString());
+        assertFalse(out.toString(StandardCharsets.UTF_8).contains("\u0001"), "Control characters must be escaped");
+    }
+
+    @Test
+    @DisplayName("A message that fails to encode is skipped")
+    void testEncodingFailure() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer = new LspWriter(out);
+        writer.start();
+        writer.send(json -> json.beginObject().endArray());
+        writer.send("{\"id\":1}");
+        writer.close(5000);
+
+        LspMessageReader reader = new LspMessageReader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(1, reader.readMessage().get("id").getAsInt());
+        assertNull(reader.readMessage());
+    }
+
+    @Test
+    @DisplayName("A full-text didChange replaces the unwritten changes of the same document")
+    void testCoalescing() throws InterruptedException {
+        startBlocked(16, 100);
+        writer.sendDidChange("file:///A.java", false, "{\"a\":1}");
+        writer.send("{\"other\":1}");
+        writer.sendDidChange("file:///B.java", true, "{\"b\":1}");
+        writer.sendDidChange("file:///A.java", true, "{\"a\":2}");
+        writer.sendDidChange("file:///A.java", true, "{\"a\":3}");
+
+        assertEquals(3, writer.getQueueDepth());
+        assertEquals(2, writer.getCoalescedCount());
+
+        stream.gate.countDown();
+        writer.close(5000);
+        String written = stream.written();
+        assertFalse(written.contains("{\"a\":1}"));
+        assertFalse(written.contains("{\"a\":2}"));
+        assertTrue(written.indexOf("{\"a\":3}") < written.indexOf("{\"other\":1}"),
+                "The replacement keeps the place of the first change");
+        assertTrue(written.indexOf("{\"other\":1}") < written.indexOf("{\"b\":1}"));
+    }
+
+    @Test
+    @DisplayName("Incremental changes are all kept")
+    void testIncrementalNotCoalesced() throws InterruptedException {
+        startBlocked(16, 100);
+        writer.sendDidChange("file:///A.java", false, "{\"a\":1}");
+        writer.sendDidChange("file:///A.java", false, "{\"a\":2}");
+
+        assertEquals(2, writer.getQueueDepth());
+        assertEquals(0, writer.getCoalescedCount());
+    }
+
+    @Test
+    @DisplayName("A full queue drops messages after the offer timeout")
+    void testBackpressure() throws InterruptedException {
+        startBlocked(2, 50);
+        assertTrue(writer.send("{\"id\":1}"));
+        assertTrue(writer.send("{\"id\":2}"));
+
+        long start = System.nanoTime();
+        assertFalse(writer.send("{\"id\":3}"));
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(40), "The sender should wait first");
+        assertEquals(1, writer.getDroppedCount());
+        assertEquals(2, writer.getMaxQueueDepth());
+
+        stream.gate.countDown();
+        writer.close(5000);
+        assertEquals(3, writer.getWrittenCount());
+        assertTrue(writer.getMaxLatencyMillis() >= writer.getAverageLatencyMillis());
+    }
+}
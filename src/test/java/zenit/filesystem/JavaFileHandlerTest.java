@@ -169,6 +169,18 @@ public class JavaFileHandlerTest {
                 "File should be empty after saving an empty string");
     }
 
+    @Test
+    @DisplayName("Should save lines separated by line breaks")
+    public void testSaveLines() throws IOException {
+        File file = new File(tempDir, "Lines.java");
+        Files.write(file.toPath(), "old content".getBytes());
+
+        JavaFileHandler.saveLines(file, java.util.List.of("class A {", "", "}"));
+
+        assertEquals("class A {\n\n}", new String(Files.readAllBytes(file.toPath())),
+                "Lines should be joined without a trailing line break");
+    }
+
     // -------------------------------------------------------------------------
     // renameFile
     // -------------------------------------------------------------------------
@@ -0,0 +1,126 @@
+package zenit.filesystem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for MappedTextFile
+ *
+ * Tests line lookup through the sparse line index, line endings,
+ * and searching the mapped bytes.
+ */
+public class MappedTextFileTest {
+
+    private File tempDir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        tempDir = Files.createTempDirectory("MappedTextFileTest").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        File[] children = tempDir.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                child.delete();
+            }
+        }
+        tempDir.delete();
+    }
+
+    private File write(String content) throws IOException {
+        File file = new File(tempDir, "data.log");
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    @Test
+    @DisplayName("Should read every line across several index checkpoints")
+    public void testLinesAcrossCheckpoints() throws IOException {
+        int count = MappedTextFile.LINES_PER_CHECKPOINT * 3 + 7;
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            content.append("line ").append(i).append('\n');
+        }
+
+        try (MappedTextFile file = new MappedTextFile(write(content.toString()))) {
+            assertEquals(count + 1, file.getLineCount(), "A trailing line break ends with an empty line");
+            for (int i = 0; i < count; i++) {
+                assertEquals("line " + i, file.getLine(i));
+            }
+            assertEquals("", file.getLine(count));
+        }
+    }
+
+    @Test
+    @DisplayName("Should strip carriage returns and decode UTF-8")
+    public void testLineEndingsAndEncoding() throws IOException {
+        try (MappedTextFile file = new MappedTextFile(write("första\r\nandra"))) {
+            assertEquals(2, file.getLineCount());
+            assertEquals("första", file.getLine(0));
+            assertEquals("andra", file.getLine(1));
+        }
+    }
+
+    @Test
+    @DisplayName("Should find text in the mapped bytes and map it to its line")
+    public void testFind() throws IOException {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            content.append(i == 700 ? "ERROR disk full" : "INFO ok").append('\n');
+        }
+
+        try (MappedTextFile file = new MappedTextFile(write(content.toString()))) {
+            long match = file.find("ERROR", 0);
+            assertEquals(700, file.getLineOf(match));
+            assertEquals(file.getLineStart(700), match);
+            assertEquals(-1, file.find("ERROR", match + 1), "There is only one match");
+            assertEquals(-1, file.find("missing", 0));
+        }
+    }
+
+    @Test
+    @DisplayName("Should stop searching once the search is cancelled")
+    public void testCancelledFind() throws IOException {
+        int checks = 3;
+        String content = "x".repeat((int) MappedTextFile.CANCEL_CHECK_BYTES * (checks + 2)) + "ERROR";
+
+        try (MappedTextFile file = new MappedTextFile(write(content))) {
+            int[] asked = new int[1];
+            assertEquals(-1, file.find("ERROR", 0, () -> ++asked[0] >= checks));
+            assertEquals(checks, asked[0], "Stops at the first check after cancelling");
+            assertEquals(content.length() - 5, file.find("ERROR", 0, () -> false));
+        }
+    }
+
+    @Test
+    @DisplayName("Should cut off very long lines")
+    public void testLongLine() throws IOException {
+        String line = "x".repeat(MappedTextFile.MAX_LINE_BYTES + 5);
+
+        try (MappedTextFile file = new MappedTextFile(write(line))) {
+            assertEquals(MappedTextFile.MAX_LINE_BYTES + 2, file.getLine(0).length());
+            assertThrows(IndexOutOfBoundsException.class, () -> file.getLine(1));
+        }
+    }
+
+    @Test
+    @DisplayName("Should open an empty file as a single empty line")
+    public void testEmptyFile() throws IOException {
+        try (MappedTextFile file = new MappedTextFile(write(""))) {
+            assertEquals(1, file.getLineCount());
+            assertEquals("", file.getLine(0));
+        }
+    }
+}
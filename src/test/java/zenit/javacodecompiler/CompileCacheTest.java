@@ -0,0 +1,120 @@
+package zenit.javacodecompiler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the compile cache of IncrementalCompiler
+ */
+class CompileCacheTest {
+
+    private static final String MAIN = "package app;\npublic class Main { int run() { return new Helper().value(); } }\n";
+    private static final String HELPER = "package app;\npublic class Helper { int value() { return 1; } }\n";
+
+    @TempDir
+    File tempDir;
+
+    private InProcessCompiler compiler;
+    private IncrementalCompiler incremental;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        compiler = new InProcessCompiler();
+        incremental = new IncrementalCompiler(tempDir);
+        write("app/Main.java", MAIN);
+        write("app/Helper.java", HELPER);
+        assertTrue(build());
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(tempDir, "src/" + path);
+        file.getParentFile().mkdirs();
+        long previous = file.lastModified();
+        Files.writeString(file.toPath(), content);
+        // Changed even if the clock did not move on since the last write
+        file.setLastModified(Math.max(file.lastModified(), previous + 1000));
+    }
+
+    private boolean build() {
+        return incremental.build(compiler, "bin", "src", null, diagnostic -> { });
+    }
+
+    @Test
+    @DisplayName("A file saved without a change is restored, not compiled")
+    void testUnchangedContent() throws IOException {
+        File classFile = new File(tempDir, "bin/app/Main.class");
+        byte[] compiled = Files.readAllBytes(classFile.toPath());
+
+        write("app/Main.java", MAIN);
+        assertTrue(build());
+        assertEquals(0, incremental.getCompiledCount());
+        assertEquals(1, incremental.getRestoredCount());
+        assertArrayEquals(compiled, Files.readAllBytes(classFile.toPath()));
+    }
+
+    @Test
+    @DisplayName("A file changed back is restored")
+    void testChangedBack() throws IOException {
+        write("app/Helper.java", "package app;\npublic class Helper { int value() { return 2; } }\n");
+        assertTrue(build());
+        assertEquals(2, incremental.getCompiledCount());
+        assertEquals(0, incremental.getRestoredCount());
+
+        write("app/Helper.java", HELPER);
+        assertTrue(build());
+        assertEquals(1, incremental.getCompiledCount(), "Main was last cached with the changed Helper");
+        assertEquals(1, incremental.getRestoredCount());
+    }
+
+    @Test
+    @DisplayName("An entry is not used once a source it used has changed")
+    void testChangedDependency() throws IOException {
+        write("app/Main.java", "package app;\npublic class Main { int run() { return 0; } }\n");
+        assertTrue(build());
+        write("app/Helper.java", "package app;\npublic class Helper { int value() { return 2; } }\n");
+        assertTrue(build());
+
+        write("app/Main.java", MAIN);
+        assertTrue(build());
+        assertEquals(1, incremental.getCompiledCount(), "Main was cached with the first Helper");
+        assertEquals(0, incremental.getRestoredCount());
+    }
+
+    @Test
+    @DisplayName("Failed compiles are not cached")
+    void testFailedCompile() throws IOException {
+        write("app/Main.java", "package app;\npublic class Main { int run() { return missing(); } }\n");
+        assertFalse(build());
+        write("app/Main.java", MAIN);
+        assertTrue(build());
+
+        write("app/Main.java", "package app;\npublic class Main { int run() { return missing(); } }\n");
+        assertFalse(build());
+        assertEquals(1, incremental.getCompiledCount());
+        assertEquals(0, incremental.getRestoredCount());
+    }
+
+    @Test
+    @DisplayName("The least recently used entries are evicted above the limit")
+    void testEviction() throws IOException {
+        File cacheDirectory = new File(tempDir, "bin/" + CompileCache.DIRECTORY_NAME);
+        assertEquals(2, cacheDirectory.list().length);
+
+        incremental.setMaxCacheBytes(1);
+        write("app/Unrelated.java", "package app;\npublic class Unrelated { }\n");
+        assertTrue(build());
+        assertEquals(0, cacheDirectory.list().length);
+
+        write("app/Main.java", MAIN);
+        assertTrue(build());
+        assertEquals(1, incremental.getCompiledCount());
+    }
+}
@@ -0,0 +1,103 @@
+package zenit.javacodecompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of compiling a project with another JDK than the one Zenit runs on, in a
+ * generated project of 50 classes compiled from the main class with -sourcepath.
+ *
+ * {@code forkedJavac} starts javac of the JDK for the compile, like compiling in the
+ * background did before compile daemons. {@code warmDaemon} sends the compile to the
+ * {@link CompileDaemon} of the JDK, which is started during setup.
+ *
+ * The JDK is given with -Dzenit.benchmark.jdk, the JDK running the benchmark by default.
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args="CompileDaemonBenchmark -jvmArgs -Dzenit.benchmark.jdk=/path/to/jdk"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompileDaemonBenchmark {
+
+	private static final int CLASSES = 50;
+
+	private File project;
+	private String JDK;
+	private CompileDaemon daemon;
+
+	@Setup
+	public void setUp() throws IOException {
+		project = Files.createTempDirectory("zenit-daemon").toFile();
+		for (int c = 0; c < CLASSES; c++) {
+			String next = c + 1 < CLASSES ? "result += new C" + (c + 1) + "().value();\n" : "";
+			write("app/C" + c + ".java", "package app;\n\npublic class C" + c + " {\n"
+					+ "\tprivate final java.util.List<String> names = new java.util.ArrayList<>();\n"
+					+ "\tpublic int value() {\n\t\tint result = names.size() + " + c + ";\n\t\t" + next
+					+ "\t\treturn result;\n\t}\n}\n");
+		}
+		write("app/Main.java", "package app;\npublic class Main {\n\tpublic static void main(String[] args) {\n"
+				+ "\t\tSystem.out.println(new C0().value());\n\t}\n}\n");
+
+		JDK = System.getProperty("zenit.benchmark.jdk", System.getProperty("java.home"));
+		daemon = new CompileDaemon(new File(JDK, "bin" + File.separator + "java").getPath(),
+				new File(project, "daemon"), CompileDaemon.IDLE_TIMEOUT_MS);
+		if (!warmDaemon()) {
+			throw new IllegalStateException("The generated project does not compile");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		daemon.stop();
+		try (Stream<java.nio.file.Path> paths = Files.walk(project.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private void write(String path, String content) throws IOException {
+		File file = new File(project, "src/" + path);
+		file.getParentFile().mkdirs();
+		Files.writeString(file.toPath(), content);
+	}
+
+	@Benchmark
+	public int forkedJavac() throws InterruptedException {
+		CommandBuilder cb = new CommandBuilder(CommandBuilder.COMPILE);
+		cb.setJDK(JDK);
+		cb.setRunPath("src/app/Main.java");
+		cb.setDirectory("bin-forked");
+		cb.setSourcepath("src");
+		Process process = TerminalHelpers.runBackgroundCommand(cb.generateCommand(), project, null);
+		return process.waitFor();
+	}
+
+	@Benchmark
+	public boolean warmDaemon() throws IOException {
+		List<DebugError> errors = new ArrayList<>();
+		return daemon.compile(List.of(new File("src/app/Main.java")), project, "bin-daemon", "src", null,
+				errors::add) && errors.isEmpty();
+	}
+}
@@ -0,0 +1,142 @@
+package zenit.javacodecompiler;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for compiling in a CompileDaemon, run on the JDK the tests run on
+ */
+class CompileDaemonTest {
+
+    @TempDir
+    File tempDir;
+
+    private CompileDaemon daemon;
+    private List<DebugError> errors;
+
+    @BeforeEach
+    void setUp() {
+        errors = new ArrayList<>();
+        daemon = createDaemon(CompileDaemon.IDLE_TIMEOUT_MS);
+    }
+
+    @AfterEach
+    void tearDown() {
+        daemon.stop();
+    }
+
+    private CompileDaemon createDaemon(long idleTimeoutMillis) {
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        return new CompileDaemon(java, new File(tempDir, "daemon"), idleTimeoutMillis);
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(tempDir, path);
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+    }
+
+    private boolean compile() throws IOException {
+        errors.clear();
+        return daemon.compile(List.of(new File("src/app/Main.java")), tempDir, "bin", "src", null, errors::add);
+    }
+
+    @Test
+    @DisplayName("A project is compiled by the same daemon every time")
+    void testCompile() throws IOException {
+        write("src/app/Main.java", "package app;\npublic class Main { Helper helper = new Helper(); }\n");
+        write("src/app/Helper.java", "package app;\nclass Helper { }\n");
+
+        assertFalse(daemon.isRunning(), "Started by the first compile");
+        assertTrue(compile());
+        assertTrue(errors.isEmpty());
+        assertTrue(new File(tempDir, "bin/app/Helper.class").exists());
+        long pid = daemon.getPid();
+
+        write("src/app/Main.java", "package app;\npublic class Main {\n\tint value = \"text\";\n}\n");
+        assertFalse(compile());
+        assertEquals(pid, daemon.getPid());
+        assertEquals(1, errors.size());
+        DebugError error = errors.get(0);
+        assertTrue(error.getPlace().endsWith("Main.java"));
+        assertEquals("error", error.getProblemType());
+        assertEquals(3, error.getRow());
+        assertEquals(13, error.getColumn(), "The index in the line, with the tab counted once");
+        assertEquals(3, error.getEndRow());
+        assertEquals(19, error.getEndColumn(), "The end of the string literal");
+    }
+
+    @Test
+    @DisplayName("The daemon stops when idle and starts again for the next compile")
+    void testIdleStop() throws IOException, InterruptedException {
+        daemon = createDaemon(200);
+        write("src/app/Main.java", "package app;\npublic class Main { }\n");
+
+        assertTrue(compile());
+        long pid = daemon.getPid();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (daemon.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertFalse(daemon.isRunning());
+
+        assertTrue(compile());
+        assertNotEquals(pid, daemon.getPid());
+    }
+
+    @Test
+    @DisplayName("A daemon that exited is started again")
+    void testRestart() throws IOException {
+        write("src/app/Main.java", "package app;\npublic class Main { }\n");
+        assertTrue(compile());
+        ProcessHandle.of(daemon.getPid()).ifPresent(ProcessHandle::destroyForcibly);
+
+        assertTrue(compile());
+        assertTrue(daemon.isRunning());
+    }
+
+    @Test
+    @DisplayName("A killed daemon exits without waiting for a running compile, which then fails")
+    void testKill() throws Exception {
+        write("src/app/Main.java", "package app;\npublic class Main { }\n");
+        assertTrue(compile());
+        ProcessHandle process = ProcessHandle.of(daemon.getPid()).orElseThrow();
+
+        // Holds the lock like a running compile
+        synchronized (daemon) {
+            Thread killer = new Thread(daemon::kill);
+            killer.start();
+            killer.join(5000);
+            assertFalse(killer.isAlive(), "kill() should not wait for the lock");
+        }
+        process.onExit().get(5, TimeUnit.SECONDS);
+
+        assertThrows(IOException.class, this::compile);
+        assertFalse(daemon.isRunning(), "A killed daemon is not started again");
+    }
+
+    @Test
+    @DisplayName("The version of a JDK is read from its release file")
+    void testMajorVersion() throws IOException {
+        write("jdk8/release", "IMPLEMENTOR=\"Eclipse Adoptium\"\nJAVA_VERSION=\"1.8.0_392\"\n");
+        write("jdk17/release", "JAVA_VERSION=\"17.0.9\"\n");
+
+        assertEquals(8, CompileDaemon.getMajorVersion(new File(tempDir, "jdk8")));
+        assertEquals(17, CompileDaemon.getMajorVersion(new File(tempDir, "jdk17")));
+        assertEquals(-1, CompileDaemon.getMajorVersion(new File(tempDir, "missing")));
+        assertEquals(Runtime.version().feature(),
+                CompileDaemon.getMajorVersion(new File(System.getProperty("java.home"))));
+    }
+}
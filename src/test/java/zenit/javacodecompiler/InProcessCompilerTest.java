@@ -0,0 +1,113 @@
+package zenit.javacodecompiler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for compiling in the Zenit JVM with InProcessCompiler
+ */
+class InProcessCompilerTest {
+
+    @TempDir
+    File tempDir;
+
+    private InProcessCompiler compiler;
+    private List<DebugError> errors;
+
+    @BeforeEach
+    void setUp() {
+        compiler = new InProcessCompiler();
+        errors = new ArrayList<>();
+        assertTrue(compiler.isAvailable(), "The tests run on a JDK");
+    }
+
+    private File write(String path, String content) throws IOException {
+        File file = new File(tempDir, path);
+        file.getParentFile().mkdirs();
+        Files.writeString(file.toPath(), content);
+        return file;
+    }
+
+    private boolean compile(File source, String directory, String sourcepath) {
+        return compiler.compile(List.of(source), tempDir, directory, sourcepath, null, diagnostic -> {
+            DebugError error = InProcessCompiler.toDebugError(diagnostic);
+            if (error != null) {
+                errors.add(error);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("A project is compiled into its output directory with its source path")
+    void testCompileInPackage() throws IOException {
+        File main = write("src/app/Main.java", "package app;\npublic class Main { Helper helper = new Helper(); }\n");
+        write("src/app/Helper.java", "package app;\nclass Helper { }\n");
+
+        assertTrue(compile(new File("src/app/Main.java"), "bin", "src"));
+        assertTrue(errors.isEmpty());
+        assertTrue(new File(tempDir, "bin/app/Main.class").exists());
+        assertTrue(new File(tempDir, "bin/app/Helper.class").exists(), "Dependencies are found on the source path");
+        assertFalse(new File(main.getParentFile(), "Main.class").exists());
+    }
+
+    @Test
+    @DisplayName("Errors are reported with their line and the index in the line")
+    void testErrors() throws IOException {
+        File broken = write("Broken.java", "class Broken {\n\tint x = \"text\";\n\tvoid run() { missing(); }\n}\n");
+
+        assertFalse(compile(broken, null, null));
+        assertEquals(2, errors.size());
+        assertEquals("error", errors.get(0).getProblemType());
+        assertEquals(2, errors.get(0).getRow());
+        assertEquals(9, errors.get(0).getColumn(), "A tab counts as one character");
+        assertEquals(3, errors.get(1).getRow());
+        assertEquals(14, errors.get(1).getColumn());
+    }
+
+    @Test
+    @DisplayName("Errors span what javac reports on, across lines if it does")
+    void testErrorRanges() throws IOException {
+        File broken = write("Broken.java", "class Broken {\n\tint x = \"text\";\n\tvoid run() { missing(); }\n"
+                + "\tint y = \"a\" +\n\t\t\"b\";\n}\n");
+
+        assertFalse(compile(broken, null, null));
+        assertEquals(3, errors.size());
+        assertEquals(2, errors.get(0).getEndRow());
+        assertEquals(15, errors.get(0).getEndColumn(), "The end of the string literal");
+        assertEquals(21, errors.get(1).getEndColumn(), "The end of the missing name");
+        assertEquals(4, errors.get(2).getRow());
+        assertEquals(5, errors.get(2).getEndRow());
+        assertEquals(5, errors.get(2).getEndColumn());
+    }
+
+    @Test
+    @DisplayName("The locations of a compile are not kept for the next one")
+    void testLocationsReset() throws IOException {
+        write("src/app/Main.java", "package app;\npublic class Main { }\n");
+        assertTrue(compile(new File("src/app/Main.java"), "bin", "src"));
+
+        File single = write("single/Single.java", "public class Single { }\n");
+        assertTrue(compile(single, null, null));
+        assertTrue(new File(single.getParentFile(), "Single.class").exists(), "Written next to the source");
+        assertFalse(new File(tempDir, "bin/Single.class").exists());
+    }
+
+    @Test
+    @DisplayName("Only the JDK Zenit runs on is compiled for in process")
+    void testCanCompileFor() {
+        assertTrue(compiler.canCompileFor(null));
+        assertTrue(compiler.canCompileFor(System.getProperty("java.home")));
+        assertFalse(compiler.canCompileFor(tempDir.getPath()));
+        assertFalse(new InProcessCompiler(null).canCompileFor(null));
+    }
+}
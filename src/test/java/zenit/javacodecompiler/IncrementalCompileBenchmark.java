@@ -0,0 +1,149 @@
+package zenit.javacodecompiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark of the time from saving a file to having its diagnostics, in a generated
+ * project of 2,000 classes in 20 packages. Every class uses the next one, so all of them
+ * are reached from the main class, and every tenth class uses a shared Util class.
+ *
+ * {@code entryFileWithSourcepath} is the compile on save before incremental builds: the
+ * main class with -sourcepath, which compiles every class it reaches. The incremental
+ * builds save a class only the previous class uses, save Util, which 200 classes use,
+ * save Util without changing it, which restores it from the compile cache, and build
+ * without saving anything.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args="IncrementalCompileBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IncrementalCompileBenchmark {
+
+	private static final int PACKAGES = 20;
+	private static final int CLASSES_PER_PACKAGE = 100;
+
+	private File project;
+	private InProcessCompiler compiler;
+	private IncrementalCompiler incremental;
+	private int edits;
+
+	@Setup
+	public void setUp() throws IOException {
+		project = Files.createTempDirectory("zenit-incremental").toFile();
+		for (int p = 0; p < PACKAGES; p++) {
+			for (int c = 0; c < CLASSES_PER_PACKAGE; c++) {
+				writeClass(p, c, 0);
+			}
+		}
+		write("p0/Util.java", "package p0;\npublic class Util {\n\tpublic static int twice(int x) { return 2 * x; }\n}\n");
+		write("app/Main.java", "package app;\npublic class Main {\n\tpublic static void main(String[] args) {\n"
+				+ "\t\tSystem.out.println(new p0.C0().value());\n\t}\n}\n");
+
+		compiler = new InProcessCompiler();
+		incremental = new IncrementalCompiler(project);
+		if (!build()) {
+			throw new IllegalStateException("The generated project does not compile");
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		try (Stream<java.nio.file.Path> paths = Files.walk(project.toPath())) {
+			paths.sorted(Comparator.reverseOrder()).map(java.nio.file.Path::toFile).forEach(File::delete);
+		}
+	}
+
+	private void writeClass(int p, int c, int edit) throws IOException {
+		String next = c + 1 < CLASSES_PER_PACKAGE ? "C" + (c + 1)
+				: p + 1 < PACKAGES ? "p" + (p + 1) + ".C0" : null;
+		StringBuilder source = new StringBuilder();
+		source.append("package p").append(p).append(";\n\n");
+		source.append("public class C").append(c).append(" {\n");
+		source.append("\tprivate final java.util.List<String> names = new java.util.ArrayList<>();\n");
+		source.append("\t// edit ").append(edit).append('\n');
+		source.append("\tpublic int value() {\n");
+		source.append("\t\tint result = names.size() + ").append(c).append(";\n");
+		if (next != null) {
+			source.append("\t\tresult += new ").append(next).append("().value();\n");
+		}
+		if (c % 10 == 0) {
+			source.append("\t\tresult = p0.Util.twice(result);\n");
+		}
+		source.append("\t\treturn result;\n\t}\n}\n");
+		write("p" + p + "/C" + c + ".java", source.toString());
+	}
+
+	private void write(String path, String content) throws IOException {
+		File file = new File(project, "src/" + path);
+		file.getParentFile().mkdirs();
+		long previous = file.lastModified();
+		Files.writeString(file.toPath(), content);
+		file.setLastModified(Math.max(file.lastModified(), previous + 1000));
+	}
+
+	private boolean build() {
+		List<DebugError> errors = new ArrayList<>();
+		return incremental.build(compiler, "bin", "src", null, diagnostic -> {
+			DebugError error = InProcessCompiler.toDebugError(diagnostic);
+			if (error != null) {
+				errors.add(error);
+			}
+		}) && errors.isEmpty();
+	}
+
+	@Benchmark
+	public boolean entryFileWithSourcepath() throws IOException {
+		writeClass(PACKAGES - 1, CLASSES_PER_PACKAGE - 1, ++edits);
+		return compiler.compile(List.of(new File("src/app/Main.java")), project, "bin-full", "src", null,
+				diagnostic -> { });
+	}
+
+	@Benchmark
+	public boolean incrementalLeafClass() throws IOException {
+		writeClass(PACKAGES - 1, CLASSES_PER_PACKAGE - 1, ++edits);
+		return build();
+	}
+
+	@Benchmark
+	public boolean incrementalUtilClass() throws IOException {
+		write("p0/Util.java", "package p0;\npublic class Util {\n\t// edit " + ++edits
+				+ "\n\tpublic static int twice(int x) { return 2 * x; }\n}\n");
+		return build();
+	}
+
+	@Benchmark
+	public boolean incrementalUtilClassCached() throws IOException {
+		write("p0/Util.java", "package p0;\npublic class Util {\n\tpublic static int twice(int x) { return 2 * x; }\n}\n");
+		return build();
+	}
+
+	@Benchmark
+	public boolean incrementalUnchanged() {
+		return build();
+	}
+}
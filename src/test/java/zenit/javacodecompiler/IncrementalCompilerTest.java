@@ -0,0 +1,125 @@
+package zenit.javacodecompiler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for the incremental builds of IncrementalCompiler
+ */
+class IncrementalCompilerTest {
+
+    @TempDir
+    File tempDir;
+
+    private InProcessCompiler compiler;
+    private List<DebugError> errors;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        compiler = new InProcessCompiler();
+        errors = new ArrayList<>();
+        write("app/Main.java", "package app;\npublic class Main { int run() { return new Helper().value(); } }\n");
+        write("app/Helper.java", "package app;\npublic class Helper { int value() { return 1; } }\n");
+        write("app/Unrelated.java", "package app;\npublic class Unrelated { }\n");
+    }
+
+    private void write(String path, String content) throws IOException {
+        File file = new File(tempDir, "src/" + path);
+        file.getParentFile().mkdirs();
+        long previous = file.lastModified();
+        Files.writeString(file.toPath(), content);
+        // Changed even if the clock did not move on since the last write
+        file.setLastModified(Math.max(file.lastModified(), previous + 1000));
+    }
+
+    private boolean build(IncrementalCompiler incremental) {
+        errors.clear();
+        return incremental.build(compiler, "bin", "src", null, diagnostic -> {
+            DebugError error = InProcessCompiler.toDebugError(diagnostic);
+            if (error != null) {
+                errors.add(error);
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("The first build compiles everything, the next only what changed")
+    void testNothingChanged() {
+        IncrementalCompiler incremental = new IncrementalCompiler(tempDir);
+        assertTrue(build(incremental));
+        assertEquals(3, incremental.getCompiledCount());
+        assertTrue(new File(tempDir, "bin/app/Unrelated.class").exists());
+        assertTrue(new File(tempDir, "bin/" + DependencyGraph.FILE_NAME).exists());
+
+        assertTrue(build(incremental));
+        assertEquals(0, incremental.getCompiledCount());
+    }
+
+    @Test
+    @DisplayName("A changed file is compiled with the files that use its classes")
+    void testDependents() throws IOException {
+        IncrementalCompiler incremental = new IncrementalCompiler(tempDir);
+        build(incremental);
+
+        write("app/Main.java", "package app;\npublic class Main { int run() { return new Helper().value() + 1; } }\n");
+        assertTrue(build(incremental));
+        assertEquals(1, incremental.getCompiledCount(), "Nothing uses Main");
+
+        write("app/Helper.java", "package app;\npublic class Helper { int value() { return 2; } }\n");
+        assertTrue(build(incremental));
+        assertEquals(2, incremental.getCompiledCount(), "Main uses Helper, Unrelated does not");
+    }
+
+    @Test
+    @DisplayName("Errors in dependents are reported, and failed files are compiled again")
+    void testBrokenDependent() throws IOException {
+        IncrementalCompiler incremental = new IncrementalCompiler(tempDir);
+        build(incremental);
+
+        write("app/Helper.java", "package app;\npublic class Helper { int renamed() { return 1; } }\n");
+        assertFalse(build(incremental));
+        assertEquals(1, errors.size());
+        assertTrue(errors.get(0).getPlace().endsWith("Main.java"));
+        assertEquals(2, errors.get(0).getRow());
+
+        assertFalse(build(incremental));
+        assertEquals(2, incremental.getCompiledCount());
+
+        write("app/Main.java", "package app;\npublic class Main { int run() { return new Helper().renamed(); } }\n");
+        assertTrue(build(incremental));
+        assertTrue(errors.isEmpty());
+    }
+
+    @Test
+    @DisplayName("The classes of a deleted file are deleted, and its dependents compiled")
+    void testDeletedFile() throws IOException {
+        IncrementalCompiler incremental = new IncrementalCompiler(tempDir);
+        build(incremental);
+
+        assertTrue(new File(tempDir, "src/app/Helper.java").delete());
+        assertFalse(build(incremental));
+        assertFalse(new File(tempDir, "bin/app/Helper.class").exists());
+        assertTrue(errors.get(0).getPlace().endsWith("Main.java"));
+    }
+
+    @Test
+    @DisplayName("The graph is read back after a restart")
+    void testPersistedGraph() throws IOException {
+        build(new IncrementalCompiler(tempDir));
+
+        write("app/Helper.java", "package app;\npublic class Helper { int value() { return 3; } }\n");
+        IncrementalCompiler restarted = new IncrementalCompiler(tempDir);
+        assertTrue(build(restarted));
+        assertEquals(2, restarted.getCompiledCount());
+    }
+}
@@ -0,0 +1,115 @@
+package zenit.javacodecompiler;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for reading the diagnostics javac prints with JavacOutputParser, and for
+ * reading them while javac runs in TerminalHelpers
+ */
+class JavacOutputParserTest {
+
+    @TempDir
+    File tempDir;
+
+    private List<DebugError> errors;
+    private JavacOutputParser parser;
+
+    @BeforeEach
+    void setUp() {
+        errors = new ArrayList<>();
+        parser = new JavacOutputParser(tempDir, errors::add);
+    }
+
+    private void parse(String output) {
+        for (String line : output.split("\n")) {
+            parser.parseLine(line);
+        }
+        parser.finish();
+    }
+
+    @Test
+    @DisplayName("Every diagnostic is read, with its range, severity and whole message")
+    void testDiagnostics() {
+        parse("src/app/Main.java:3: error: incompatible types: String cannot be converted to int\n"
+                + "\tint value = \"text\";\n"
+                + "\t            ^\n"
+                + "src/app/Main.java:4: error: cannot find symbol\n"
+                + "\tvoid run() { foo(); }\n"
+                + "\t             ^\n"
+                + "  symbol:   method foo()\n"
+                + "  location: class Main\n"
+                + "src/app/Main.java:6: warning: [deprecation] getYear() in Date has been deprecated\n"
+                + "\tvoid use() { new java.util.Date().getYear(); }\n"
+                + "\t                                 ^\n"
+                + "2 errors\n"
+                + "1 warning\n");
+
+        assertEquals(3, errors.size());
+        DebugError first = errors.get(0);
+        assertEquals(new File(tempDir, "src/app/Main.java").getPath(), first.getPlace());
+        assertTrue(first.isError());
+        assertEquals(3, first.getRow());
+        assertEquals(13, first.getColumn(), "The index in the line, with the tab counted once");
+
+        DebugError second = errors.get(1);
+        assertEquals("cannot find symbol\n  symbol:   method foo()\n  location: class Main", second.getProblem());
+        assertEquals(14, second.getColumn());
+        assertEquals(4, second.getEndRow());
+        assertEquals(17, second.getEndColumn(), "Spans the identifier the caret points at");
+
+        DebugError third = errors.get(2);
+        assertFalse(third.isError());
+        assertEquals(6, third.getRow());
+    }
+
+    @Test
+    @DisplayName("Lines that are not diagnostics are skipped, not the rest of the output")
+    void testOtherLines() {
+        parse("warning: [options] system modules path not set in conjunction with -source 11\n"
+                + "Note: Some input files use unchecked or unsafe operations.\n"
+                + "C:\\project\\src\\Main.java:12345678901: error: not a line number\n"
+                + "/project/src/Main.java:2: error: ';' expected\n"
+                + "\tint x = 1\n"
+                + "\t         ^\n"
+                + "1 error\n");
+
+        assertEquals(1, errors.size());
+        assertEquals("/project/src/Main.java", errors.get(0).getPlace(), "Absolute paths are kept");
+        assertEquals("';' expected", errors.get(0).getProblem());
+        assertEquals(10, errors.get(0).getColumn());
+    }
+
+    @Test
+    @DisplayName("Thousands of errors are read while javac prints them, without blocking it")
+    void testManyErrors() throws IOException {
+        StringBuilder source = new StringBuilder("public class Broken {\n");
+        for (int i = 0; i < 1500; i++) {
+            source.append("\tint value").append(i).append(" = \"not a number ").append(i).append("\";\n");
+        }
+        source.append("}\n");
+        Files.writeString(new File(tempDir, "Broken.java").toPath(), source.toString());
+
+        String javac = System.getProperty("java.home") + File.separator + "bin" + File.separator + "javac";
+        DebugErrorBuffer buffer = new DebugErrorBuffer();
+        Process process = TerminalHelpers.runBackgroundCommand(javac + " -Xmaxerrs 5000 Broken.java", tempDir,
+                buffer);
+
+        assertFalse(process.isAlive());
+        int count = 0;
+        while (buffer.get() != null) {
+            count++;
+        }
+        assertEquals(1500, count);
+    }
+}
@@ -0,0 +1,76 @@
+package zenit.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IntervalTree
+ * Intervals are given as int[] {start, end}, with both ends included
+ */
+class IntervalTreeTest {
+
+    private static IntervalTree<int[]> tree(List<int[]> intervals) {
+        return new IntervalTree<>(intervals, interval -> interval[0], interval -> interval[1]);
+    }
+
+    @Test
+    @DisplayName("Should find the interval containing a point, including its ends")
+    void testFind() {
+        int[] a = { 0, 4 };
+        int[] b = { 10, 12 };
+        IntervalTree<int[]> tree = tree(List.of(b, a));
+
+        assertSame(a, tree.find(0));
+        assertSame(a, tree.find(4));
+        assertSame(b, tree.find(11));
+        assertNull(tree.find(5), "No interval covers the gap");
+        assertNull(tree.find(13));
+    }
+
+    @Test
+    @DisplayName("Should prefer the interval that came first when intervals overlap")
+    void testOverlap() {
+        int[] wide = { 0, 100 };
+        int[] narrow = { 40, 50 };
+
+        assertSame(narrow, tree(List.of(narrow, wide)).find(45));
+        assertSame(wide, tree(List.of(wide, narrow)).find(45));
+    }
+
+    @Test
+    @DisplayName("Should return null for an empty tree")
+    void testEmpty() {
+        IntervalTree<int[]> tree = IntervalTree.empty();
+        assertEquals(0, tree.size());
+        assertNull(tree.find(0));
+    }
+
+    @Test
+    @DisplayName("Should agree with a linear scan on random intervals")
+    void testAgainstLinearScan() {
+        Random random = new Random(42);
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            int start = random.nextInt(10_000);
+            intervals.add(new int[] { start, start + random.nextInt(200) });
+        }
+        IntervalTree<int[]> tree = tree(intervals);
+
+        for (int point = -5; point < 10_300; point += 7) {
+            int[] expected = null;
+            for (int[] interval : intervals) {
+                if (interval[0] <= point && point <= interval[1]) {
+                    expected = interval;
+                    break;
+                }
+            }
+            assertSame(expected, tree.find(point), "Point " + point);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package zenit.zencodearea;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for IncrementalHighlighter
+ *
+ * Uses a minimal lexer where a paragraph containing "{" opens a block comment
+ * and a paragraph containing "}" closes it, and records every paragraph that is lexed.
+ */
+public class IncrementalHighlighterTest {
+
+    private List<String> document;
+    private List<Integer> lexed;
+    private IncrementalHighlighter highlighter;
+
+    @BeforeEach
+    void setUp() {
+        document = new ArrayList<>(Arrays.asList("a", "b", "c", "d", "e"));
+        lexed = new ArrayList<>();
+        highlighter = new IncrementalHighlighter(() -> this::lex);
+        highlighter.reset(document.size());
+        highlighter.highlight(document::get);
+        lexed.clear();
+    }
+
+    private int lex(String text, int state, StyleSpansBuilder<Collection<String>> spans) {
+        lexed.add(document.indexOf(text));
+        spans.add(Collections.emptyList(), text.length());
+        if (text.contains("{")) return IncrementalHighlighter.BLOCK_COMMENT;
+        if (text.contains("}")) return IncrementalHighlighter.DEFAULT;
+        return state;
+    }
+
+    @Test
+    @DisplayName("Nothing is lexed when no paragraph is damaged")
+    void testCleanDocument() {
+        assertFalse(highlighter.isDirty());
+        assertNull(highlighter.highlight(document::get));
+    }
+
+    @Test
+    @DisplayName("Editing inside a paragraph only re-lexes that paragraph")
+    void testSingleParagraphEdit() {
+        document.set(2, "cc");
+        highlighter.textChanged(2, 0, 0);
+
+        IncrementalHighlighter.Result result = highlighter.highlight(document::get);
+
+        assertEquals(List.of(2), lexed);
+        assertEquals(2, result.getFirstParagraph());
+        assertEquals(2, result.getLastParagraph());
+        assertEquals("cc".length() + 1, result.getSpans().length(),
+                "Spans should cover the paragraph and its line break");
+    }
+
+    @Test
+    @DisplayName("Opening a block comment re-lexes following paragraphs until the state settles")
+    void testStateChangePropagates() {
+        document.set(1, "b{");
+        highlighter.textChanged(1, 0, 0);
+        highlighter.highlight(document::get);
+        assertEquals(List.of(1, 2, 3, 4), lexed);
+
+        lexed.clear();
+        document.set(3, "d}");
+        highlighter.textChanged(3, 0, 0);
+        highlighter.highlight(document::get);
+        assertEquals(List.of(3, 4), lexed,
+                "Closing the comment changes the entry state of the last paragraph");
+    }
+
+    @Test
+    @DisplayName("Inserted line breaks shift the stored paragraph states")
+    void testInsertedParagraphs() {
+        document.set(1, "b{");
+        document.set(3, "d}");
+        highlighter.reset(document.size());
+        highlighter.highlight(document::get);
+
+        lexed.clear();
+        document.add(1, "x");
+        document.add(1, "y");
+        highlighter.textChanged(1, 0, 2);
+        assertEquals(7, highlighter.getParagraphCount());
+
+        highlighter.highlight(document::get);
+        assertEquals(List.of(1, 2, 3), lexed,
+                "Paragraphs after the insertion keep their state and are not re-lexed");
+    }
+
+    @Test
+    @DisplayName("Removed line breaks shrink the tracked document")
+    void testRemovedParagraphs() {
+        document.remove(3);
+        document.remove(2);
+        highlighter.textChanged(1, 2, 0);
+
+        highlighter.highlight(document::get);
+        assertEquals(3, highlighter.getParagraphCount());
+        assertEquals(List.of(1), lexed);
+    }
+
+    @Test
+    @DisplayName("A pass prepared before a newer edit is not committed")
+    void testStalePassIsRejected() {
+        document.set(2, "cc");
+        highlighter.textChanged(2, 0, 0);
+        IncrementalHighlighter.Pass stale = highlighter.prepare();
+
+        document.set(4, "ee");
+        highlighter.textChanged(4, 0, 0);
+
+        assertFalse(highlighter.commit(stale.run(document::get, () -> false)));
+        assertTrue(highlighter.isDirty(), "The damage of the stale pass must be kept");
+
+        lexed.clear();
+        assertTrue(highlighter.commit(highlighter.prepare().run(document::get, () -> false)));
+        assertEquals(List.of(2, 3, 4), lexed, "The next pass covers both edits");
+        assertFalse(highlighter.isDirty());
+    }
+
+    @Test
+    @DisplayName("A cancelled pass returns no result")
+    void testCancelledPass() {
+        highlighter.textChanged(0, 0, 0);
+        assertNull(highlighter.prepare().run(document::get, () -> true));
+        assertTrue(highlighter.isDirty());
+    }
+
+    @Test
+    @DisplayName("After a reset the viewport is styled first and the rest is filled in later")
+    void testViewportFirst() {
+        document.set(1, "b{");
+        highlighter.reset(document.size());
+
+        IncrementalHighlighter.Result viewport = highlighter.prepare(3, 4).run(document::get, () -> false);
+        assertTrue(highlighter.commit(viewport));
+        assertEquals(3, viewport.getFirstParagraph());
+        assertEquals(4, viewport.getLastParagraph());
+        assertEquals(List.of(0, 1, 2, 3, 4), lexed,
+                "The paragraphs above the viewport are scanned for their states");
+
+        lexed.clear();
+        IncrementalHighlighter.Result fill = highlighter.prepare(3, 4).run(document::get, () -> false);
+        assertTrue(highlighter.commit(fill));
+        assertEquals(0, fill.getFirstParagraph());
+        assertEquals(2, fill.getLastParagraph());
+        assertEquals(List.of(0, 1, 2), lexed);
+
+        assertFalse(highlighter.needsHighlighting());
+        assertNull(highlighter.prepare(3, 4));
+    }
+
+    @Test
+    @DisplayName("Edits below the lexed part of a reset document wait for the fill")
+    void testEditBeyondKnownStates() {
+        highlighter.reset(document.size());
+        assertTrue(highlighter.commit(highlighter.prepare(0, 1).run(document::get, () -> false)));
+
+        document.set(4, "e{");
+        highlighter.textChanged(4, 0, 0);
+        assertFalse(highlighter.isDirty());
+        assertTrue(highlighter.needsHighlighting());
+
+        lexed.clear();
+        highlighter.highlight(document::get);
+        assertEquals(List.of(2, 3, 4), lexed);
+        assertFalse(highlighter.needsHighlighting());
+    }
+}
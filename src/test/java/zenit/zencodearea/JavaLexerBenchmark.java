@@ -0,0 +1,186 @@
+package zenit.zencodearea;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmark comparing {@link JavaLexer} with the regex alternation that
+ * ZenCodeArea used before it, on 1 KB, 100 KB and 2 MB of Java source.
+ *
+ * Run with:
+ * mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=org.openjdk.jmh.Main
+ * -Dexec.args="JavaLexerBenchmark"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JavaLexerBenchmark {
+
+	private static final String SAMPLE =
+		"package zenit.sample;\n"
+		+ "\n"
+		+ "import java.util.List;\n"
+		+ "\n"
+		+ "/**\n"
+		+ " * A generated class used for benchmarking.\n"
+		+ " */\n"
+		+ "@SuppressWarnings(\"unused\")\n"
+		+ "public class Sample extends Object {\n"
+		+ "    private static final int LIMIT = 0x7F;\n"
+		+ "    private final String name = \"sample \\\"quoted\\\"\";\n"
+		+ "\n"
+		+ "    public int compute(List<Integer> values, char separator) {\n"
+		+ "        int total = 0; // running total\n"
+		+ "        for (int i = 0; i < values.size(); i++) {\n"
+		+ "            if (values.get(i) % 2 == 0 && total <= LIMIT) {\n"
+		+ "                total += values.get(i) * 3.5f;\n"
+		+ "            } else {\n"
+		+ "                total -= helper(i, '\\n');\n"
+		+ "            }\n"
+		+ "        }\n"
+		+ "        return total;\n"
+		+ "    }\n"
+		+ "}\n";
+
+	@Param({ "1024", "102400", "2097152" })
+	public int size;
+
+	private String text;
+	private JavaLexer lexer;
+
+	@Setup
+	public void setUp() {
+		StringBuilder builder = new StringBuilder(size + SAMPLE.length());
+		while (builder.length() < size) {
+			builder.append(SAMPLE);
+		}
+		builder.setLength(size);
+		text = builder.toString();
+		lexer = new JavaLexer();
+	}
+
+	@Benchmark
+	public StyleSpans<Collection<String>> regexAlternation() {
+		return RegexBaseline.computeHighlighting(text);
+	}
+
+	@Benchmark
+	public int lexerTokensOnly() {
+		lexer.tokenize(text, 0, text.length(), IncrementalHighlighter.DEFAULT);
+		return lexer.getTokenCount();
+	}
+
+	@Benchmark
+	public StyleSpans<Collection<String>> lexerStyleSpans() {
+		StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+		lexer.lex(text, IncrementalHighlighter.DEFAULT, spans);
+		return spans.create();
+	}
+
+	/**
+	 * The whole-document regex highlighter that JavaLexer replaced, kept here as the baseline.
+	 */
+	private static class RegexBaseline {
+
+		private static final String[] KEYWORDS = new String[] {
+			"abstract", "assert", "boolean", "byte",
+			"case", "catch", "char", "class", "const",
+			"default", "double",
+			"enum", "extends", "false", "final", "finally", "float",
+			"goto", "implements", "import",
+			"instanceof", "int", "interface", "long", "native",
+			"new", "null", "package", "private", "protected", "public",
+			"record", "return", "sealed", "short", "static", "strictfp", "super",
+			"synchronized", "throw", "throws",
+			"transient", "true", "try", "var", "void", "volatile",
+			"permits", "non-sealed", "yield"
+		};
+
+		private static final String[] CONTROL_KEYWORDS = new String[] {
+			"if", "else", "for", "while", "do", "switch",
+			"break", "continue",
+			"this"
+		};
+
+		private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
+		private static final String CONTROL_PATTERN = "\\b(" + String.join("|", CONTROL_KEYWORDS) + ")\\b";
+		private static final String PAREN_PATTERN = "\\(|\\)";
+		private static final String BRACE_PATTERN = "\\{|\\}";
+		private static final String BRACKET_PATTERN = "\\[|\\]";
+		private static final String SEMICOLON_PATTERN = "\\;";
+		private static final String STRING_PATTERN = "\"([^\"\\\\]|\\\\.)*\"";
+		private static final String CHAR_PATTERN = "'([^'\\\\]|\\\\.)'";
+		private static final String COMMENT_PATTERN = "//[^\n]*" + "|" + "/\\*(.|\\R)*?\\*/";
+		private static final String NUMBER_PATTERN = "\\b(\\d+\\.?\\d*[fFdDlL]?|0[xX][0-9a-fA-F]+)\\b";
+		private static final String ANNOTATION_PATTERN = "@[\\w]+";
+		private static final String CLASS_NAME_PATTERN = "\\b[A-Z][a-zA-Z0-9]*\\b";
+		private static final String OPERATOR_PATTERN = "\\+|-|\\*|/|%|==|!=|<=|>=|<|>|&&|\\|\\||!|=|\\+=|-=|\\*=|/=";
+		private static final String METHOD_PATTERN =
+		"(?<!\\.)\\b(?!if|for|while|switch|catch|case|return|new|assert|throw)([a-z][a-zA-Z0-9]*)(?=\\s*\\()";
+
+		private static final Pattern PATTERN = Pattern.compile(
+			"(?<COMMENT>" + COMMENT_PATTERN + ")"
+			+ "|(?<STRING>" + STRING_PATTERN + ")"
+			+ "|(?<CHAR>" + CHAR_PATTERN + ")"
+			+ "|(?<ANNOTATION>" + ANNOTATION_PATTERN + ")"
+			+ "|(?<CONTROL>" + CONTROL_PATTERN + ")"
+			+ "|(?<KEYWORD>" + KEYWORD_PATTERN + ")"
+			+ "|(?<CLASSNAME>" + CLASS_NAME_PATTERN + ")"
+			+ "|(?<METHOD>" + METHOD_PATTERN + ")"
+			+ "|(?<NUMBER>" + NUMBER_PATTERN + ")"
+			+ "|(?<OPERATOR>" + OPERATOR_PATTERN + ")"
+			+ "|(?<PAREN>" + PAREN_PATTERN + ")"
+			+ "|(?<BRACE>" + BRACE_PATTERN + ")"
+			+ "|(?<BRACKET>" + BRACKET_PATTERN + ")"
+			+ "|(?<SEMICOLON>" + SEMICOLON_PATTERN + ")");
+
+		static StyleSpans<Collection<String>> computeHighlighting(String text) {
+			Matcher matcher = PATTERN.matcher(text);
+			int lastKwEnd = 0;
+			StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+			while (matcher.find()) {
+				String styleClass =
+				matcher.group("COMMENT")    != null ? "comment"    :
+				matcher.group("STRING")     != null ? "string"     :
+				matcher.group("CHAR")       != null ? "string"     :
+				matcher.group("ANNOTATION") != null ? "annotation" :
+				matcher.group("CONTROL")    != null ? "control"    :
+				matcher.group("KEYWORD")    != null ? "keyword"    :
+				matcher.group("CLASSNAME")  != null ? "classname"  :
+				matcher.group("METHOD")     != null ? "method"     :
+				matcher.group("NUMBER")     != null ? "number"     :
+				matcher.group("OPERATOR")   != null ? "operator"   :
+				matcher.group("PAREN")      != null ? "paren"      :
+				matcher.group("BRACE")      != null ? "brace"      :
+				matcher.group("BRACKET")    != null ? "bracket"    :
+				matcher.group("SEMICOLON")  != null ? "semicolon"  :
+				null;
+				spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
+				spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
+				lastKwEnd = matcher.end();
+			}
+			spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
+			return spansBuilder.create();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package zenit.zencodearea;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for JavaLexer
+ *
+ * Checks the token kinds produced for common Java constructs and
+ * that block comments and text blocks carry their state across lines.
+ */
+public class JavaLexerTest {
+
+    private JavaLexer lexer;
+
+    @BeforeEach
+    void setUp() {
+        lexer = new JavaLexer();
+    }
+
+    /**
+     * Returns the tokens of the last call as "style:text" strings.
+     */
+    private List<String> tokens(String text, int state) {
+        lexer.tokenize(text, 0, text.length(), state);
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i < lexer.getTokenCount(); i++) {
+            result.add(JavaLexer.STYLE_CLASSES[lexer.getKind(i)] + ":"
+                    + text.substring(lexer.getStart(i), lexer.getEnd(i)));
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("Keywords, class names, methods and punctuation are classified")
+    void testDeclaration() {
+        assertEquals(List.of("keyword:public", "keyword:void", "method:run", "paren:(",
+                "classname:String", "bracket:[", "bracket:]", "paren:)", "brace:{"),
+                tokens("public void run(String[] args) {", IncrementalHighlighter.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("Control keywords, operators, numbers and semicolons are classified")
+    void testStatement() {
+        assertEquals(List.of("control:if", "paren:(", "operator:<=", "number:0x1F", "paren:)",
+                "control:this", "operator:=", "number:2.5f", "semicolon:;"),
+                tokens("if (a <= 0x1F) this.b = 2.5f;", IncrementalHighlighter.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("Calls through a dot are not styled as methods")
+    void testQualifiedCall() {
+        assertEquals(List.of("method:print", "paren:(", "paren:)", "paren:(", "paren:)"),
+                tokens("print() out.print()", IncrementalHighlighter.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("Strings, chars, annotations and comments are classified")
+    void testLiterals() {
+        assertEquals(List.of("annotation:@Override", "string:\"a\\\"b\"", "string:'\\n'", "comment:// done"),
+                tokens("@Override \"a\\\"b\" '\\n' // done", IncrementalHighlighter.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("non-sealed is one keyword")
+    void testNonSealed() {
+        assertEquals(List.of("keyword:non-sealed", "keyword:class", "classname:A"),
+                tokens("non-sealed class A", IncrementalHighlighter.DEFAULT));
+    }
+
+    @Test
+    @DisplayName("An unterminated block comment is carried to the next line")
+    void testBlockCommentState() {
+        assertEquals(IncrementalHighlighter.BLOCK_COMMENT,
+                lexer.tokenize("int a; /* start", 0, 15, IncrementalHighlighter.DEFAULT));
+        assertEquals(List.of("comment:still inside */", "keyword:int"),
+                tokens("still inside */ int", IncrementalHighlighter.BLOCK_COMMENT));
+        assertEquals(IncrementalHighlighter.DEFAULT,
+                lexer.tokenize("end */", 0, 6, IncrementalHighlighter.BLOCK_COMMENT));
+    }
+
+    @Test
+    @DisplayName("An unterminated text block is carried to the next line")
+    void testTextBlockState() {
+        assertEquals(IncrementalHighlighter.TEXT_BLOCK,
+                lexer.tokenize("String s = \"\"\"", 0, 14, IncrementalHighlighter.DEFAULT));
+        assertEquals(List.of("string:  body\"\"\"", "semicolon:;"),
+                tokens("  body\"\"\";", IncrementalHighlighter.TEXT_BLOCK));
+    }
+
+    @Test
+    @DisplayName("A multi-line range is lexed in one pass")
+    void testMultipleLines() {
+        String text = "/* a\n b */ int x;\n// c\nreturn;";
+        assertEquals(List.of("comment:/* a\n b */", "keyword:int", "semicolon:;", "comment:// c",
+                "keyword:return", "semicolon:;"),
+                tokens(text, IncrementalHighlighter.DEFAULT));
+    }
+}
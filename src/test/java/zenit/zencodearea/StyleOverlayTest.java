@@ -0,0 +1,127 @@
+package zenit.zencodearea;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for StyleOverlay
+ *
+ * Uses a document of ten paragraphs of ten characters each, so the offset
+ * of (paragraph, column) is paragraph * 11 + column.
+ */
+public class StyleOverlayTest {
+
+    private StyleOverlay overlay;
+
+    @BeforeEach
+    void setUp() {
+        overlay = new StyleOverlay();
+    }
+
+    private static int offset(int paragraph, int column) {
+        return paragraph * 11 + Math.min(column, 10);
+    }
+
+    private static StyleSpans<Collection<String>> keywords(int length) {
+        StyleSpansBuilder<Collection<String>> builder = new StyleSpansBuilder<>();
+        builder.add(List.of("keyword"), length);
+        return builder.create();
+    }
+
+    /**
+     * Returns the spans as "styles:length" strings.
+     */
+    private static List<String> describe(StyleSpans<Collection<String>> spans) {
+        List<String> result = new ArrayList<>();
+        for (StyleSpan<Collection<String>> span : spans) {
+            result.add(String.join("+", span.getStyle()) + ":" + span.getLength());
+        }
+        return result;
+    }
+
+    @Test
+    @DisplayName("Only paragraphs of added or removed ranges are restyled")
+    void testChangedParagraphs() {
+        StyleOverlay.Range a = new StyleOverlay.Range(1, 0, 1, 5, "lsp-error");
+        StyleOverlay.Range b = new StyleOverlay.Range(4, 2, 5, 3, "lsp-warning");
+        StyleOverlay.Range c = new StyleOverlay.Range(8, 0, 8, 1, "lsp-error");
+
+        overlay.setRanges(List.of(a, b));
+        List<int[]> changed = overlay.setRanges(List.of(b, c));
+
+        assertEquals(2, changed.size());
+        assertArrayEquals(new int[] { 1, 1 }, changed.get(0));
+        assertArrayEquals(new int[] { 8, 8 }, changed.get(1));
+        assertTrue(overlay.setRanges(List.of(c, b)).isEmpty(), "Unchanged ranges restyle nothing");
+    }
+
+    @Test
+    @DisplayName("Overlay classes are added on top of the syntax classes")
+    void testApply() {
+        overlay.setRanges(List.of(new StyleOverlay.Range(0, 2, 0, 6, "lsp-error"),
+                new StyleOverlay.Range(0, 4, 0, 8, "lsp-warning")));
+
+        StyleSpans<Collection<String>> merged = overlay.apply(keywords(11), 0, 0, 0,
+                StyleOverlayTest::offset);
+
+        assertEquals(List.of("keyword:2", "keyword+lsp-error:2", "keyword+lsp-error+lsp-warning:2",
+                "keyword+lsp-warning:2", "keyword:3"), describe(merged));
+    }
+
+    @Test
+    @DisplayName("Any number of overlay classes can be open in one paragraph range")
+    void testManyClasses() {
+        // One character per class, more classes than an int has bits
+        List<StyleOverlay.Range> ranges = new ArrayList<>();
+        for (int i = 0; i < 33; i++) {
+            ranges.add(new StyleOverlay.Range(i / 10, i % 10, i / 10, i % 10 + 1, "class" + i));
+        }
+        overlay.setRanges(ranges);
+
+        StyleSpans<Collection<String>> merged = overlay.apply(keywords(44), 0, 0, 3,
+                StyleOverlayTest::offset);
+
+        List<String> expected = new ArrayList<>();
+        for (int position = 0; position < 44; position++) {
+            int index = position / 11 * 10 + position % 11;
+            boolean styled = position % 11 < 10 && index < 33;
+            expected.add(styled ? "keyword+class" + index + ":1" : "keyword:1");
+        }
+        // The unstyled characters after the last class are one span
+        List<String> actual = describe(merged);
+        assertEquals(expected.subList(0, 36), actual.subList(0, 36));
+        assertEquals(List.of("keyword:8"), actual.subList(36, actual.size()));
+    }
+
+    @Test
+    @DisplayName("Ranges outside the styled paragraphs are ignored")
+    void testApplyOutsideRange() {
+        overlay.setRanges(List.of(new StyleOverlay.Range(5, 0, 5, 3, "lsp-error")));
+
+        StyleSpans<Collection<String>> merged = overlay.apply(keywords(22), offset(1, 0), 1, 2,
+                StyleOverlayTest::offset);
+
+        assertEquals(List.of("keyword:22"), describe(merged));
+    }
+
+    @Test
+    @DisplayName("Stripping removes the overlay classes and keeps the syntax classes")
+    void testStrip() {
+        overlay.setRanges(List.of(new StyleOverlay.Range(0, 0, 0, 4, "lsp-error")));
+        StyleSpans<Collection<String>> merged = overlay.apply(keywords(11), 0, 0, 0,
+                StyleOverlayTest::offset);
+
+        overlay.setRanges(List.of());
+        assertEquals(List.of("keyword:11"), describe(overlay.strip(merged)));
+    }
+}